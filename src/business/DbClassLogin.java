@@ -13,7 +13,6 @@ import middleware.dataaccess.DataAccessSubsystemFacade;
 import middleware.exceptions.DatabaseException;
 import middleware.externalinterfaces.DataAccessSubsystem;
 import middleware.externalinterfaces.DbClass;
-import middleware.externalinterfaces.DbConfigKey;
 
 public class DbClassLogin implements DbClass {
 	enum Type {AUTH};
@@ -74,8 +73,7 @@ public class DbClassLogin implements DbClass {
     }
     @Override
     public String getDbUrl() {
-    	DbConfigProperties props = new DbConfigProperties();	
-    	return props.getProperty(DbConfigKey.ACCOUNT_DB_URL.getVal());
+    	return DbConfigProperties.getConfig().getAccountDbUrl();
     }
 
     @Override
@@ -1,6 +1,8 @@
 package business.customersubsystem;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import java.util.logging.Logger;
@@ -12,6 +14,7 @@ import middleware.exceptions.DatabaseException;
 import middleware.exceptions.MiddlewareException;
 import middleware.externalinterfaces.CreditVerification;
 import middleware.externalinterfaces.CreditVerificationProfile;
+import middleware.externalinterfaces.DataAccessSubsystem;
 import business.exceptions.BackendException;
 import business.exceptions.BusinessException;
 import business.exceptions.RuleException;
@@ -35,6 +38,9 @@ public class CustomerSubsystemFacade implements CustomerSubsystem {
 	@Inject
 	private IDbClassCreditCard dbClassCreditCard;
 
+	@Inject
+	private DataAccessSubsystem dataAccessSS;
+
 	ShoppingCartSubsystem shoppingCartSubsystem;
 	OrderSubsystem orderSubsystem;
 	List<Order> orderHistory;
@@ -54,9 +60,7 @@ public class CustomerSubsystemFacade implements CustomerSubsystem {
 				+ " received a null value for cartItems");
 		boolean isAdmin = (authorizationLevel >= 1);
 		loadCustomerProfile(id, isAdmin);
-		loadDefaultShipAddress();
-		loadDefaultBillAddress();
-		loadDefaultPaymentInfo();
+		loadDefaultsConcurrently();
 		shoppingCartSubsystem = (ShoppingCartSubsystemFacade) Start.ctx.getBean("sss");
 //		shoppingCartSubsystem = new ShoppingCartSubsystemFacade();
 
@@ -82,38 +86,29 @@ public class CustomerSubsystemFacade implements CustomerSubsystem {
 		}
 	}
 
-	void loadDefaultShipAddress() throws BackendException {
-		try {
-//			DbClassAddress dbClassAddress=new DbClassAddress();
-			defaultShipAddress=(AddressImpl)dbClassAddress.readDefaultShipAddress(customerProfile);
-		} catch (DatabaseException e) {
-			throw new BackendException(e);
-		}
-
-		// implement
-//		LOG.warning("Method CustomerSubsystemFacade.loadDefaultShipAddress has not been implemented.");
-	}
-
-	void loadDefaultBillAddress() throws BackendException {
-		try {
-//			DbClassAddress dbClassAddress=new DbClassAddress();
-			defaultBillAddress=(AddressImpl)dbClassAddress.readDefaultBillAddress(customerProfile);
-		} catch (DatabaseException e) {
-			throw new BackendException(e);
-		}
-
-		// implement
-//		LOG.warning("Method CustomerSubsystemFacade.loadDefaultBillAddress has not been implemented.");
-	}
-
-	void loadDefaultPaymentInfo() throws BackendException {
+	/**
+	 * Loads default ship and bill addresses and default payment info. These
+	 * are independent reads, so they are issued together on the data access
+	 * threads instead of one after another.
+	 */
+	void loadDefaultsConcurrently() throws BackendException {
+		CompletableFuture<Address> ship = dataAccessSS.callAsync(dbClassAddress.getDbUrl(),
+				() -> dbClassAddress.readDefaultShipAddress(customerProfile));
+		CompletableFuture<Address> bill = dataAccessSS.callAsync(dbClassAddress.getDbUrl(),
+				() -> dbClassAddress.readDefaultBillAddress(customerProfile));
+		CompletableFuture<CreditCard> payment = dataAccessSS.callAsync(dbClassCreditCard.getDbUrl(),
+				() -> dbClassCreditCard.readDefaultPaymentInfo(customerProfile));
 		try {
-//			DbClassCreditCard dbClassCreditCard=new DbClassCreditCard();
-			defaultPaymentInfo= (CreditCardImpl) dbClassCreditCard.readDefaultPaymentInfo(customerProfile);
-		} catch (DatabaseException e) {
+			defaultShipAddress = (AddressImpl)ship.get();
+			defaultBillAddress = (AddressImpl)bill.get();
+			defaultPaymentInfo = (CreditCardImpl)payment.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw new BackendException((cause instanceof Exception) ? (Exception)cause : e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			throw new BackendException(e);
 		}
-		LOG.warning("Method CustomerSubsystemFacade.loadDefaultPaymentInfo has not been implemented.");
 	}
 
 	void loadOrderData() throws BackendException {
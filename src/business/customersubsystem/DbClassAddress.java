@@ -22,8 +22,8 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import middleware.DbConfigProperties;
+import middleware.dataaccess.CompiledRowMapper;
 import middleware.exceptions.DatabaseException;
-import middleware.externalinterfaces.DbConfigKey;
 import business.externalinterfaces.Address;
 import business.externalinterfaces.CustomerProfile;
 
@@ -39,6 +39,7 @@ class DbClassAddress implements IDbClassAddress {
 	DbClassAddress() {}
 
 	private JdbcOperations jdbcTemplate;
+	private JdbcOperations readJdbcTemplate;
 
 	@Inject
 	@Named("dataSourceAccounts")
@@ -46,48 +47,52 @@ class DbClassAddress implements IDbClassAddress {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
 
-
-	class MyRowMapperAll implements RowMapper<Address> {
-		public Address mapRow(ResultSet resultSet, int rownum)
-				throws SQLException {
-			Address address=new AddressImpl(
-					resultSet.getString("street"),
-					resultSet.getString("city"),
-					resultSet.getString("state"),
-					resultSet.getString("zip"),
-					resultSet.getBoolean("isship"),
-					resultSet.getBoolean("isbill")
-
-					);
-			return address;
-		}
+	//queries outside of transactions; may be served by a read replica
+	@Inject
+	@Named("dataSourceAccountsReads")
+	public void setReadDataSource(DataSource dataSource) {
+		this.readJdbcTemplate = new JdbcTemplate(dataSource);
 	}
 
 
-
-
-	class MyRowMapperShip implements RowMapper<Address> {
-		public Address mapRow(ResultSet resultSet, int rownum)
-				throws SQLException {
-			Address address=new AddressImpl(
-					resultSet.getString("shipaddress1"),
-					resultSet.getString("shipcity"),
-					resultSet.getString("shipstate"),
-					resultSet.getString("shipzipcode"),true,false);
-			return address;
+	//row mappers read columns by position, resolved once per query
+	private static final CompiledRowMapper<Address> ADDRESS_MAPPER = new CompiledRowMapper<Address>(
+			"street", "city", "state", "zip", "isship", "isbill") {
+		@Override
+		protected Address mapRow(ResultSet rs, int[] col) throws SQLException {
+			return new AddressImpl(
+					rs.getString(col[0]),
+					rs.getString(col[1]),
+					rs.getString(col[2]),
+					rs.getString(col[3]),
+					rs.getBoolean(col[4]),
+					rs.getBoolean(col[5]));
 		}
-	}
-	class MyRowMapperBill implements RowMapper<Address> {
-		public Address mapRow(ResultSet resultSet, int rownum)
-				throws SQLException {
-			Address address=new AddressImpl(
-					resultSet.getString("billaddress1"),
-					resultSet.getString("billcity"),
-					resultSet.getString("billstate"),
-					resultSet.getString("billzipcode"),false,true);
-			return address;
+	};
+
+	private static final CompiledRowMapper<Address> SHIP_ADDRESS_MAPPER = new CompiledRowMapper<Address>(
+			"shipaddress1", "shipcity", "shipstate", "shipzipcode") {
+		@Override
+		protected Address mapRow(ResultSet rs, int[] col) throws SQLException {
+			return new AddressImpl(
+					rs.getString(col[0]),
+					rs.getString(col[1]),
+					rs.getString(col[2]),
+					rs.getString(col[3]),true,false);
 		}
-	}
+	};
+
+	private static final CompiledRowMapper<Address> BILL_ADDRESS_MAPPER = new CompiledRowMapper<Address>(
+			"billaddress1", "billcity", "billstate", "billzipcode") {
+		@Override
+		protected Address mapRow(ResultSet rs, int[] col) throws SQLException {
+			return new AddressImpl(
+					rs.getString(col[0]),
+					rs.getString(col[1]),
+					rs.getString(col[2]),
+					rs.getString(col[3]),false,true);
+		}
+	};
 
 
 	//used when an Address object needs to be saved to the db
@@ -121,14 +126,6 @@ class DbClassAddress implements IDbClassAddress {
 	private Type queryType;
 
 
-	//column names for Address table
-	private final String STREET="street";
-	private final String CITY = "city";
-	private final String STATE = "state";
-	private final String ZIP = "zip";
-	private final String IS_SHIP = "isship";
-	private final String IS_BILL = "isbill";
-
 	//Precondition: Address has been set in this object
 
 	@Transactional(value = "txManagerAccounts", propagation = Propagation.REQUIRES_NEW, readOnly = true)
@@ -153,7 +150,7 @@ class DbClassAddress implements IDbClassAddress {
 		readDefaultShipTypes = new int[]{Types.INTEGER};
 //		dataAccessSS.atomicRead(this);
 		try {
-			List<Address> list = jdbcTemplate.query(readDefaultShipQuery, readDefaultShipParams, new MyRowMapperShip());
+			List<Address> list = readJdbcTemplate.query(readDefaultShipQuery, readDefaultShipParams, SHIP_ADDRESS_MAPPER.forQuery(readDefaultShipQuery));
 			return (AddressImpl) list.get(0);
 //			defaultShipAddress = new AddressImpl(entry.street, entry.city, entry.state, entry.zip, true, false);
 		} catch(DataAccessException e) { //this is a subclass of RuntimeException used by Spring
@@ -171,7 +168,7 @@ class DbClassAddress implements IDbClassAddress {
 		readDefaultBillTypes = new int[]{Types.INTEGER};
 //		dataAccessSS.atomicRead(this);
 		try {
-			List<Address> list = jdbcTemplate.query(readDefaultBillQuery, readDefaultBillParams, new MyRowMapperBill());
+			List<Address> list = readJdbcTemplate.query(readDefaultBillQuery, readDefaultBillParams, BILL_ADDRESS_MAPPER.forQuery(readDefaultBillQuery));
 			return (AddressImpl) list.get(0);
 //			defaultBillAddress = new AddressImpl(entry.street, entry.city, entry.state, entry.zip, false, true);
 		} catch(DataAccessException e) { //this is a subclass of RuntimeException used by Spring
@@ -190,7 +187,7 @@ class DbClassAddress implements IDbClassAddress {
 		readAllTypes = new int[]{Types.INTEGER};
 //    	dataAccessSS.atomicRead(this);
 		try {
-			List<Address> list = jdbcTemplate.query(readAllQuery, readAllParams, new MyRowMapperAll());
+			List<Address> list = readJdbcTemplate.query(readAllQuery, readAllParams, ADDRESS_MAPPER.forQuery(readAllQuery));
 			addressList = new ArrayList<>();
 			for(Address addr : list) {
 				addressList.add(addr);
@@ -205,8 +202,7 @@ class DbClassAddress implements IDbClassAddress {
 
 	@Override
 	public String getDbUrl() {
-		DbConfigProperties props = new DbConfigProperties();
-		return props.getProperty(DbConfigKey.ACCOUNT_DB_URL.getVal());
+		return DbConfigProperties.getConfig().getAccountDbUrl();
 
 	}
 	@Override
@@ -277,17 +273,9 @@ class DbClassAddress implements IDbClassAddress {
 		addressList = new LinkedList<Address>();
 		if(rs != null){
 			try {
+				CompiledRowMapper.Binding<Address> binding = ADDRESS_MAPPER.bind(readAllQuery, rs);
 				while(rs.next()) {
-					address = new AddressImpl();
-					String str = rs.getString(STREET);
-					address.setStreet(str);
-					address.setCity(rs.getString(CITY));
-					address.setState(rs.getString(STATE));
-					address.setZip(rs.getString(ZIP));
-					boolean isShipping = rs.getInt(IS_SHIP) == 1;
-					boolean isBilling = rs.getInt(IS_BILL) == 1;
-					address.isShippingAddress(isShipping);
-					address.isBillingAddress(isBilling);
+					address = binding.map(rs);
 					addressList.add(address);
 				}
 			}
@@ -301,9 +289,7 @@ class DbClassAddress implements IDbClassAddress {
 		try {
 			if(rs.next()){
 				defaultShipAddress
-						= new AddressImpl(rs.getString("shipaddress1"),
-						rs.getString("shipcity"), rs.getString("shipstate"),
-						rs.getString("shipzipcode"),true,false);
+						= (AddressImpl)SHIP_ADDRESS_MAPPER.bind(readDefaultShipQuery, rs).map(rs);
 			}
 		}
 		catch(SQLException e){
@@ -317,9 +303,7 @@ class DbClassAddress implements IDbClassAddress {
 		try {
 			if(rs.next()){
 				defaultBillAddress
-						= new AddressImpl(rs.getString("billaddress1"),
-						rs.getString("billcity"), rs.getString("billstate"),
-						rs.getString("billzipcode"),false,true);
+						= (AddressImpl)BILL_ADDRESS_MAPPER.bind(readDefaultBillQuery, rs).map(rs);
 			}
 		}
 		catch(SQLException e){
@@ -13,7 +13,6 @@ import middleware.DbConfigProperties;
 import middleware.dataaccess.DataAccessSubsystemFacade;
 import middleware.exceptions.DatabaseException;
 import middleware.externalinterfaces.DataAccessSubsystem;
-import middleware.externalinterfaces.DbConfigKey;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -46,7 +45,7 @@ public class DbClassCreditCard implements IDbClassCreditCard {
 	private JdbcOperations jdbcTemplate;
 
 	@Inject
-	@Named("dataSourceAccounts")
+	@Named("dataSourceAccountsReads")
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
@@ -66,8 +65,7 @@ public class DbClassCreditCard implements IDbClassCreditCard {
 
 	@Override
 	public String getDbUrl() {
-		DbConfigProperties props = new DbConfigProperties();
-		return props.getProperty(DbConfigKey.ACCOUNT_DB_URL.getVal());
+		return DbConfigProperties.getConfig().getAccountDbUrl();
 	}
 
 	@Override
@@ -11,7 +11,6 @@ import middleware.DbConfigProperties;
 import middleware.dataaccess.DataAccessSubsystemFacade;
 import middleware.exceptions.DatabaseException;
 import middleware.externalinterfaces.DataAccessSubsystem;
-import middleware.externalinterfaces.DbConfigKey;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -47,7 +46,7 @@ class DbClassCustomerProfile implements IDbClassCustomerProfile {
 	private JdbcOperations jdbcTemplate;
 
 	@Inject
-	@Named("dataSourceAccounts")
+	@Named("dataSourceAccountsReads")
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
@@ -108,8 +107,7 @@ class DbClassCustomerProfile implements IDbClassCustomerProfile {
     }
 
     public String getDbUrl() {
-    	DbConfigProperties props = new DbConfigProperties();	
-    	return props.getProperty(DbConfigKey.ACCOUNT_DB_URL.getVal());
+    	return DbConfigProperties.getConfig().getAccountDbUrl();
     }
 
     @Override
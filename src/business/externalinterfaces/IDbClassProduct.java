@@ -2,6 +2,7 @@ package business.externalinterfaces;
 
 import java.sql.ResultSet;
 import java.util.List;
+import java.util.Map;
 
 import business.util.TwoKeyHashMap;
 import middleware.exceptions.DatabaseException;
@@ -9,6 +10,21 @@ import middleware.externalinterfaces.DbClass;
 
 public interface IDbClassProduct extends DbClass {
 
+	/** The current snapshot of the product table; read from the database only the first time */
+	ProductCatalogSnapshot readProductSnapshot() throws DatabaseException;
+
+	/**
+	 * Force a database call; the result replaces the current snapshot
+	 */
+	ProductCatalogSnapshot refreshProductSnapshot() throws DatabaseException;
+
+	/**
+	 * Reads only the products changed since the last refresh, and merges them
+	 * into a new snapshot; needs the product.lastmodified column
+	 */
+	ProductCatalogSnapshot refreshChangedProducts() throws DatabaseException;
+
+	/** A copy of the current snapshot; readProductSnapshot avoids the copy */
 	TwoKeyHashMap<Integer, String, Product> readProductTable() throws DatabaseException;
 
 	/**
@@ -18,15 +34,37 @@ public interface IDbClassProduct extends DbClass {
 
 	List<Product> readProductList(Catalog cat) throws DatabaseException;
 
+	List<Product> readProductList(Catalog cat, ProductSortOrder order) throws DatabaseException;
+
+	/** One page of the catalog's products; see ProductCatalogSnapshot.getProductPage */
+	List<Product> readProductList(Catalog cat, Integer afterProductId, int limit, ProductSortOrder order) 
+			throws DatabaseException;
+
+	/**
+	 * Reads the catalog's products from the database and puts them in a 
+	 * new snapshot in place of those read before
+	 */
 	List<Product> refreshProductList(Catalog cat) throws DatabaseException;
 
 	Product readProduct(Integer productId) throws DatabaseException;
 
+	/** 
+	 * Products whose name or description matches every word of query, best 
+	 * match first; searches the cached products, not the database
+	 */
+	List<Product> searchProducts(String query, int limit) throws DatabaseException;
+
 	/**
 	 * Database columns: productid, productname, totalquantity, priceperunit,
 	 * mfgdate, catalogid, description
 	 */
 	int saveNewProduct(Product product) throws DatabaseException;
+	
+	/** 
+	 * Saves the products in one JDBC batch, in a transaction of its own; their 
+	 * ids are not set, and the cache is not updated (refreshProductSnapshot does that)
+	 */
+	void saveNewProducts(List<Product> products) throws DatabaseException;
 
 	/// DbClass implemented methods
 	String getDbUrl();
@@ -40,5 +78,14 @@ public interface IDbClassProduct extends DbClass {
 	void populateEntity(ResultSet resultSet) throws DatabaseException;
 
 	boolean deleteProduct(Product product) throws DatabaseException;
+	
+	/** product.totalquantity, read from the primary database; null if there is no such product */
+	Integer readStockLevel(int productId) throws DatabaseException;
+	
+	/**
+	 * Adds each delta (product id -> units, may be negative) to totalquantity,
+	 * in one batch and one transaction: all of them or none
+	 */
+	void addToStock(Map<Integer, Integer> deltas) throws DatabaseException;
 
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package business.externalinterfaces;
+
+import java.util.List;
+
+/**
+ * An unchanging view of the whole product table as it was read at one
+ * moment. Lookups need no copying or locking; a newer snapshot replaces 
+ * this one, as a whole, when the table is refreshed. Snapshots are 
+ * numbered in the order they were taken, so a caller holding on to data 
+ * can tell whether it is out of date by comparing versions.
+ */
+public interface ProductCatalogSnapshot {
+	long getVersion();
+	
+	/** null if there is no product with this id */
+	Product getProduct(int productId);
+	
+	/** null if there is no product with this name */
+	Product getProductWithName(String productName);
+	
+	/** null if there is no product with this name */
+	Integer getProductId(String productName);
+	
+	/** All products, in the order read; the list cannot be modified */
+	List<Product> getProducts();
+	
+	/** The products in the catalog, in the order read; empty for an unknown catalog */
+	List<Product> getProducts(int catalogId);
+	
+	/** 
+	 * The products in the catalog in the given order. Every order is worked
+	 * out when the snapshot is built, so nothing is sorted here.
+	 */
+	List<Product> getProducts(int catalogId, ProductSortOrder order);
+	
+	/**
+	 * At most limit products of the catalog, in the given order, starting 
+	 * just after the product with id afterProductId (from the first product 
+	 * if afterProductId is null). In ID order, a product no longer in the 
+	 * catalog still marks the place to continue from; in the other orders 
+	 * its place is unknown, and the page is empty.
+	 */
+	List<Product> getProductPage(int catalogId, Integer afterProductId, int limit, ProductSortOrder order);
+	
+	int size();
+}
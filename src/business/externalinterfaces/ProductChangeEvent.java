@@ -0,0 +1,28 @@
+package business.externalinterfaces;
+
+/** 
+ * A change to a product, as delivered to a ProductChangeListener; 
+ * only the latest change of each kind to a product is delivered
+ */
+public interface ProductChangeEvent {
+	public enum Type {
+		/** A product was added; getProduct() is the new product */
+		CREATED,
+		/** A product was deleted; getProduct() is null */
+		DELETED,
+		/** A product's unit price changed; getProduct() is the changed product */
+		PRICE_CHANGED,
+		/** The units of a product available to buy changed; getProduct() is null */
+		STOCK_CHANGED
+	}
+	
+	Type getType();
+	
+	int getProductId();
+	
+	/** The product as it is now, for CREATED and PRICE_CHANGED; otherwise null */
+	Product getProduct();
+	
+	/** Units available to buy, for STOCK_CHANGED; otherwise -1 */
+	int getQuantityAvailable();
+}
@@ -0,0 +1,9 @@
+package business.externalinterfaces;
+
+import java.util.List;
+
+/** Told about product changes, a batch at a time; see ProductSubsystem.addProductChangeListener */
+public interface ProductChangeListener {
+	/** The changes since the last batch: products added, deleted and repriced, then stock changes */
+	void productsChanged(List<ProductChangeEvent> events);
+}
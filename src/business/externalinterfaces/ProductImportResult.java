@@ -0,0 +1,21 @@
+package business.externalinterfaces;
+
+import java.util.List;
+
+/** The outcome of a bulk product import */
+public interface ProductImportResult {
+	/** Records read from the file */
+	int getRowCount();
+	
+	/** Products saved to the database */
+	int getImportedCount();
+	
+	/** Records that were not saved */
+	int getErrorCount();
+	
+	/** 
+	 * One message per record not saved, such as "Row 12: price is not a number: abc",
+	 * in row order; only the first few hundred are kept 
+	 */
+	List<String> getErrors();
+}
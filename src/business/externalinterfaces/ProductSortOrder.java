@@ -0,0 +1,27 @@
+package business.externalinterfaces;
+
+import java.util.Comparator;
+
+/** Orders in which the products of a catalog can be listed */
+public enum ProductSortOrder {
+	/** the order in which the products were read */
+	NONE(null),
+	ID(Comparator.comparingInt(Product::getProductId)),
+	NAME(Comparator.comparing(Product::getProductName, 
+			Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))),
+	PRICE(Comparator.comparingDouble(Product::getUnitPrice)),
+	STOCK(Comparator.comparingInt(Product::getQuantityAvail));
+	
+	private final Comparator<Product> comparator;
+	
+	private ProductSortOrder(Comparator<Product> comparator) {
+		//ties are broken by id, so each product has one place in the order
+		this.comparator = (comparator == null) ? null 
+				: comparator.thenComparingInt(Product::getProductId);
+	}
+	
+	/** null for NONE; otherwise no two products compare as equal */
+	public Comparator<Product> getComparator() {
+		return comparator;
+	}
+}
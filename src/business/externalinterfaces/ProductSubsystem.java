@@ -1,12 +1,40 @@
 
 package business.externalinterfaces;
+import java.io.File;
 import java.util.List;
+import java.util.concurrent.Executor;
 import business.exceptions.BackendException;
+import business.exceptions.BusinessException;
 
 public interface ProductSubsystem {
 
+	/** Units of the product in stock and not held in any shopping cart */
 	public int readQuantityAvailable(Product product) throws BackendException;
 	
+	/** Units of the product available to cart: those held in no cart, and those cart holds */
+	public int readQuantityAvailable(ShoppingCartSubsystem cart, Product product) throws BackendException;
+	
+	/**
+	 * Holds stock for cart: as many units of each product as the items ask for,
+	 * if there are that many. Units held for products no longer among the items 
+	 * go back into stock, as do all of cart's units once the cart has not
+	 * been changed for reservation_ttl_millis.
+	 */
+	public void reserveStock(ShoppingCartSubsystem cart, List<CartItem> items) throws BackendException;
+	
+	/** Puts every unit held for cart back into stock */
+	public void releaseStock(ShoppingCartSubsystem cart);
+	
+	/**
+	 * Takes the items out of stock, using the units held for cart first. If too 
+	 * few units are left of any product, nothing is taken and BusinessException
+	 * is thrown. Afterwards nothing is held for cart.
+	 */
+	public void commitStock(ShoppingCartSubsystem cart, List<CartItem> items) throws BusinessException;
+	
+	/** Puts items taken by commitStock back into stock, as when their order could not be saved */
+	public void restock(List<CartItem> items);
+	
 	/** obtains product for a given product name */
     public Product getProductFromName(String prodName) throws BackendException;
     
@@ -18,7 +46,29 @@ public interface ProductSubsystem {
 	/** gets a list of products from the database, based on catalog */
 	public List<Product> getProductList(Catalog catalog) throws BackendException;
 	
+	/** the catalog's products in the given order; the list cannot be modified */
+	public List<Product> getProductList(Catalog catalog, ProductSortOrder order) throws BackendException;
+	
+	/** 
+	 * At most limit of the catalog's products in the given order, continuing 
+	 * after the product with id afterProductId (null for the first page) 
+	 */
+	public List<Product> getProductList(Catalog catalog, Integer afterProductId, int limit, 
+			ProductSortOrder order) throws BackendException;
+	
 	public Integer getProductIdFromName(String prodName) throws BackendException;
+	
+	/** 
+	 * Finds products by words from their names and descriptions; prefixes and
+	 * small typing mistakes also match. Best matches first, at most limit of them.
+	 */
+	public List<Product> searchProducts(String query, int limit) throws BackendException;
+	
+	/** 
+	 * The products as last read from the database; compare versions to 
+	 * find out whether data taken from an earlier snapshot is stale 
+	 */
+	public ProductCatalogSnapshot getProductSnapshot() throws BackendException;
 	public CatalogTypes getCatalogTypes() throws BackendException;
 	
 	
@@ -29,12 +79,29 @@ public interface ProductSubsystem {
 	/** saves a new product obtained from user input */
 	public int saveNewProduct(Product product) throws BackendException;
 
+	/**
+	 * Saves the products in a CSV or JSON feed file (see ProductImportResult 
+	 * for what is reported); throws BackendException if the file cannot be read
+	 */
+	public ProductImportResult importProducts(File file) throws BackendException;
+
 	/** deletes a product obtained from user input */
 	public boolean deleteProduct(Product product) throws BackendException;
 	
 	/** deletes a catalog obtained from user input */
 	public boolean deleteCatalog(Catalog catalog) throws BackendException;
 	
+	/**
+	 * Has listener told, on deliverOn, about products added, deleted or 
+	 * repriced (by any client, once the product cache has seen it) and about
+	 * changes to the units available. Changes are passed on in batches, 
+	 * gathered over product_event_coalesce_millis, keeping only the latest 
+	 * change of each kind to a product.
+	 */
+	public void addProductChangeListener(ProductChangeListener listener, Executor deliverOn);
+	
+	public void removeProductChangeListener(ProductChangeListener listener);
+	
     //TESTING
     public IDbClassCatalog getGenericDbClassCatalog(); 
     public IDbClassProduct getGenericDbClassProduct(); 
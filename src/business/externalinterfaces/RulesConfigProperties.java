@@ -1,29 +1,66 @@
 package business.externalinterfaces;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Logger;
-import middleware.DbConfigProperties;
 
+import middleware.ConfigFileWatcher;
+
+/**
+ * Settings from rulesconfig.properties. Every RulesConfigKey must have a
+ * value; the file is checked as a whole and kept as an immutable map, which
+ * is replaced in one step when the file changes on disk (see watchForChanges).
+ * A file that fails the check is rejected, and the settings in use are kept.
+ */
 public class RulesConfigProperties {
 
     private static final String PROPERTIES = "resources/rulesconfig.properties";
     private static final Logger LOG = Logger.getLogger("");
     private static final String PROPS = PROPERTIES;
-    public static Properties props;
+    private static volatile Map<RulesConfigKey, String> config;
+    private static volatile String location = PROPS;
 
     static {
-        if (props == null) {
+        if (config == null) {
             readProps();
+            watchForChanges();
         }
     }
 
     public String getProperty(String key) {
-        return props.getProperty(key);
+        for (RulesConfigKey k : RulesConfigKey.values()) {
+            if (k.getVal().equals(key)) {
+                return config.get(k);
+            }
+        }
+        return null;
+
+    }
+
+    public String getProperty(RulesConfigKey key) {
+        return config.get(key);
+    }
 
+    /**
+     * Starts reloading the properties file when it changes on disk. Does
+     * nothing if the file is packed in a jar.
+     */
+    public static void watchForChanges() {
+        ConfigFileWatcher.watch(location, () -> {
+            try {
+                config = load(location);
+                LOG.info("Rules configuration reloaded from " + location);
+            } catch (IOException | IllegalArgumentException e) {
+                LOG.warning("Keeping the current rules configuration: " + e.getMessage());
+            }
+        });
     }
 
     private static void readProps() {
@@ -38,17 +75,39 @@ public class RulesConfigProperties {
      * @param propsLoc
      */
     public static void readProps(String loc) {
-        System.out.println(loc);
-        Properties ret = new Properties();
-        URL url = RulesConfigProperties.class.getClassLoader().
-                getResource(loc);
+        LOG.info("Location from which readProps will read (in RulesConfigProperties): " + loc);
         try {
-            ret.load(url.openStream());
-        } catch (IOException e) {
-            LOG.warning("Unable to read properties file for Ebazaar");
-        } finally {
-            props = ret;
+            config = load(loc);
+            location = loc;
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.severe("Unable to read properties file for Ebazaar: " + e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
         }
+    }
 
+    private static Map<RulesConfigKey, String> load(String loc) throws IOException {
+        URL url = RulesConfigProperties.class.getClassLoader().
+                getResource(loc);
+        if (url == null) {
+            throw new IOException(loc + " not found on the classpath");
+        }
+        Properties ret = new Properties();
+        try (InputStream in = url.openStream()) {
+            ret.load(in);
+        }
+        Map<RulesConfigKey, String> vals = new EnumMap<RulesConfigKey, String>(RulesConfigKey.class);
+        List<String> missing = new ArrayList<String>();
+        for (RulesConfigKey key : RulesConfigKey.values()) {
+            String val = ret.getProperty(key.getVal());
+            if (val == null || val.trim().isEmpty()) {
+                missing.add(key.getVal());
+            } else {
+                vals.put(key, val.trim());
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("Invalid rules configuration, missing " + missing);
+        }
+        return Collections.unmodifiableMap(vals);
     }
 }
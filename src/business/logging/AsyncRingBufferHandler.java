@@ -0,0 +1,208 @@
+package business.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+/**
+ * A java.util.logging Handler that never makes the logging thread wait. 
+ * publish only puts the record in a bounded ring buffer; a single daemon 
+ * thread takes records from the buffer and passes them to the target 
+ * handlers (typically a ConsoleHandler and a FileHandler), which do all 
+ * formatting and I/O. If the buffer is full, the record is dropped and 
+ * counted instead.
+ *
+ * Records below WARNING are also rate limited per package (the logger
+ * name, less its class name if it has one): each package may publish at
+ * most rateLimit such records per second, and the rest are dropped and
+ * counted. The number of dropped records is logged as a WARNING, through 
+ * the targets, whenever it changes.
+ *
+ * Configured in logging.properties, with these keys prefixed by the class name:
+ *   targets              comma-separated Handler class names (default ConsoleHandler)
+ *   capacity             size of the ring buffer (default 8192)
+ *   rateLimit            records per second per package, 0 = unlimited (default 0)
+ *   rateLimit.<package>  overrides rateLimit for the named package
+ *   level                as for any Handler (default ALL)
+ *
+ * The source class and method of a record are not filled in, since finding
+ * them on the logging thread would cost a stack walk on every call; 
+ * formatters that print them (such as XMLFormatter) will show null.
+ */
+public class AsyncRingBufferHandler extends Handler {
+	private static final String PREFIX = AsyncRingBufferHandler.class.getName();
+	private static final int DEFAULT_CAPACITY = 8192;
+	
+	private final BlockingQueue<LogRecord> buffer;
+	private final List<Handler> targets = new ArrayList<Handler>();
+	private final int defaultRateLimit;
+	private final ConcurrentMap<String, RateWindow> rateWindows = new ConcurrentHashMap<String, RateWindow>();
+	private final LongAdder droppedFull = new LongAdder();
+	private final LongAdder droppedRateLimited = new LongAdder();
+	private final Thread writer;
+	private volatile boolean closed = false;
+	
+	public AsyncRingBufferHandler() {
+		LogManager manager = LogManager.getLogManager();
+		buffer = new ArrayBlockingQueue<LogRecord>(intProperty(manager, ".capacity", DEFAULT_CAPACITY));
+		defaultRateLimit = intProperty(manager, ".rateLimit", 0);
+		String level = manager.getProperty(PREFIX + ".level");
+		setLevel((level == null) ? Level.ALL : Level.parse(level.trim()));
+		String names = manager.getProperty(PREFIX + ".targets");
+		if(names == null) names = "java.util.logging.ConsoleHandler";
+		for(String name : names.split(",")) {
+			if(name.trim().isEmpty()) continue;
+			try {
+				targets.add((Handler)Class.forName(name.trim(), true, 
+						ClassLoader.getSystemClassLoader()).getDeclaredConstructor().newInstance());
+			} catch(ReflectiveOperationException | RuntimeException e) {
+				reportError("Unable to create log handler " + name, e, ErrorManager.OPEN_FAILURE);
+			}
+		}
+		writer = new Thread(this::drain, "ebazaar-log-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	@Override
+	public void publish(LogRecord record) {
+		if(closed || !isLoggable(record)) return;
+		if(record.getLevel().intValue() < Level.WARNING.intValue() && !withinRateLimit(record)) {
+			droppedRateLimited.increment();
+			return;
+		}
+		if(!buffer.offer(record)) {
+			droppedFull.increment();
+		}
+	}
+	
+	/** Records dropped because the ring buffer was full */
+	public long getDroppedFull() {
+		return droppedFull.sum();
+	}
+	
+	/** Records dropped by the per-package rate limit */
+	public long getDroppedRateLimited() {
+		return droppedRateLimited.sum();
+	}
+	
+	@Override
+	public void flush() {
+		//the writer flushes the targets whenever it has emptied the buffer
+	}
+	
+	/** Writes out whatever is still buffered, then closes the targets */
+	@Override
+	public void close() {
+		closed = true;
+		writer.interrupt();
+		try {
+			writer.join(2000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for(Handler target : targets) {
+			target.close();
+		}
+	}
+	
+	private void drain() {
+		long reportedFull = 0, reportedRateLimited = 0;
+		List<LogRecord> batch = new ArrayList<LogRecord>();
+		while(true) {
+			try {
+				LogRecord first = buffer.poll(1, TimeUnit.SECONDS);
+				if(first != null) batch.add(first);
+			} catch (InterruptedException e) {
+				if(!closed) continue;
+			}
+			buffer.drainTo(batch);
+			for(LogRecord record : batch) {
+				write(record);
+			}
+			long full = droppedFull.sum(), rateLimited = droppedRateLimited.sum();
+			if(full != reportedFull || rateLimited != reportedRateLimited) {
+				write(new LogRecord(Level.WARNING, "Logging has dropped " + (full - reportedFull) 
+						+ " records because its buffer was full and " + (rateLimited - reportedRateLimited) 
+						+ " records over the rate limit"));
+				reportedFull = full;
+				reportedRateLimited = rateLimited;
+			}
+			if(!batch.isEmpty()) {
+				for(Handler target : targets) target.flush();
+				batch.clear();
+			}
+			if(closed && buffer.isEmpty()) return;
+		}
+	}
+	
+	private void write(LogRecord record) {
+		for(Handler target : targets) {
+			try {
+				target.publish(record);
+			} catch(RuntimeException e) {
+				reportError("Log handler failed", e, ErrorManager.WRITE_FAILURE);
+			}
+		}
+	}
+	
+	private boolean withinRateLimit(LogRecord record) {
+		String pkg = packageOf(record.getLoggerName());
+		RateWindow window = rateWindows.computeIfAbsent(pkg, 
+				p -> new RateWindow(intProperty(LogManager.getLogManager(), ".rateLimit." + p, defaultRateLimit)));
+		return window.tryAcquire(record.getMillis() / 1000);
+	}
+	
+	// loggers are named either for a package or for a class
+	private static String packageOf(String loggerName) {
+		if(loggerName == null) return "";
+		int dot = loggerName.lastIndexOf('.');
+		if(dot < 0 || dot == loggerName.length() - 1) return loggerName;
+		return Character.isUpperCase(loggerName.charAt(dot + 1)) 
+				? loggerName.substring(0, dot) : loggerName;
+	}
+	
+	private static int intProperty(LogManager manager, String suffix, int defaultValue) {
+		String val = manager.getProperty(PREFIX + suffix);
+		try {
+			return (val == null) ? defaultValue : Integer.parseInt(val.trim());
+		} catch(NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+	
+	/** Counts the records a package has published in the current second */
+	private static final class RateWindow {
+		private final int limit;
+		private volatile long second = -1;
+		private final AtomicInteger count = new AtomicInteger();
+		
+		RateWindow(int limit) {
+			this.limit = limit;
+		}
+		
+		boolean tryAcquire(long now) {
+			if(limit <= 0) return true;
+			if(second != now) {
+				synchronized(this) {
+					if(second != now) {
+						count.set(0);
+						second = now;
+					}
+				}
+			}
+			return count.incrementAndGet() <= limit;
+		}
+	}
+}
@@ -6,8 +6,9 @@ import java.util.logging.SimpleFormatter;
 public class EbazSimpleFormatter extends SimpleFormatter {
 	@Override
 	public String format(LogRecord record) {	
+		//formatMessage fills in the {0}, {1}... parameters of the message
 		String retVal = record.getLevel().toString()+": " +
-			record.getMessage() + "\r\n";
+			formatMessage(record) + "\r\n";
 		return retVal;
 	}
 }
@@ -21,9 +21,10 @@ import business.externalinterfaces.Order;
 import business.externalinterfaces.OrderItem;
 import business.util.Convert;
 import middleware.DbConfigProperties;
+import middleware.dataaccess.CompiledRowMapper;
 import middleware.exceptions.DatabaseException;
 import middleware.externalinterfaces.DataAccessSubsystem;
-import middleware.externalinterfaces.DbConfigKey;
+import middleware.externalinterfaces.DbConnectionHandle;
 
 @Repository
 class DbClassOrder implements IDbClassOrder {
@@ -56,7 +57,9 @@ class DbClassOrder implements IDbClassOrder {
 	Object[] orderItemsParams, orderIdsParams, orderDataParams, submitOrderParams, submitOrderItemParams;
 	int[] orderItemsTypes, orderIdsTypes, orderDataTypes, submitOrderTypes, submitOrderItemTypes;
 
-	// This is set by submitOrder and then used by submitOrderData
+	// The state of the operation running. The DbClassOrder that Spring injects
+	// is shared by every caller, so each operation runs on its own instance
+	// (see newCall); this one's fields are never set.
 	private CustomerProfile custProfile;
 	private List<Integer> orderIds;
 	private List<OrderItem> orderItems;
@@ -66,7 +69,18 @@ class DbClassOrder implements IDbClassOrder {
 	DbClassOrder() {
 	}
 
+	/** A new instance to run one operation on, with the same DataAccessSubsystem */
+	private DbClassOrder newCall() {
+		DbClassOrder call = new DbClassOrder();
+		call.dataAccessSS = dataAccessSS;
+		return call;
+	}
+
 	public List<Integer> getAllOrderIds(CustomerProfile custProfile) throws DatabaseException {
+		return newCall().readOrderIds(custProfile);
+	}
+
+	private List<Integer> readOrderIds(CustomerProfile custProfile) throws DatabaseException {
 		queryType = Type.GET_ORDER_IDS;
 		orderIdsParams = new Object[] { custProfile.getCustId() };
 		orderIdsTypes = new int[] { Types.INTEGER };
@@ -75,6 +89,10 @@ class DbClassOrder implements IDbClassOrder {
 	}
 
 	public OrderImpl getOrderData(Integer orderId) throws DatabaseException {
+		return newCall().readOrderData(orderId);
+	}
+
+	private OrderImpl readOrderData(Integer orderId) throws DatabaseException {
 		queryType = Type.GET_ORDER_DATA;
 		orderDataParams = new Object[] { orderId };
 		orderDataTypes = new int[] { Types.INTEGER };
@@ -86,38 +104,42 @@ class DbClassOrder implements IDbClassOrder {
 	 * This method submits top-level data in Order to the Ord table (this is
 	 * executed within the helper method submitOrderData) and then, after it
 	 * gets the order id, it submits each OrderItem from Order to the OrderItem
-	 * table (items are submitted one at a time using submitOrderItem). All this
-	 * is done within a transaction. Separate methods are provided
+	 * table (items are submitted together, in one batch, using submitOrderItems).
+	 * All this is done within a transaction. Separate methods are provided
 	 */
 	public void submitOrder(CustomerProfile custProfile, Order order) throws DatabaseException {
+		newCall().insertOrder(custProfile, order);
+	}
+
+	private void insertOrder(CustomerProfile custProfile, Order order) throws DatabaseException {
 		LOG.warning("Method submitOrder(CustomerProfile custProfile, Order order) has not beenimplemented");
 		// implemented
 		this.order = order;
 		this.custProfile = custProfile;
 
-		dataAccessSS.establishConnection(this);
-		dataAccessSS.startTransaction();
+		DbConnectionHandle handle = dataAccessSS.establishConnection(this);
 
 		try {
-			Integer orderId = submitOrderData();
+			dataAccessSS.startTransaction(handle);
+			Integer orderId = submitOrderData(handle);
 			List<OrderItem> orderItems = order.getOrderItems();
 			for (OrderItem orderItem : orderItems) {
 				orderItem.setOrderId(orderId);
-				submitOrderItem(orderItem);
 			}
-			dataAccessSS.commit();
+			submitOrderItems(handle, orderItems);
+			dataAccessSS.commit(handle);
 		} catch (DatabaseException e) {
 			LOG.warning("Database error");
-			dataAccessSS.rollback();
+			dataAccessSS.rollback(handle);
 			throw (e);
 		} finally {
-			dataAccessSS.releaseConnection();
+			dataAccessSS.releaseConnection(handle);
 		}
 
 	}
 
 	/** This is part of the general submitOrder method */
-	private Integer submitOrderData() throws DatabaseException {
+	private Integer submitOrderData(DbConnectionHandle handle) throws DatabaseException {
 		queryType = Type.SUBMIT_ORDER;
 		Address shipAddr = order.getShipAddress();
 		Address billAddr = order.getBillAddress();
@@ -133,23 +155,24 @@ class DbClassOrder implements IDbClassOrder {
 				Types.VARCHAR, Types.DOUBLE };
 		// creation and release of connection handled by submitOrder
 		// this should be part of a transaction started in submitOrder
-		return dataAccessSS.insert();
+		return dataAccessSS.insert(handle);
 	}
 
 	/** This is part of the general submitOrder method */
-	private void submitOrderItem(OrderItem item) throws DatabaseException {
+	private void submitOrderItems(DbConnectionHandle handle, List<OrderItem> items) throws DatabaseException {
 		queryType = Type.SUBMIT_ORDER_ITEM;
-		LOG.warning("Method submitOrderItem(OrderItem item) in DbClassOrder has not been implemented.");
-		// implemented
-		queryType = Type.SUBMIT_ORDER_ITEM;
-		submitOrderItemParams = new Object[] { item.getOrderId(), item.getProductId(), item.getQuantity(),
-				item.getTotalPrice(), 0.0, 0.0 };
+		List<Object[]> rows = new ArrayList<Object[]>(items.size());
+		for (OrderItem item : items) {
+			rows.add(new Object[] { item.getOrderId(), item.getProductId(), item.getQuantity(),
+					item.getTotalPrice(), 0.0, 0.0 });
+		}
+		submitOrderItemParams = rows.isEmpty() ? null : rows.get(0);
 		submitOrderItemTypes = new int[] { Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.DOUBLE, Types.DOUBLE,
 				Types.DOUBLE };
 
 		// creation and release of connection handled by submitOrder
 		// this should be part of a transaction started in submitOrder
-		dataAccessSS.insert();
+		dataAccessSS.insertBatch(handle, rows);
 	}
 
 	/*
@@ -160,11 +183,8 @@ class DbClassOrder implements IDbClassOrder {
 	 */
 	@Override
 	public List<OrderItem> getOrderItems(Integer orderId) throws DatabaseException {
-		// implemented
-		if (orderItems == null) {
-			return refreshOrderItems(orderId);
-		}
-		return Collections.unmodifiableList(orderItems);
+		// implemented; nothing is kept between calls, so this always reads
+		return refreshOrderItems(orderId);
 	}
 
 	/*
@@ -175,6 +195,10 @@ class DbClassOrder implements IDbClassOrder {
 	 */
 	@Override
 	public List<OrderItem> refreshOrderItems(Integer orderId) throws DatabaseException {
+		return newCall().readOrderItems(orderId);
+	}
+
+	private List<OrderItem> readOrderItems(Integer orderId) throws DatabaseException {
 		queryType = Type.GET_ORDER_ITEMS;
 		orderItemsParams = new Object[] { orderId };
 		orderItemsTypes = new int[] { Types.INTEGER };
@@ -182,24 +206,25 @@ class DbClassOrder implements IDbClassOrder {
 		return orderItems;
 	}
 
+	// maps a row of the order items query; columns are read by position
+	private static final CompiledRowMapper<OrderItem> ORDER_ITEM_MAPPER = new CompiledRowMapper<OrderItem>(
+			"quantity", "totalprice", "productname") {
+		@Override
+		protected OrderItem mapRow(ResultSet rs, int[] col) throws SQLException {
+			int quantity = rs.getInt(col[0]);
+			double totalPrice = rs.getInt(col[1]);
+			return new OrderItemImpl(rs.getString(col[2]), quantity, totalPrice / quantity);
+		}
+	};
+
 	private void populateOrderItems(ResultSet rs) throws DatabaseException {
 		LOG.warning("Method populateOrderItems(ResultSet) still needs to be implemented");
 		// implemented
 		orderItems = new ArrayList<OrderItem>();
 		try {
+			CompiledRowMapper.Binding<OrderItem> binding = ORDER_ITEM_MAPPER.bind(orderItemsQuery, rs);
 			while (rs.next()) {
-
-				// int productId = rs.getInt("productid");
-				int quantity = rs.getInt("quantity");
-				double totalPrice = rs.getInt("totalprice");
-				String productname = rs.getString("productname");
-
-				// String productName =
-				// pss.getProductFromId(productId).getProductName();
-				OrderItem nextItem = new OrderItemImpl(productname, quantity, totalPrice / quantity);
-
-				orderItems.add(nextItem);
-
+				orderItems.add(binding.map(rs));
 			}
 
 		} catch (SQLException e) {
@@ -214,8 +239,9 @@ class DbClassOrder implements IDbClassOrder {
 	private void populateOrderIds(ResultSet resultSet) throws DatabaseException {
 		orderIds = new LinkedList<Integer>();
 		try {
+			int orderIdCol = resultSet.findColumn("orderid");
 			while (resultSet.next()) {
-				orderIds.add(resultSet.getInt("orderid"));
+				orderIds.add(resultSet.getInt(orderIdCol));
 			}
 		} catch (SQLException e) {
 			throw new DatabaseException(e);
@@ -227,9 +253,11 @@ class DbClassOrder implements IDbClassOrder {
 
 		try {
 			orderData = new OrderImpl();
+			int dateCol = resultSet.findColumn("orderdate");
+			int totalPriceCol = resultSet.findColumn("totalpriceamount");
 			while (resultSet.next()) {
-				String date = resultSet.getString("orderdate");
-				double totalPrice = resultSet.getDouble("totalpriceamount");
+				String date = resultSet.getString(dateCol);
+				double totalPrice = resultSet.getDouble(totalPriceCol);
 				orderData = new OrderImpl();
 				if (date != null)
 					orderData.setDate(Convert.localDateForString(date));
@@ -273,8 +301,7 @@ class DbClassOrder implements IDbClassOrder {
 	 */
 	@Override
 	public String getDbUrl() {
-		DbConfigProperties props = new DbConfigProperties();
-		return props.getProperty(DbConfigKey.ACCOUNT_DB_URL.getVal());
+		return DbConfigProperties.getConfig().getAccountDbUrl();
 	}
 
 	/*
@@ -33,12 +33,13 @@ class CatalogImpl implements Catalog {
 		if(this == ob) return true;
 		if(getClass() != ob.getClass()) return false;
 		CatalogImpl c = (CatalogImpl)ob;
-		return name.equals(c.name);
+		//by id alone: the name may not be known yet, and can be edited
+		return id == c.id;
 	}
 	
 	public int hashCode() {
 		int result = 17;
-		result += 31 * result + name.hashCode();
+		result += 31 * result + id;
 		return result;
 	}
 	
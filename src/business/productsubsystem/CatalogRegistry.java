@@ -0,0 +1,74 @@
+package business.productsubsystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import business.externalinterfaces.Catalog;
+
+/**
+ * Holds one Catalog instance per catalog id, shared by every product of
+ * that catalog and by the catalog lists handed to the UI, together with
+ * the catalog list as last read from the CatalogType table. 
+ * 
+ * The list and its id/name indexes form an immutable CatalogTypesImpl, 
+ * published through a volatile field; saveNewCatalog and deleteCatalog 
+ * invalidate it, and the next read loads it again. Interned instances 
+ * outlive invalidation, and are never changed: loading the list replaces
+ * the instance of a catalog whose name is new or has changed, so products
+ * read before that keep the old instance until they are read again.
+ * Products are therefore read after the catalog list (see 
+ * DbClassProduct.refreshProductSnapshot).
+ */
+enum CatalogRegistry {
+	INSTANCE;
+	
+	private static final Logger LOG = 
+			Logger.getLogger(CatalogRegistry.class.getPackage().getName());
+	
+	private final ConcurrentMap<Integer, CatalogImpl> interned = new ConcurrentHashMap<Integer, CatalogImpl>();
+	
+	//null when not loaded, or invalidated since
+	private volatile CatalogTypesImpl types;
+	
+	/** The shared instance for id; its name is null until the catalog list is loaded */
+	Catalog intern(int id) {
+		return interned.computeIfAbsent(id, key -> new CatalogImpl(key, null));
+	}
+	
+	/** The shared instance for id, named name; replaced if it has another name */
+	private CatalogImpl intern(int id, String name) {
+		return interned.compute(id, (key, cat) -> 
+			(cat != null && Objects.equals(cat.getName(), name)) ? cat : new CatalogImpl(key, name));
+	}
+	
+	/** The cached catalog list, or null if it needs to be read from the database */
+	CatalogTypesImpl getCatalogTypes() {
+		return types;
+	}
+	
+	/** 
+	 * Replaces the cached catalog list with the rows read from CatalogType 
+	 * (catalog id -> catalog name, in the order read) 
+	 */
+	CatalogTypesImpl load(Map<Integer, String> rows) {
+		List<Catalog> catalogs = new ArrayList<Catalog>(rows.size());
+		for(Map.Entry<Integer, String> row : rows.entrySet()) {
+			catalogs.add(intern(row.getKey(), row.getValue()));
+		}
+		CatalogTypesImpl loaded = new CatalogTypesImpl(catalogs);
+		types = loaded;
+		LOG.fine(() -> "Loaded " + catalogs.size() + " catalogs");
+		return loaded;
+	}
+	
+	/** Called after a catalog is added or deleted */
+	void invalidate() {
+		types = null;
+	}
+	
+}
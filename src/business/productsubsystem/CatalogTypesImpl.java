@@ -3,6 +3,7 @@ package business.productsubsystem;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -19,7 +20,25 @@ import business.externalinterfaces.CatalogTypes;
 public class CatalogTypesImpl implements CatalogTypes {
     HashMap<Integer,String> catalogIdToName = new HashMap<Integer,String>();
     HashMap<String,Integer> catalogNameToId = new HashMap<String,Integer>();
+    HashMap<Integer,Catalog> catalogsById = new HashMap<Integer,Catalog>();
     List<Catalog> catalogs = new ArrayList<Catalog>();
+    //instances built from CatalogRegistry are shared, and cannot be changed
+    private final boolean shared;
+    
+    public CatalogTypesImpl() {
+    	shared = false;
+    }
+    
+    /** A shared, unchangeable list; see CatalogRegistry */
+    CatalogTypesImpl(List<Catalog> sharedCatalogs) {
+    	for(Catalog c : sharedCatalogs) {
+    		catalogIdToName.put(c.getId(), c.getName());
+    		catalogNameToId.put(c.getName(), c.getId());
+    		catalogsById.put(c.getId(), c);
+    	}
+    	catalogs = Collections.unmodifiableList(new ArrayList<Catalog>(sharedCatalogs));
+    	shared = true;
+    }
 
     public List<String> getCatalogNames() {
       	String[] names = catalogIdToName.values().toArray(new String[0]);
@@ -35,11 +54,25 @@ public class CatalogTypesImpl implements CatalogTypes {
     }
 
     public void addCatalog(Integer id, String name) {
+    	if(shared) {
+    		throw new UnsupportedOperationException("The shared catalog list cannot be changed");
+    	}
         catalogIdToName.put(id,name);
         catalogNameToId.put(name,id);
-        catalogs.add(new CatalogImpl(id, name));
+        Catalog c = new CatalogImpl(id, name);
+        catalogsById.put(id, c);
+        catalogs.add(c);
         
     }
+    
+    public Catalog getCatalog(Integer id) {
+    	return catalogsById.get(id);
+    }
+    
+    public Catalog getCatalogWithName(String name) {
+    	Integer id = catalogNameToId.get(name);
+    	return (id == null) ? null : catalogsById.get(id);
+    }
     public Integer getCatalogId(String name) {
         return catalogNameToId.get(name);
         
@@ -0,0 +1,581 @@
+package business.productsubsystem;
+
+import java.lang.ref.WeakReference;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+
+import business.externalinterfaces.Product;
+import business.externalinterfaces.ProductSortOrder;
+
+/**
+ * Product snapshot for very large catalogs. Each field of the products is
+ * kept in a primitive array, one row per product; names and descriptions 
+ * are replaced by codes into a sorted dictionary holding each distinct 
+ * string once. Rows are found by id, and by name, through IntRowIndex.
+ * A store made by withChanges or withCatalog shares the dictionary of the
+ * one it was made from, with only the new strings merged in; strings no
+ * longer used stay until they are half of it.
+ * 
+ * Product objects are made only when asked for, from the row, and are not 
+ * kept: the lists returned are views that make each product as it is read.
+ * Each product made is a new object, so changes made to it are not seen
+ * by the store. Like ProductCatalogSnapshotImpl, a store is never changed
+ * once built.
+ */
+final class ColumnarProductStore implements ProductStore {
+	private static final int NO_DATE = Integer.MIN_VALUE;
+	private static final int NO_STRING = -1;
+	private static final Comparator<String> NAME_ORDER = Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER);
+	
+	private final long version;
+	private final int size;
+	private final int[] ids;
+	private final int[] catalogIds;
+	private final int[] quantities;
+	private final double[] prices;
+	//LocalDate.toEpochDay, or NO_DATE
+	private final int[] mfgDays;
+	//codes into dictionary, or NO_STRING
+	private final int[] nameCodes;
+	private final int[] descriptionCodes;
+	//sorted, so a string's code is found by binary search
+	private final String[] dictionary;
+	private final IntRowIndex rowById;
+	private final IntRowIndex rowByNameCode;
+	//catalog id -> its rows, in each ProductSortOrder (by ordinal)
+	private final Map<Integer, int[][]> catalogRows;
+	//as in ProductCatalogSnapshotImpl: the store this one was made from, and
+	//the ids that may differ from it
+	private final WeakReference<ProductStore> base;
+	private final int[] differences;
+	
+	private ColumnarProductStore(long version, Builder b) {
+		this(version, b, null, Collections.<Integer>emptySet(), null);
+	}
+	
+	/** 
+	 * The rows of the catalogs not in changedCatalogs must all have been copied 
+	 * from previous, in order; their sort orders are then carried over rather 
+	 * than sorted again. differences are the ids of the products that may 
+	 * differ from previous.
+	 */
+	private ColumnarProductStore(long version, Builder b, ColumnarProductStore previous, 
+			Set<Integer> changedCatalogs, int[] differences) {
+		this.version = version;
+		this.base = (previous == null) ? null : new WeakReference<ProductStore>(previous);
+		this.differences = differences;
+		this.size = b.size;
+		this.ids = Arrays.copyOf(b.ids, size);
+		this.catalogIds = Arrays.copyOf(b.catalogIds, size);
+		this.quantities = Arrays.copyOf(b.quantities, size);
+		this.prices = Arrays.copyOf(b.prices, size);
+		this.mfgDays = Arrays.copyOf(b.mfgDays, size);
+		//the strings of the copied rows keep their place in the dictionary of the
+		//store they came from; only those of the products added are merged in
+		String[] baseDictionary = (b.from == null) ? new String[0] : b.from.dictionary;
+		int[] recode = new int[baseDictionary.length];
+		String[] merged = merge(baseDictionary, b.strings.toArray(new String[0]), recode);
+		int[] names = new int[size], descriptions = new int[size];
+		for(int row = 0; row < size; ++row) {
+			if(b.sourceRows[row] >= 0) {
+				names[row] = (b.nameCodes[row] == NO_STRING) ? NO_STRING : recode[b.nameCodes[row]];
+				descriptions[row] = (b.descriptionCodes[row] == NO_STRING) ? NO_STRING : recode[b.descriptionCodes[row]];
+			} else {
+				names[row] = codeOf(merged, b.names.get(row));
+				descriptions[row] = codeOf(merged, b.descriptions.get(row));
+			}
+		}
+		this.dictionary = compact(merged, names, descriptions);
+		this.nameCodes = names;
+		this.descriptionCodes = descriptions;
+		this.rowById = new IntRowIndex(size);
+		this.rowByNameCode = new IntRowIndex(size);
+		for(int row = 0; row < size; ++row) {
+			rowById.put(ids[row], row);
+			if(nameCodes[row] != NO_STRING) rowByNameCode.put(nameCodes[row], row);
+		}
+		this.catalogRows = indexByCatalog(b.sourceRows, previous, changedCatalogs);
+	}
+	
+	static ColumnarProductStore of(long version, List<Product> products) {
+		Builder b = new Builder(products.size(), null);
+		for(Product p : products) {
+			b.add(p);
+		}
+		return new ColumnarProductStore(version, b);
+	}
+	
+	/** 
+	 * base and added, both sorted and with no string in common, merged into one
+	 * sorted dictionary; recode is given the new code of each string of base.
+	 * Only the added strings are compared, each by a binary search of base.
+	 */
+	private static String[] merge(String[] base, String[] added, int[] recode) {
+		if(added.length == 0) {
+			for(int code = 0; code < base.length; ++code) recode[code] = code;
+			return base;
+		}
+		String[] merged = new String[base.length + added.length];
+		int from = 0, out = 0;
+		for(String s : added) {
+			int to = -Arrays.binarySearch(base, from, base.length, s) - 1;
+			for(; from < to; ++from) {
+				recode[from] = out;
+				merged[out++] = base[from];
+			}
+			merged[out++] = s;
+		}
+		for(; from < base.length; ++from) {
+			recode[from] = out;
+			merged[out++] = base[from];
+		}
+		return merged;
+	}
+	
+	/** 
+	 * dictionary, or, once fewer than half its strings are used by the codes,
+	 * a new one holding only those; the codes are then changed to match
+	 */
+	private static String[] compact(String[] dictionary, int[] names, int[] descriptions) {
+		boolean[] used = new boolean[dictionary.length];
+		int count = 0;
+		for(int[] codes : new int[][] { names, descriptions }) {
+			for(int code : codes) {
+				if(code != NO_STRING && !used[code]) {
+					used[code] = true;
+					++count;
+				}
+			}
+		}
+		if(count * 2 >= dictionary.length) return dictionary;
+		int[] recode = new int[dictionary.length];
+		String[] kept = new String[count];
+		int out = 0;
+		for(int code = 0; code < dictionary.length; ++code) {
+			if(used[code]) {
+				recode[code] = out;
+				kept[out++] = dictionary[code];
+			}
+		}
+		for(int[] codes : new int[][] { names, descriptions }) {
+			for(int row = 0; row < codes.length; ++row) {
+				if(codes[row] != NO_STRING) codes[row] = recode[codes[row]];
+			}
+		}
+		return kept;
+	}
+	
+	private int codeOf(String s) {
+		return codeOf(dictionary, s);
+	}
+	
+	private static int codeOf(String[] dictionary, String s) {
+		if(s == null) return NO_STRING;
+		int code = Arrays.binarySearch(dictionary, s);
+		return (code >= 0) ? code : NO_STRING;
+	}
+	
+	private String string(int code) {
+		return (code == NO_STRING) ? null : dictionary[code];
+	}
+	
+	private Map<Integer, int[][]> indexByCatalog(int[] sourceRows, ColumnarProductStore previous, 
+			Set<Integer> changedCatalogs) {
+		Map<Integer, int[][]> index = new HashMap<Integer, int[][]>();
+		if(previous != null) {
+			//copied rows keep their relative order, so renumbering keeps each order sorted
+			int[] newRow = new int[previous.size];
+			for(int row = 0; row < size; ++row) {
+				if(sourceRows[row] >= 0) newRow[sourceRows[row]] = row;
+			}
+			for(Map.Entry<Integer, int[][]> e : previous.catalogRows.entrySet()) {
+				if(changedCatalogs.contains(e.getKey())) continue;
+				int[][] sorted = new int[e.getValue().length][];
+				for(int i = 0; i < sorted.length; ++i) {
+					int[] oldRows = e.getValue()[i];
+					sorted[i] = new int[oldRows.length];
+					for(int j = 0; j < oldRows.length; ++j) sorted[i][j] = newRow[oldRows[j]];
+				}
+				index.put(e.getKey(), sorted);
+			}
+		}
+		//rows of the other catalogs, counted first so that each gets an array of its size
+		Map<Integer, int[]> counts = new HashMap<Integer, int[]>();
+		for(int row = 0; row < size; ++row) {
+			if(previous != null && !changedCatalogs.contains(catalogIds[row])) continue;
+			counts.computeIfAbsent(catalogIds[row], id -> new int[1])[0]++;
+		}
+		Map<Integer, int[]> groups = new HashMap<Integer, int[]>(counts.size() * 2);
+		for(Map.Entry<Integer, int[]> e : counts.entrySet()) {
+			groups.put(e.getKey(), new int[e.getValue()[0]]);
+			e.getValue()[0] = 0;
+		}
+		for(int row = 0; row < size; ++row) {
+			int[] filled = counts.get(catalogIds[row]);
+			if(filled == null) continue;
+			groups.get(catalogIds[row])[filled[0]++] = row;
+		}
+		ProductSortOrder[] orders = ProductSortOrder.values();
+		for(Map.Entry<Integer, int[]> group : groups.entrySet()) {
+			int[][] sorted = new int[orders.length][];
+			for(ProductSortOrder order : orders) {
+				int[] rows = group.getValue().clone();
+				IntBinaryOperator byOrder = rowComparator(order);
+				if(byOrder != null) sort(rows, byOrder);
+				sorted[order.ordinal()] = rows;
+			}
+			index.put(group.getKey(), sorted);
+		}
+		return index;
+	}
+	
+	/** Compares rows as order.getComparator() compares their products; null for NONE */
+	private IntBinaryOperator rowComparator(ProductSortOrder order) {
+		switch(order) {
+			case ID:
+				return (a, b) -> Integer.compare(ids[a], ids[b]);
+			case NAME:
+				//codes follow the dictionary's order, which is case-sensitive
+				return (a, b) -> {
+					int c = NAME_ORDER.compare(string(nameCodes[a]), string(nameCodes[b]));
+					return (c != 0) ? c : Integer.compare(ids[a], ids[b]);
+				};
+			case PRICE:
+				return (a, b) -> {
+					int c = Double.compare(prices[a], prices[b]);
+					return (c != 0) ? c : Integer.compare(ids[a], ids[b]);
+				};
+			case STOCK:
+				return (a, b) -> {
+					int c = Integer.compare(quantities[a], quantities[b]);
+					return (c != 0) ? c : Integer.compare(ids[a], ids[b]);
+				};
+			default:
+				return null;
+		}
+	}
+	
+	/** Sorts rows by order in place, without boxing them (a bottom-up merge sort) */
+	private static void sort(int[] rows, IntBinaryOperator order) {
+		int[] buffer = new int[rows.length];
+		for(int width = 1; width < rows.length; width *= 2) {
+			for(int lo = 0; lo < rows.length - width; lo += 2 * width) {
+				int mid = lo + width, hi = Math.min(lo + 2 * width, rows.length);
+				if(order.applyAsInt(rows[mid - 1], rows[mid]) <= 0) continue;
+				System.arraycopy(rows, lo, buffer, lo, hi - lo);
+				int i = lo, j = mid, k = lo;
+				while(i < mid && j < hi) {
+					rows[k++] = (order.applyAsInt(buffer[j], buffer[i]) < 0) ? buffer[j++] : buffer[i++];
+				}
+				while(i < mid) rows[k++] = buffer[i++];
+				while(j < hi) rows[k++] = buffer[j++];
+			}
+		}
+	}
+	
+	/** A new Product made from row */
+	private Product materialize(int row) {
+		int days = mfgDays[row];
+		return new ProductImpl(CatalogRegistry.INSTANCE.intern(catalogIds[row]),
+				ids[row],
+				string(nameCodes[row]),
+				quantities[row],
+				prices[row],
+				(days == NO_DATE) ? null : LocalDate.ofEpochDay(days),
+				string(descriptionCodes[row]));
+	}
+	
+	/** A list that makes the product for each row as it is read; rows null for all rows */
+	private List<Product> view(int[] rows, int from, int to) {
+		return new AbstractList<Product>() {
+			@Override
+			public Product get(int index) {
+				if(index < 0 || index >= to - from) throw new IndexOutOfBoundsException("Index: " + index);
+				return materialize((rows == null) ? from + index : rows[from + index]);
+			}
+
+			@Override
+			public int size() {
+				return to - from;
+			}
+		};
+	}
+	
+	@Override
+	public long getVersion() {
+		return version;
+	}
+
+	@Override
+	public Product getProduct(int productId) {
+		int row = rowById.get(productId);
+		return (row < 0) ? null : materialize(row);
+	}
+
+	@Override
+	public Product getProductWithName(String productName) {
+		int row = rowWithName(productName);
+		return (row < 0) ? null : materialize(row);
+	}
+
+	@Override
+	public Integer getProductId(String productName) {
+		int row = rowWithName(productName);
+		return (row < 0) ? null : ids[row];
+	}
+	
+	private int rowWithName(String productName) {
+		int code = codeOf(productName);
+		return (code == NO_STRING) ? -1 : rowByNameCode.get(code);
+	}
+
+	@Override
+	public List<Product> getProducts() {
+		return view(null, 0, size);
+	}
+
+	@Override
+	public List<Product> getProducts(int catalogId) {
+		return getProducts(catalogId, ProductSortOrder.NONE);
+	}
+
+	@Override
+	public List<Product> getProducts(int catalogId, ProductSortOrder order) {
+		int[][] orders = catalogRows.get(catalogId);
+		if(orders == null) return Collections.emptyList();
+		int[] rows = orders[order.ordinal()];
+		return view(rows, 0, rows.length);
+	}
+
+	@Override
+	public List<Product> getProductPage(int catalogId, Integer afterProductId, int limit, ProductSortOrder order) {
+		int[][] orders = catalogRows.get(catalogId);
+		if(orders == null) return Collections.emptyList();
+		int[] rows = orders[order.ordinal()];
+		int from = (afterProductId == null) ? 0 : positionAfter(rows, afterProductId, catalogId, order);
+		int to = (int)Math.min((long)from + Math.max(0, limit), rows.length);
+		return (from >= to) ? Collections.<Product>emptyList() : view(rows, from, to);
+	}
+	
+	/** As in ProductCatalogSnapshotImpl */
+	private int positionAfter(int[] rows, int afterProductId, int catalogId, ProductSortOrder order) {
+		if(order == ProductSortOrder.ID) {
+			int lo = 0, hi = rows.length;
+			while(lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if(ids[rows[mid]] <= afterProductId) lo = mid + 1; else hi = mid;
+			}
+			return lo;
+		}
+		int afterRow = rowById.get(afterProductId);
+		if(afterRow < 0 || catalogIds[afterRow] != catalogId) {
+			return rows.length;
+		}
+		IntBinaryOperator byOrder = rowComparator(order);
+		if(byOrder == null) {
+			for(int i = 0; i < rows.length; ++i) {
+				if(rows[i] == afterRow) return i + 1;
+			}
+			return rows.length;
+		}
+		int lo = 0, hi = rows.length;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(byOrder.applyAsInt(rows[mid], afterRow) <= 0) lo = mid + 1; else hi = mid;
+		}
+		return lo;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public boolean contains(int productId) {
+		return rowById.get(productId) >= 0;
+	}
+	
+	@Override
+	public void forEachId(IntConsumer action) {
+		for(int row = 0; row < size; ++row) {
+			action.accept(ids[row]);
+		}
+	}
+	
+	@Override
+	public String nameOf(int productId) {
+		int row = rowById.get(productId);
+		return (row < 0) ? null : string(nameCodes[row]);
+	}
+	
+	@Override
+	public String descriptionOf(int productId) {
+		int row = rowById.get(productId);
+		return (row < 0) ? null : string(descriptionCodes[row]);
+	}
+	
+	@Override
+	public double unitPriceOf(int productId) {
+		int row = rowById.get(productId);
+		return (row < 0) ? Double.NaN : prices[row];
+	}
+	
+	@Override
+	public void forEachDifference(ProductStore previous, IntConsumer action) {
+		if(base != null && base.get() == previous) {
+			for(int id : differences) action.accept(id);
+		} else {
+			ProductStore.forEachIdOfEither(previous, this, action);
+		}
+	}
+	
+	@Override
+	public ProductStore withCatalog(long newVersion, int catalogId, List<Product> catalogProducts) {
+		Builder b = new Builder(size + catalogProducts.size(), this);
+		for(int row = 0; row < size; ++row) {
+			if(catalogIds[row] != catalogId) b.copy(row);
+		}
+		int[][] replaced = catalogRows.get(catalogId);
+		int oldCount = (replaced == null) ? 0 : replaced[ProductSortOrder.NONE.ordinal()].length;
+		int[] differences = new int[oldCount + catalogProducts.size()];
+		for(int i = 0; i < oldCount; ++i) {
+			differences[i] = ids[replaced[ProductSortOrder.NONE.ordinal()][i]];
+		}
+		int i = oldCount;
+		for(Product p : catalogProducts) {
+			b.add(p);
+			differences[i++] = p.getProductId();
+		}
+		return new ColumnarProductStore(newVersion, b, this, Collections.singleton(catalogId), differences);
+	}
+
+	@Override
+	public ProductStore withChanges(long newVersion, Collection<Product> changed, Set<Integer> removed) {
+		Map<Integer, Product> updates = new LinkedHashMap<Integer, Product>();
+		Set<Integer> changedCatalogs = new HashSet<Integer>();
+		for(Product p : changed) {
+			updates.put(p.getProductId(), p);
+			changedCatalogs.add(p.getCatalog().getId());
+			int row = rowById.get(p.getProductId());
+			if(row >= 0) changedCatalogs.add(catalogIds[row]);
+		}
+		for(Integer id : removed) {
+			int row = rowById.get(id);
+			if(row >= 0) changedCatalogs.add(catalogIds[row]);
+		}
+		Builder b = new Builder(size + changed.size(), this);
+		for(int row = 0; row < size; ++row) {
+			if(removed.contains(ids[row])) continue;
+			Product update = updates.remove(ids[row]);
+			if(update == null) b.copy(row); else b.add(update);
+		}
+		for(Product p : updates.values()) {
+			if(!removed.contains(p.getProductId())) b.add(p);
+		}
+		Set<Integer> differences = new HashSet<Integer>(removed);
+		for(Product p : changed) differences.add(p.getProductId());
+		return new ColumnarProductStore(newVersion, b, this, changedCatalogs, 
+				differences.stream().mapToInt(Integer::intValue).toArray());
+	}
+	
+	@Override
+	public String toString() {
+		return "ColumnarProductStore[version=" + version + ", products=" + size 
+				+ ", strings=" + dictionary.length + "]";
+	}
+	
+	/** 
+	 * Collects rows, new or copied from the store from; the strings of the new 
+	 * ones are encoded once all rows are in
+	 */
+	private static final class Builder {
+		private final ColumnarProductStore from;
+		private int size;
+		private int[] ids, catalogIds, quantities, mfgDays;
+		//the row of from each row was copied from, or -1 for a new product
+		private int[] sourceRows;
+		private double[] prices;
+		//copied rows: codes into from's dictionary
+		private int[] nameCodes, descriptionCodes;
+		//new rows: their strings (null for copied rows)
+		private final List<String> names, descriptions;
+		//strings of new rows that are not in from's dictionary
+		private final TreeSet<String> strings = new TreeSet<String>();
+		
+		Builder(int capacity, ColumnarProductStore from) {
+			this.from = from;
+			capacity = Math.max(capacity, 16);
+			ids = new int[capacity];
+			catalogIds = new int[capacity];
+			quantities = new int[capacity];
+			mfgDays = new int[capacity];
+			sourceRows = new int[capacity];
+			prices = new double[capacity];
+			nameCodes = new int[capacity];
+			descriptionCodes = new int[capacity];
+			names = new ArrayList<String>(capacity);
+			descriptions = new ArrayList<String>(capacity);
+		}
+		
+		void add(Product p) {
+			LocalDate mfg = p.getMfgDate();
+			append(p.getProductId(), p.getCatalog().getId(), p.getQuantityAvail(), p.getUnitPrice(),
+					(mfg == null) ? NO_DATE : (int)mfg.toEpochDay(), -1);
+			names.add(p.getProductName());
+			descriptions.add(p.getDescription());
+			addString(p.getProductName());
+			addString(p.getDescription());
+			nameCodes[size - 1] = NO_STRING;
+			descriptionCodes[size - 1] = NO_STRING;
+		}
+		
+		private void addString(String s) {
+			if(s != null && (from == null || codeOf(from.dictionary, s) == NO_STRING)) strings.add(s);
+		}
+		
+		void copy(int row) {
+			append(from.ids[row], from.catalogIds[row], from.quantities[row], from.prices[row],
+					from.mfgDays[row], row);
+			names.add(null);
+			descriptions.add(null);
+			nameCodes[size - 1] = from.nameCodes[row];
+			descriptionCodes[size - 1] = from.descriptionCodes[row];
+		}
+		
+		private void append(int id, int catalogId, int quantity, double price, int mfgDay, int sourceRow) {
+			if(size == ids.length) {
+				int capacity = size * 2;
+				ids = Arrays.copyOf(ids, capacity);
+				catalogIds = Arrays.copyOf(catalogIds, capacity);
+				quantities = Arrays.copyOf(quantities, capacity);
+				mfgDays = Arrays.copyOf(mfgDays, capacity);
+				sourceRows = Arrays.copyOf(sourceRows, capacity);
+				prices = Arrays.copyOf(prices, capacity);
+				nameCodes = Arrays.copyOf(nameCodes, capacity);
+				descriptionCodes = Arrays.copyOf(descriptionCodes, capacity);
+			}
+			ids[size] = id;
+			catalogIds[size] = catalogId;
+			quantities[size] = quantity;
+			prices[size] = price;
+			mfgDays[size] = mfgDay;
+			sourceRows[size] = sourceRow;
+			++size;
+		}
+	}
+}
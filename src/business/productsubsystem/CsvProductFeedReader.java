@@ -0,0 +1,97 @@
+package business.productsubsystem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads comma-separated records whose first line names the fields. A field
+ * may be quoted with double quotes, in which case it can hold commas, line 
+ * breaks and (doubled) quotes. Blank lines are skipped.
+ */
+final class CsvProductFeedReader implements ProductFeedReader {
+	private final BufferedReader in;
+	private final List<String> header;
+	private int line = 1;
+	private boolean atEnd = false;
+	
+	CsvProductFeedReader(BufferedReader in) throws IOException {
+		this.in = in;
+		List<String> names = readRecord();
+		if(names == null) throw new IOException("The feed is empty");
+		header = new ArrayList<String>(names.size());
+		for(String name : names) {
+			header.add(name.trim().toLowerCase(Locale.ROOT));
+		}
+	}
+
+	@Override
+	public Map<String, String> next() throws IOException {
+		List<String> values;
+		do {
+			values = readRecord();
+			if(values == null) return null;
+		} while(values.size() == 1 && values.get(0).isEmpty());
+		if(values.size() > header.size()) {
+			throw new IOException("Line " + line + ": " + values.size() + " fields, but only " 
+					+ header.size() + " named in the first line");
+		}
+		Map<String, String> record = new HashMap<String, String>(header.size() * 2);
+		for(int i = 0; i < values.size(); ++i) {
+			record.put(header.get(i), values.get(i));
+		}
+		return record;
+	}
+	
+	/** The fields of the next record, or null at the end of the input */
+	private List<String> readRecord() throws IOException {
+		if(atEnd) return null;
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean started = false;
+		int c;
+		while((c = in.read()) != -1) {
+			started = true;
+			if(quoted) {
+				if(c == '"') {
+					in.mark(1);
+					if(in.read() == '"') {
+						field.append('"');
+					} else {
+						in.reset();
+						quoted = false;
+					}
+				} else {
+					if(c == '\n') ++line;
+					field.append((char)c);
+				}
+			} else if(c == '"' && field.length() == 0) {
+				quoted = true;
+			} else if(c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if(c == '\n') {
+				++line;
+				fields.add(field.toString());
+				return fields;
+			} else if(c != '\r') {
+				field.append((char)c);
+			}
+		}
+		atEnd = true;
+		if(quoted) throw new IOException("Line " + line + ": quoted field is not closed");
+		if(!started) return null;
+		fields.add(field.toString());
+		return fields;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -5,7 +5,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.inject.Inject;
@@ -16,7 +18,7 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
@@ -30,7 +32,6 @@ import middleware.dataaccess.DataAccessSubsystemFacade;
 import middleware.exceptions.DatabaseException;
 import middleware.externalinterfaces.DataAccessSubsystem;
 import middleware.externalinterfaces.DbClass;
-import middleware.externalinterfaces.DbConfigKey;
 import middleware.externalinterfaces.PreparedStatementCreatorWrapper;
 
 /**
@@ -55,6 +56,7 @@ public class DbClassCatalog implements IDbClassCatalog {
 	private int[] insertTypes;
 
 	private JdbcOperations jdbcTemplate;
+	private JdbcOperations readJdbcTemplate;
 
 	@Inject
 	@Named("dataSourceProducts")
@@ -62,17 +64,26 @@ public class DbClassCatalog implements IDbClassCatalog {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
 
-	class CatalogImplRowMapper implements RowMapper<Catalog> {
-		public Catalog mapRow(ResultSet resultSet, int rownum) throws SQLException {
-			return new CatalogImpl(resultSet.getInt("catalogid"), resultSet.getString("catalogname"));
-		}
+	//queries outside of transactions; may be served by a read replica
+	@Inject
+	@Named("dataSourceProductsReads")
+	public void setReadDataSource(DataSource dataSource) {
+		this.readJdbcTemplate = new JdbcTemplate(dataSource);
 	}
 
+	/** Served from CatalogRegistry; the database is read only when the list is not cached */
 	@Transactional(value = "txManagerProducts", propagation = Propagation.REQUIRES_NEW, readOnly = true)
 	@Override
 	public List<Catalog> getCatalogs() {
+		CatalogTypesImpl cached = CatalogRegistry.INSTANCE.getCatalogTypes();
+		if (cached != null) {
+			return cached.getCatalogs();
+		}
 		try {
-			return jdbcTemplate.query(readQuery, new CatalogImplRowMapper());
+			Map<Integer, String> rows = new LinkedHashMap<Integer, String>();
+			readJdbcTemplate.query(readQuery, (RowCallbackHandler) rs -> 
+					rows.put(rs.getInt("catalogid"), rs.getString("catalogname")));
+			return CatalogRegistry.INSTANCE.load(rows).getCatalogs();
 		} catch (DataAccessException e) { // this is a subclass of
 											// RuntimeException used by Spring
 			LOG.warning("Rolling back transaction for getCatalogTypes() with query = " + readQuery);
@@ -107,6 +118,7 @@ public class DbClassCatalog implements IDbClassCatalog {
 			LOG.warning("Rolling back transaction for insertNewCatalog with query = " + insertQuery);
 			LOG.warning("Error details:\n" + e.getMessage());
 		}
+		CatalogRegistry.INSTANCE.invalidate();
 		return keyHolder.getKey().intValue();
 	}
 
@@ -117,8 +129,7 @@ public class DbClassCatalog implements IDbClassCatalog {
 	 */
 	@Override
 	public String getDbUrl() {
-		DbConfigProperties props = new DbConfigProperties();
-		return props.getProperty(DbConfigKey.PRODUCT_DB_URL.getVal());
+		return DbConfigProperties.getConfig().getProductDbUrl();
 	}
 
 	/*
@@ -190,6 +201,7 @@ public class DbClassCatalog implements IDbClassCatalog {
 		deleteTypes = new int[] { Types.INTEGER };
 		try {
 			jdbcTemplate.update(deleteQuery, deleteParams, deleteTypes);
+			CatalogRegistry.INSTANCE.invalidate();
 			return true;
 		} catch (DataAccessException e) { // this is a subclass of
 											// RuntimeException used by Spring
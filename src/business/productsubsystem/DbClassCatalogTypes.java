@@ -2,6 +2,8 @@ package business.productsubsystem;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import org.springframework.stereotype.Repository;
@@ -12,7 +14,6 @@ import middleware.dataaccess.DataAccessSubsystemFacade;
 import middleware.exceptions.DatabaseException;
 import middleware.externalinterfaces.DataAccessSubsystem;
 import middleware.externalinterfaces.DbClass;
-import middleware.externalinterfaces.DbConfigKey;
 
 /**
  * This class is concerned with managing the entire
@@ -38,11 +39,16 @@ public class DbClassCatalogTypes implements IDbClassCatalogTypes {
     //This is popuated by getTypesQuery 
     private CatalogTypesImpl types;
     
-    /* (non-Javadoc)
-	 * @see business.productsubsystem.IDbClassCatalogTypes#getCatalogTypes()
-	 */
+    /** 
+     * Served from CatalogRegistry; the database is read only when the list 
+     * is not cached. The result is shared, and cannot be changed.
+     */
     @Override
 	public CatalogTypesImpl getCatalogTypes() throws DatabaseException {
+    	CatalogTypesImpl cached = CatalogRegistry.INSTANCE.getCatalogTypes();
+    	if(cached != null) {
+    		return cached;
+    	}
         queryType = Type.GET_TYPES;
         getTypesParams = new Object[]{};  //empty
         getTypesTypes = new int[]{};  //empty
@@ -94,12 +100,13 @@ public class DbClassCatalogTypes implements IDbClassCatalogTypes {
 	 */
     @Override
     public void populateEntity(ResultSet resultSet) throws DatabaseException {
-        types = new CatalogTypesImpl();
+        Map<Integer, String> rows = new LinkedHashMap<Integer, String>();
         try {
             while(resultSet.next()){
-                types.addCatalog(resultSet.getInt("catalogid"),
+                rows.put(resultSet.getInt("catalogid"),
                         		resultSet.getString("catalogname"));
             }
+            types = CatalogRegistry.INSTANCE.load(rows);
         }
         catch(SQLException e){
             throw new DatabaseException(e);
@@ -110,7 +117,6 @@ public class DbClassCatalogTypes implements IDbClassCatalogTypes {
 	 */
     @Override
     public String getDbUrl() {
-    	DbConfigProperties props = new DbConfigProperties();	
-    	return props.getProperty(DbConfigKey.PRODUCT_DB_URL.getVal());
+    	return DbConfigProperties.getConfig().getProductDbUrl();
     } 
 }
@@ -1,15 +1,21 @@
 package business.productsubsystem;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -25,26 +31,31 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import middleware.DbConfigProperties;
+import middleware.dataaccess.CompiledRowMapper;
 import middleware.dataaccess.DataAccessSubsystemFacade;
 import middleware.exceptions.DatabaseException;
 import middleware.externalinterfaces.DataAccessSubsystem;
 import middleware.externalinterfaces.DbClass;
-import middleware.externalinterfaces.DbConfigKey;
 import middleware.externalinterfaces.PreparedStatementCreatorWrapper;
 import business.externalinterfaces.Catalog;
 import business.externalinterfaces.IDbClassProduct;
 import business.externalinterfaces.Product;
-import business.productsubsystem.DbClassCatalog.CatalogImplRowMapper;
+import business.externalinterfaces.ProductCatalogSnapshot;
+import business.externalinterfaces.ProductSortOrder;
 import business.util.Convert;
 import business.util.TwoKeyHashMap;
 
 @Repository
 class DbClassProduct implements IDbClassProduct {
-	enum Type {LOAD_PROD_TABLE, READ_PRODUCT, READ_PROD_LIST, SAVE_NEW_PROD};
+	enum Type {LOAD_PROD_TABLE, READ_PRODUCT, READ_PROD_LIST, SAVE_NEW_PROD,
+		READ_TABLE_STATE, LOAD_CHANGED_PRODS, LOAD_PROD_IDS};
 
 	private static final Logger LOG = Logger.getLogger(DbClassProduct.class
 			.getPackage().getName());
@@ -53,26 +64,52 @@ class DbClassProduct implements IDbClassProduct {
 	private String loadProdTableQuery = "SELECT * FROM product";
 	private String readProductQuery = "SELECT * FROM Product WHERE productid = ?";
 	private String readProdListQuery = "SELECT * FROM Product WHERE catalogid = ?";
+	private final String readProdPageQuery = "SELECT * FROM Product WHERE catalogid = ? AND productid > ? "
+			+ "ORDER BY productid LIMIT ?";
 	private final String saveNewProdQuery = "INSERT into Product " 
 			+ "(catalogid, productname, totalquantity, priceperunit, mfgdate, description)" 
 			+ " VALUES(?,?,?,?,?,?)";
+	// change tracking, see refreshChangedProducts
+	private final String readTableStateQuery = "SELECT COUNT(*), MAX(lastmodified) FROM product";
+	private final String loadChangedProdsQuery = "SELECT * FROM product WHERE lastmodified >= ?";
+	private final String loadProdIdsQuery = "SELECT productid FROM product";
+	// stock, see InventoryService
+	private final String readStockQuery = "SELECT totalquantity FROM product WHERE productid = ?";
+	private final String addStockQuery = "UPDATE product SET totalquantity = totalquantity + ? WHERE productid = ?";
 	private Object[] loadProdTableParams, readProductParams, 
-		readProdListParams, saveNewProdParams;
+		readProdListParams, saveNewProdParams, loadChangedProdsParams;
 	private int[] loadProdTableTypes, readProductTypes, readProdListTypes, 
-	    saveNewProdTypes;
+	    saveNewProdTypes, loadChangedProdsTypes;
 	
 	/**
-	 * The productTable matches product ID and product name with
+	 * The product snapshot matches product ID and product name with
 	 * the corresponding Product object. It is static so
 	 * that requests for "read product" based on product ID can be handled
 	 * without extra db hits. Useful for customer use cases, but not
-	 * for manage products use case
+	 * for manage products use case. It is never modified: a refresh
+	 * builds a new snapshot and replaces the reference, so readers
+	 * share it without copying.
 	 */
-	private static TwoKeyHashMap<Integer, String, Product> productTable;
+	private static volatile ProductStore snapshot;
+	private static final Object publishLock = new Object();
+	//held for the first load, so that only one reader loads the table
+	private static final Object loadLock = new Object();
+	/**
+	 * Latest product.lastmodified seen by the last refresh: rows changed at or
+	 * after it have not necessarily been merged into the snapshot yet. Null 
+	 * if the table has no lastmodified column (or has not been read yet), 
+	 * in which case only full refreshes are possible.
+	 */
+	private static volatile Timestamp changeWatermark;
+	//kept in step with snapshot by publish
+	private static final ProductSearchIndex searchIndex = new ProductSearchIndex();
 	private Product product;
 	private List<Product> productList;
 	
 	private JdbcOperations jdbcTemplate;
+	private JdbcOperations readJdbcTemplate;
+	private TransactionTemplate txTemplate;
+	private DataAccessSubsystem dataAccessSS = new DataAccessSubsystemFacade();
 
 	@Inject
 	@Named("dataSourceProducts")
@@ -80,19 +117,301 @@ class DbClassProduct implements IDbClassProduct {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
 	
-	class ProductImpRowMapper implements RowMapper<Product> {
-		public Product mapRow(ResultSet resultSet, int rownum) throws SQLException {
-			int catalogId = resultSet.getInt("catalogid");
-			CatalogImpl catalog = new CatalogImpl(catalogId, 
-					(new CatalogTypesImpl()).getCatalogName(catalogId));
-			
-			return new ProductImpl(catalog,
-					resultSet.getInt("productid"), 
-					resultSet.getString("productname"),
-					resultSet.getInt("totalquantity"),
-					resultSet.getDouble("priceperunit"),
-					Convert.localDateForString(resultSet.getString("mfgdate")),
-					resultSet.getString("description"));
+	//@Transactional is not in effect (there is no tx:annotation-driven), so
+	//writes that must succeed or fail as a whole run through this instead
+	@Inject
+	@Named("txManagerProducts")
+	public void setTransactionManager(PlatformTransactionManager txManager) {
+		this.txTemplate = new TransactionTemplate(txManager);
+	}
+
+	//queries outside of transactions; may be served by a read replica
+	@Inject
+	@Named("dataSourceProductsReads")
+	public void setReadDataSource(DataSource dataSource) {
+		this.readJdbcTemplate = new JdbcTemplate(dataSource);
+	}
+	
+	//maps a row of the product table; columns are read by position
+	private static final CompiledRowMapper<Product> PRODUCT_MAPPER = new CompiledRowMapper<Product>(
+			"productid", "productname", "totalquantity", "priceperunit", 
+			"mfgdate", "catalogid", "description") {
+		@Override
+		protected Product mapRow(ResultSet rs, int[] col) throws SQLException {
+			//one shared Catalog per id; its name comes from the catalog list
+			return new ProductImpl(CatalogRegistry.INSTANCE.intern(rs.getInt(col[5])),
+					rs.getInt(col[0]), 
+					rs.getString(col[1]),
+					rs.getInt(col[2]),
+					rs.getDouble(col[3]),
+					Convert.localDateForString(rs.getString(col[4])),
+					rs.getString(col[6]));
+		}
+	};
+
+	@Override
+	public ProductCatalogSnapshot readProductSnapshot() throws DatabaseException {
+		ProductCatalogSnapshot current = snapshot;
+		if (current != null) {
+			return current;
+		}
+		synchronized(loadLock) {
+			//readers that waited get what the first one loaded
+			current = snapshot;
+			if (current != null) {
+				return current;
+			}
+			//start from the saved snapshot, if any, and catch up in the background
+			current = loadSavedSnapshot();
+			if (current != null) {
+				return current;
+			}
+			//the snapshot needs to be populated, so call refresh
+			return refreshProductSnapshot();
+		}
+	}
+	
+	/**
+	 * Publishes the snapshot last saved by ProductSnapshotSaver, and has the 
+	 * catalog list reread and the products changed since it was saved merged 
+	 * in on a data access thread. Null if no snapshot has been saved, or it 
+	 * cannot be read.
+	 */
+	private ProductCatalogSnapshot loadSavedSnapshot() {
+		Path file = snapshotFile();
+		if(file == null) return null;
+		ProductStore loaded;
+		synchronized(publishLock) {
+			if(snapshot != null) return snapshot;
+			ProductSnapshotFile saved = ProductSnapshotFile.load(file);
+			if(saved == null) return null;
+			loaded = publish(ProductStore.create(saved.getVersion(), saved.getProducts()));
+			changeWatermark = saved.getWatermark();
+		}
+		LOG.info("Started from " + loaded.size() + " products saved in " + file);
+		startSnapshotSaver(loaded.getVersion());
+		//its own instance, since a DbClass holds the state of the query it is running
+		DbClassProduct reconciler = new DbClassProduct();
+		dataAccessSS.callAsync(getDbUrl(), () -> {
+			CatalogRegistry.INSTANCE.invalidate();
+			new DbClassCatalogTypes().getCatalogTypes();
+			return reconciler.refreshChangedProducts();
+		}).whenComplete((result, e) -> {
+			if(e != null) {
+				LOG.warning("Unable to bring saved products up to date: " + e.getMessage());
+			}
+			if(changeWatermark != null) {
+				ProductChangePoller.startOnce(DbConfigProperties.getConfig().getProductPollIntervalMillis());
+			}
+		});
+		return loaded;
+	}
+	
+	/** Null if the product cache is not to be saved */
+	private static Path snapshotFile() {
+		String name = DbConfigProperties.getConfig().getProductSnapshotFile();
+		return name.isEmpty() ? null : Paths.get(name);
+	}
+	
+	private static void startSnapshotSaver(long savedVersion) {
+		Path file = snapshotFile();
+		if(file != null) {
+			ProductSnapshotSaver.startOnce(file, savedVersion, 
+					DbConfigProperties.getConfig().getProductSnapshotIntervalMillis());
+		}
+	}
+	
+	/** 
+	 * The current snapshot, with its change watermark and the catalog list, 
+	 * as ProductSnapshotSaver writes them; null until the snapshot is first read
+	 */
+	static ProductSnapshotFile captureSnapshot() {
+		synchronized(publishLock) {
+			if(snapshot == null) return null;
+			return ProductSnapshotFile.of(snapshot, changeWatermark, CatalogRegistry.INSTANCE.getCatalogTypes());
+		}
+	}
+
+	/** 
+	 * A DbClass holds the state of the query it is running, so the refreshes,
+	 * which may run on any thread (the importer, the poller, a reader), each 
+	 * run on an instance of their own rather than on the Spring singleton
+	 */
+	private DbClassProduct newCall() {
+		DbClassProduct call = new DbClassProduct();
+		call.dataAccessSS = dataAccessSS;
+		call.jdbcTemplate = jdbcTemplate;
+		call.readJdbcTemplate = readJdbcTemplate;
+		call.txTemplate = txTemplate;
+		return call;
+	}
+
+	@Override
+	public ProductCatalogSnapshot refreshProductSnapshot() throws DatabaseException {
+		return newCall().loadProductSnapshot();
+	}
+	
+	private ProductCatalogSnapshot loadProductSnapshot() throws DatabaseException {
+		//read first, so that rows changed during the load are picked up again by the next poll
+		TableState state = readTableState();
+		Timestamp watermark = (state == null) ? null : state.lastModified;
+		if(CatalogRegistry.INSTANCE.getCatalogTypes() == null) {
+			//so that the products' catalogs have their names
+			new DbClassCatalogTypes().getCatalogTypes();
+		}
+		// the whole table is streamed row by row straight into the new
+		// list, rather than first being read into a result list
+		queryType = Type.LOAD_PROD_TABLE;
+		loadProdTableParams = new Object[]{};
+		loadProdTableTypes = new int[]{};
+		List<Product> list = new ArrayList<Product>();
+		dataAccessSS.atomicStreamRead(this, PRODUCT_MAPPER.streamTo(loadProdTableQuery, list::add));
+		ProductCatalogSnapshot result = publish(list);
+		changeWatermark = watermark;
+		if(watermark != null) {
+			ProductChangePoller.startOnce(DbConfigProperties.getConfig().getProductPollIntervalMillis());
+		}
+		startSnapshotSaver(-1);
+		return result;
+	}
+	
+	/**
+	 * Merges the rows inserted, updated or deleted since the last refresh into
+	 * a new snapshot; only the changed rows are read, and the product ids only
+	 * when the row count shows that some product has been deleted. Falls back 
+	 * on a full refresh if the product table has no lastmodified column.
+	 * If nothing has changed, the current snapshot is kept (and returned).
+	 */
+	@Override
+	public ProductCatalogSnapshot refreshChangedProducts() throws DatabaseException {
+		return newCall().loadChangedProducts();
+	}
+	
+	private ProductCatalogSnapshot loadChangedProducts() throws DatabaseException {
+		Timestamp since = changeWatermark;
+		ProductStore current = snapshot;
+		if(since == null || current == null) {
+			return refreshProductSnapshot();
+		}
+		TableState state = readTableState();
+		if(state == null) {
+			//the column has been dropped since
+			return refreshProductSnapshot();
+		}
+		queryType = Type.LOAD_CHANGED_PRODS;
+		loadChangedProdsParams = new Object[]{ since };
+		loadChangedProdsTypes = new int[]{ Types.TIMESTAMP };
+		List<Product> changed = new ArrayList<Product>();
+		dataAccessSS.atomicStreamRead(this, PRODUCT_MAPPER.streamTo(loadChangedProdsQuery, changed::add));
+		
+		//a deleted row leaves no trace behind, but leaves the table with fewer rows
+		//than the snapshot would have; only then are the ids compared
+		int added = 0;
+		for(Product p : changed) {
+			if(current.getProduct(p.getProductId()) == null) ++added;
+		}
+		Set<Integer> ids = null;
+		if(current.size() + added != state.rows) {
+			queryType = Type.LOAD_PROD_IDS;
+			Set<Integer> read = new HashSet<Integer>(state.rows * 2);
+			dataAccessSS.atomicStreamRead(this, rs -> {
+				read.add(rs.getInt(1));
+				return true;
+			});
+			ids = read;
+		}
+		
+		//against current, which the ids were read for: a product added to the
+		//snapshot since (by write-through) is not in ids, but has not been deleted
+		Set<Integer> removed = new HashSet<Integer>();
+		if(ids != null) {
+			Set<Integer> stillThere = ids;
+			current.forEachId(id -> {
+				if(!stillThere.contains(id)) removed.add(id);
+			});
+		}
+		
+		synchronized(publishLock) {
+			changeWatermark = state.lastModified;
+			if(changed.isEmpty() && removed.isEmpty()) {
+				return snapshot;
+			}
+			LOG.fine(() -> changed.size() + " products changed, " + removed.size() + " deleted");
+			return publish(snapshot.withChanges(snapshot.getVersion() + 1, changed, removed));
+		}
+	}
+	
+	/** Row count and latest lastmodified of the product table */
+	private static final class TableState {
+		final int rows;
+		final Timestamp lastModified;
+		
+		TableState(int rows, Timestamp lastModified) {
+			this.rows = rows;
+			this.lastModified = lastModified;
+		}
+	}
+	
+	/** 
+	 * Null if the product table has no lastmodified column; any other failure,
+	 * such as the database being unreachable, is thrown
+	 */
+	private TableState readTableState() throws DatabaseException {
+		queryType = Type.READ_TABLE_STATE;
+		TableState[] state = new TableState[1];
+		try {
+			dataAccessSS.atomicStreamRead(this, rs -> {
+				//an empty table has no maximum, but can still be tracked
+				Timestamp max = rs.getTimestamp(2);
+				state[0] = new TableState(rs.getInt(1), (max == null) ? new Timestamp(0) : max);
+				return false;
+			});
+		} catch(DatabaseException e) {
+			if(!isUnknownColumn(e)) throw e;
+			LOG.fine(() -> "Product change tracking unavailable: " + e.getMessage());
+			return null;
+		}
+		return state[0];
+	}
+	
+	/** True if e was caused by a query naming a column the table does not have */
+	private static boolean isUnknownColumn(DatabaseException e) {
+		for(Throwable t = e.getCause(); t != null; t = t.getCause()) {
+			if(t instanceof SQLException) {
+				SQLException sqle = (SQLException)t;
+				//42S22 is the SQLSTATE for it; 1054 is MySQL's ER_BAD_FIELD_ERROR
+				if("42S22".equals(sqle.getSQLState()) || sqle.getErrorCode() == 1054) return true;
+			}
+		}
+		return false;
+	}
+	
+	/** Replaces the shared snapshot with one holding products */
+	private static ProductStore publish(List<Product> products) {
+		synchronized(publishLock) {
+			long version = (snapshot == null) ? 1 : snapshot.getVersion() + 1;
+			return publish(ProductStore.create(version, products));
+		}
+	}
+	
+	private static ProductStore publish(ProductStore newSnapshot) {
+		synchronized(publishLock) {
+			searchIndex.update(snapshot, newSnapshot);
+			ProductChangeBus.INSTANCE.publishDifferences(snapshot, newSnapshot);
+			snapshot = newSnapshot;
+			LOG.fine(() -> "Published " + newSnapshot);
+			return newSnapshot;
+		}
+	}
+	
+	/** 
+	 * Write-through after a save or delete, so the change is seen at once 
+	 * rather than at the next refresh; a no-op until the snapshot is first read
+	 */
+	private static void applyToSnapshot(List<Product> changed, Set<Integer> removed) {
+		synchronized(publishLock) {
+			if(snapshot == null) return;
+			publish(snapshot.withChanges(snapshot.getVersion() + 1, changed, removed));
 		}
 	}
 
@@ -102,11 +421,7 @@ class DbClassProduct implements IDbClassProduct {
 	@Override
 	public TwoKeyHashMap<Integer, String, Product> readProductTable()
 			throws DatabaseException {
-		if (productTable != null) {
-			return productTable.clone();
-		}
-		//productTable needs to be populated, so call refresh
-		return refreshProductTable();
+		return asTable(readProductSnapshot());
 	}
 
 	/* (non-Javadoc)
@@ -115,25 +430,15 @@ class DbClassProduct implements IDbClassProduct {
 	@Override
 	public TwoKeyHashMap<Integer, String, Product> refreshProductTable()
 			throws DatabaseException {
-//		queryType = Type.LOAD_PROD_TABLE;
-//		loadProdTableParams = new Object[]{};
-//		loadProdTableTypes = new int[]{};
-//		dataAccessSS.atomicRead(this);
-		
-		try {
-			productList = jdbcTemplate.query(loadProdTableQuery, new ProductImpRowMapper());
-			productTable = new TwoKeyHashMap();
-			productList.forEach(p -> {
-				productTable.put(p.getProductId(), p.getProductName(), p);
-			});
-		} catch (DataAccessException e) { // this is a subclass of
-											// RuntimeException used by Spring
-			LOG.warning("Rolling back transaction for getCatalogTypes() with query = " + readProdListQuery);
-			LOG.warning("Error details:\n" + e.getMessage());
+		return asTable(refreshProductSnapshot());
+	}
+	
+	private static TwoKeyHashMap<Integer, String, Product> asTable(ProductCatalogSnapshot snap) {
+		TwoKeyHashMap<Integer, String, Product> table = new TwoKeyHashMap<Integer, String, Product>();
+		for(Product p : snap.getProducts()) {
+			table.put(p.getProductId(), p.getProductName(), p);
 		}
-		
-		// Return a clone since productTable must not be corrupted
-		return productTable.clone();
+		return table;
 	}
 
 	/* (non-Javadoc)
@@ -142,22 +447,32 @@ class DbClassProduct implements IDbClassProduct {
 	@Override
 	public List<Product> readProductList(Catalog cat)
 			throws DatabaseException {
-		if (productList == null) {
-			refreshProductTable();
+		return readProductSnapshot().getProducts(cat.getId());
+	}
+
+	@Override
+	public List<Product> readProductList(Catalog cat, ProductSortOrder order)
+			throws DatabaseException {
+		return readProductSnapshot().getProducts(cat.getId(), order);
+	}
+
+	/**
+	 * Served from the product snapshot; until the snapshot has been read, pages
+	 * in ID order come straight from the database, so a large catalog can be
+	 * browsed without loading the whole product table first
+	 */
+	@Override
+	public List<Product> readProductList(Catalog cat, Integer afterProductId, int limit, ProductSortOrder order)
+			throws DatabaseException {
+		if(snapshot == null && order == ProductSortOrder.ID) {
+			Object[] params = new Object[] { cat.getId(), (afterProductId == null) ? 0 : afterProductId, limit };
+			try {
+				return readJdbcTemplate.query(readProdPageQuery, params, PRODUCT_MAPPER.forQuery(readProdPageQuery));
+			} catch (DataAccessException e) {
+				throw new DatabaseException(e);
+			}
 		}
-		return productList
-				.stream()
-				.filter(p -> p.getCatalog().getId() == cat.getId())
-				.collect(Collectors.toList());
-		
-//		try {
-//			return jdbcTemplate.query(readProdListQuery, new Object[] { cat.getId() }, new ProductImpRowMapper());
-//		} catch (DataAccessException e) { // this is a subclass of
-//											// RuntimeException used by Spring
-//			LOG.warning("Rolling back transaction for getCatalogTypes() with query = " + readProdListQuery);
-//			LOG.warning("Error details:\n" + e.getMessage());
-//		}
-//		return null;
+		return readProductSnapshot().getProductPage(cat.getId(), afterProductId, limit, order);
 	}
 
 	/* (non-Javadoc)
@@ -166,11 +481,28 @@ class DbClassProduct implements IDbClassProduct {
 	@Override
 	public List<Product> refreshProductList(Catalog cat)
 			throws DatabaseException {
-		refreshProductTable();
-		return productList
-				.stream()
-				.filter(p -> p.getCatalog().getId() == cat.getId())
-				.collect(Collectors.toList());
+		//only this catalog's rows are read again; the other catalogs are kept as they are
+		List<Product> products = readJdbcTemplate.query(readProdListQuery, 
+				new Object[] { cat.getId() }, PRODUCT_MAPPER.forQuery(readProdListQuery));
+		synchronized(publishLock) {
+			if(snapshot == null) {
+				return refreshProductSnapshot().getProducts(cat.getId());
+			}
+			return publish(snapshot.withCatalog(snapshot.getVersion() + 1, cat.getId(), products))
+					.getProducts(cat.getId());
+		}
+	}
+
+	@Override
+	public List<Product> searchProducts(String query, int limit) throws DatabaseException {
+		ProductCatalogSnapshot current = readProductSnapshot();
+		List<Product> found = new ArrayList<Product>();
+		for(Integer id : searchIndex.search(query, limit)) {
+			//null if removed since current was read
+			Product p = current.getProduct(id);
+			if(p != null) found.add(p);
+		}
+		return found;
 	}
 
 	/* (non-Javadoc)
@@ -179,8 +511,10 @@ class DbClassProduct implements IDbClassProduct {
 	@Override
 	public Product readProduct(Integer productId)
 			throws DatabaseException {
-		if (productTable != null && productTable.isAFirstKey(productId)) {
-			return productTable.getValWithFirstKey(productId);
+		ProductCatalogSnapshot current = snapshot;
+		Product cached = (current == null || productId == null) ? null : current.getProduct(productId);
+		if (cached != null) {
+			return cached;
 		}
 //		queryType = Type.READ_PRODUCT;
 //		readProductParams = new Object[] {productId};
@@ -188,7 +522,7 @@ class DbClassProduct implements IDbClassProduct {
 //		dataAccessSS.atomicRead(this);
 //		return product;
 		
-		List<Product> products = jdbcTemplate.query(readProductQuery, new Object[] { productId }, new ProductImpRowMapper());
+		List<Product> products = readJdbcTemplate.query(readProductQuery, new Object[] { productId }, PRODUCT_MAPPER.forQuery(readProductQuery));
 		if(products.size() != 1) {
 			throw new DatabaseException("Product Not found");
 		}
@@ -233,17 +567,40 @@ class DbClassProduct implements IDbClassProduct {
 		}
 		int id = keyHolder.getKey().intValue();
 		product.setProductId(id);
+		applyToSnapshot(Collections.singletonList(product), Collections.<Integer>emptySet());
 		return id;
 	}
 	
+	/** All of products are saved, in one transaction, or none is */
+	@Override
+	public void saveNewProducts(List<Product> products) throws DatabaseException {
+		List<Object[]> rows = new ArrayList<Object[]>(products.size());
+		for(Product product : products) {
+			rows.add(new Object[] { 
+					product.getCatalog().getId(),
+					product.getProductName(),
+					product.getQuantityAvail(),
+					product.getUnitPrice(),
+					Convert.localDateAsString(product.getMfgDate()),
+					product.getDescription()
+			});
+		}
+		try {
+			txTemplate.execute(status -> jdbcTemplate.batchUpdate(saveNewProdQuery, rows, 
+					new int[] { Types.INTEGER, Types.VARCHAR, Types.INTEGER, Types.DOUBLE, 
+							Types.VARCHAR, Types.VARCHAR }));
+		} catch (DataAccessException | TransactionException e) {
+			throw new DatabaseException(e);
+		}
+	}
+	
 	/// DbClass implemented methods
 	/* (non-Javadoc)
 	 * @see business.productsubsystem.IDbClassProduct#getDbUrl()
 	 */
 	@Override
 	public String getDbUrl() {
-		DbConfigProperties props = new DbConfigProperties();
-		return props.getProperty(DbConfigKey.PRODUCT_DB_URL.getVal());
+		return DbConfigProperties.getConfig().getProductDbUrl();
 	}
 
 	/* (non-Javadoc)
@@ -260,6 +617,12 @@ class DbClassProduct implements IDbClassProduct {
 				return readProdListQuery;
 			case SAVE_NEW_PROD :
 				return saveNewProdQuery;
+			case READ_TABLE_STATE :
+				return readTableStateQuery;
+			case LOAD_CHANGED_PRODS :
+				return loadChangedProdsQuery;
+			case LOAD_PROD_IDS :
+				return loadProdIdsQuery;
 			default:
 				return null;
 		}
@@ -279,6 +642,11 @@ class DbClassProduct implements IDbClassProduct {
 				return readProdListParams;
 			case SAVE_NEW_PROD :
 				return saveNewProdParams;
+			case LOAD_CHANGED_PRODS :
+				return loadChangedProdsParams;
+			case READ_TABLE_STATE :
+			case LOAD_PROD_IDS :
+				return new Object[]{};
 			default:
 				return null;
 		}
@@ -298,6 +666,11 @@ class DbClassProduct implements IDbClassProduct {
 			return readProdListTypes;
 		case SAVE_NEW_PROD :
 			return saveNewProdTypes;
+		case LOAD_CHANGED_PRODS :
+			return loadChangedProdsTypes;
+		case READ_TABLE_STATE :
+		case LOAD_PROD_IDS :
+			return new int[]{};
 		default:
 			return null;
 	}
@@ -323,28 +696,9 @@ class DbClassProduct implements IDbClassProduct {
 	private void populateProdList(ResultSet rs) throws DatabaseException {
 		productList = new LinkedList<Product>();
 		try {
-			Product product = null;
-			Integer prodId = null;
-			String productName = null;
-			Integer quantityAvail = null;
-			Double unitPrice = null;
-			String mfgDate = null;
-			Integer catalogId = null;
-			String description = null;
+			CompiledRowMapper.Binding<Product> binding = PRODUCT_MAPPER.bind(readProdListQuery, rs);
 			while (rs.next()) {
-				prodId = rs.getInt("productid");
-				productName = rs.getString("productname");
-				quantityAvail = rs.getInt("totalquantity");
-				unitPrice =rs.getDouble("priceperunit");
-				mfgDate = rs.getString("mfgdate");
-				catalogId = rs.getInt("catalogid");
-				description = rs.getString("description");
-				CatalogImpl catalog = new CatalogImpl(catalogId, 
-						(new CatalogTypesImpl()).getCatalogName(catalogId));
-				product = new ProductImpl(catalog, prodId, productName, quantityAvail,
-						 unitPrice, Convert.localDateForString(mfgDate),
-					    description);
-				productList.add(product);
+				productList.add(binding.map(rs));
 			}
 		} catch (SQLException e) {
 			throw new DatabaseException(e);
@@ -355,30 +709,13 @@ class DbClassProduct implements IDbClassProduct {
 	 * Internal method to ensure that product table is up to date.
 	 */
 	private void populateProdTable(ResultSet rs) throws DatabaseException {
-		productTable = new TwoKeyHashMap<Integer, String, Product>();
+		List<Product> products = new ArrayList<Product>();
 		try {
-			Product product = null;
-			Integer prodId = null;
-			String productName = null;
-			Integer quantityAvail = null;
-			Double unitPrice = null;
-			String mfgDate = null;
-			Integer catalogId = null;
-			String description = null;
+			CompiledRowMapper.Binding<Product> binding = PRODUCT_MAPPER.bind(loadProdTableQuery, rs);
 			while (rs.next()) {
-				prodId = rs.getInt("productid");
-				productName = rs.getString("productname");
-				quantityAvail = rs.getInt("totalquantity");
-				unitPrice = rs.getDouble("priceperunit");
-				mfgDate = rs.getString("mfgdate");
-				catalogId = rs.getInt("catalogid");
-				description = rs.getString("description");
-				CatalogImpl catalog = new CatalogImpl(catalogId, 
-						(new CatalogTypesImpl()).getCatalogName(catalogId));
-				product = new ProductImpl(catalog, prodId, productName, quantityAvail,
-						unitPrice, Convert.localDateForString(mfgDate), description);
-				productTable.put(prodId, productName, product);
+				products.add(binding.map(rs));
 			}
+			publish(products);
 		} catch (SQLException e) {
 			throw new DatabaseException(e);
 		}
@@ -387,15 +724,7 @@ class DbClassProduct implements IDbClassProduct {
 	private void populateProduct(ResultSet rs) throws DatabaseException {
 		try {
 			if (rs.next()) {
-				CatalogImpl catalog = new CatalogImpl(rs.getInt("catalogid"), 
-						(new CatalogTypesImpl()).getCatalogName(rs.getInt("catalogid")));
-				
-				product = new ProductImpl(catalog, rs.getInt("productid"),
-						rs.getString("productname"),
-						rs.getInt("totalquantity"),
-						rs.getDouble("priceperunit"),
-						Convert.localDateForString(rs.getString("mfgdate")),
-						rs.getString("description"));
+				product = PRODUCT_MAPPER.bind(readProductQuery, rs).map(rs);
 			}
 		} catch (SQLException e) {
 			throw new DatabaseException(e);
@@ -414,6 +743,7 @@ class DbClassProduct implements IDbClassProduct {
 		deleteTypes = new int[] { Types.INTEGER };
 		try {
 			jdbcTemplate.update(deleteQuery, deleteParams, deleteTypes);
+			applyToSnapshot(Collections.<Product>emptyList(), Collections.singleton(product.getProductId()));
 			return true;
 		} catch (DataAccessException e) { // this is a subclass of
 											// RuntimeException used by Spring
@@ -422,4 +752,31 @@ class DbClassProduct implements IDbClassProduct {
 		}
 		return false;
 	}
+
+	@Override
+	public Integer readStockLevel(int productId) throws DatabaseException {
+		try {
+			//not readJdbcTemplate: a replica may be behind the last flush
+			List<Integer> found = jdbcTemplate.query(readStockQuery, (rs, row) -> rs.getInt(1), productId);
+			return found.isEmpty() ? null : found.get(0);
+		} catch (DataAccessException e) {
+			throw new DatabaseException(e);
+		}
+	}
+	
+	/** All of deltas are applied, in one transaction, or none is */
+	@Override
+	public void addToStock(Map<Integer, Integer> deltas) throws DatabaseException {
+		List<Object[]> rows = new ArrayList<Object[]>(deltas.size());
+		for(Map.Entry<Integer, Integer> e : deltas.entrySet()) {
+			rows.add(new Object[] { e.getValue(), e.getKey() });
+		}
+		try {
+			//so that a failed flush can be retried in full without applying any delta twice
+			txTemplate.execute(status -> 
+					jdbcTemplate.batchUpdate(addStockQuery, rows, new int[] { Types.INTEGER, Types.INTEGER }));
+		} catch (DataAccessException | TransactionException e) {
+			throw new DatabaseException(e);
+		}
+	}
 }
@@ -0,0 +1,50 @@
+package business.productsubsystem;
+
+import java.util.Arrays;
+
+/**
+ * Maps int keys to row numbers with open addressing and linear probing, in 
+ * two int arrays, with no boxing and no entry objects. Built once and not 
+ * changed afterwards. If a key is put more than once, the last row put wins.
+ */
+final class IntRowIndex {
+	private static final int EMPTY = -1;
+	
+	private final int[] keys;
+	private final int[] rows;
+	private final int mask;
+	
+	/** Room for expectedSize keys, at a load factor of at most one half */
+	IntRowIndex(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+		keys = new int[capacity];
+		rows = new int[capacity];
+		Arrays.fill(rows, EMPTY);
+		mask = capacity - 1;
+	}
+	
+	void put(int key, int row) {
+		int slot = slotFor(key);
+		keys[slot] = key;
+		rows[slot] = row;
+	}
+	
+	/** The row for key, or -1 */
+	int get(int key) {
+		return rows[slotFor(key)];
+	}
+	
+	private int slotFor(int key) {
+		int slot = mix(key) & mask;
+		while(rows[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	//spreads nearby ids (which are mostly sequential) over the table
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,351 @@
+package business.productsubsystem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import business.externalinterfaces.IDbClassProduct;
+import business.externalinterfaces.ProductChangeEvent;
+import middleware.DbConfigProperties;
+import middleware.exceptions.DatabaseException;
+
+/**
+ * Keeps the stock of each product in memory, as the number of units not yet
+ * sold or held. A holder (a shopping cart) holds units while they are in 
+ * the cart; a hold lasts reservation_ttl_millis from the time it was last
+ * set, then the units go back into stock. Placing an order commits the 
+ * holder's units, and takes any units it did not hold straight from stock.
+ * 
+ * Units are taken with compare-and-set on a per-product counter, never 
+ * below zero, so two holders cannot be given the same unit, and reading
+ * the stock takes no lock. Sales are written to product.totalquantity in 
+ * batches, every inventory_flush_interval_millis and at shutdown, as 
+ * additions to the column rather than new values, so that other clients'
+ * changes to it are kept.
+ * 
+ * The stock of a product is read from the database when the product is 
+ * first used; changes made to totalquantity by other clients after that 
+ * are not seen. Every change to the units available is passed on to 
+ * ProductChangeBus.
+ */
+enum InventoryService {
+	INSTANCE;
+	private static final Logger LOG = 
+			Logger.getLogger(InventoryService.class.getPackage().getName());
+	
+	private final ConcurrentHashMap<Integer, Stock> stock = new ConcurrentHashMap<Integer, Stock>();
+	private final ConcurrentHashMap<HoldKey, Hold> holds = new ConcurrentHashMap<HoldKey, Hold>();
+	private volatile IDbClassProduct store;
+	private ScheduledExecutorService executor;
+	
+	/** 
+	 * Sets where stock is read from and written to, and starts the background
+	 * flushes; later calls do nothing 
+	 */
+	void start(IDbClassProduct dbClass) {
+		if(store == null) startOnce(dbClass);
+	}
+	
+	private synchronized void startOnce(IDbClassProduct dbClass) {
+		if(executor != null) return;
+		store = dbClass;
+		long interval = DbConfigProperties.getConfig().getInventoryFlushIntervalMillis();
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "ebazaar-inventory");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+		Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "ebazaar-inventory-flush"));
+		//products deleted by other clients, once the product cache has caught up
+		ProductChangeBus.INSTANCE.addListener(this::forgetDeleted, Runnable::run);
+		LOG.info("Flushing stock changes every " + interval + "ms");
+	}
+	
+	/** Units of the product neither sold nor held */
+	int available(int productId) throws DatabaseException {
+		return stockFor(productId).free.get();
+	}
+	
+	/** Units available to holder: those available to all, and those it holds */
+	int availableTo(Object holder, int productId) throws DatabaseException {
+		int free = available(productId);
+		Hold h = holds.get(new HoldKey(holder, productId));
+		return (h == null) ? free : free + h.quantity;
+	}
+	
+	/**
+	 * Makes holder's hold on the product quantity units, taking units from 
+	 * stock or giving them back as needed, and restarts the hold's time. If
+	 * too few units are available, holds as many as it can. Returns the 
+	 * number of units now held.
+	 */
+	int reserve(Object holder, int productId, int quantity) throws DatabaseException {
+		Stock s = stockFor(productId);
+		HoldKey key = new HoldKey(holder, productId);
+		long expires = System.currentTimeMillis() + DbConfigProperties.getConfig().getReservationTtlMillis();
+		Hold h = holds.compute(key, (k, old) -> {
+			int held = (old == null) ? 0 : old.quantity;
+			int want = Math.max(0, quantity);
+			if(want > held) {
+				held += s.takeUpTo(want - held);
+			} else if(want < held) {
+				s.free.addAndGet(held - want);
+				held = want;
+			}
+			return (held == 0) ? null : new Hold(held, expires);
+		});
+		stockChanged(productId, s);
+		return (h == null) ? 0 : h.quantity;
+	}
+	
+	/** 
+	 * Makes holder's holds quantities (product id -> units), as reserve does
+	 * for each product; units of other products held by holder are given back 
+	 */
+	void reserve(Object holder, Map<Integer, Integer> quantities) throws DatabaseException {
+		for(Map.Entry<HoldKey, Hold> e : holds.entrySet()) {
+			HoldKey key = e.getKey();
+			if(key.holder == holder && !quantities.containsKey(key.productId)) {
+				release(holder, key.productId);
+			}
+		}
+		for(Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+			int held = reserve(holder, line.getKey(), line.getValue());
+			if(held < line.getValue()) {
+				LOG.fine("Only " + held + " of " + line.getValue() + " units held of product " + line.getKey());
+			}
+		}
+	}
+	
+	/** Gives back the units holder holds of the product */
+	void release(Object holder, int productId) {
+		Hold h = holds.remove(new HoldKey(holder, productId));
+		if(h != null) giveBack(productId, h.quantity);
+	}
+	
+	/** Gives back every unit holder holds */
+	void releaseAll(Object holder) {
+		for(Map.Entry<HoldKey, Hold> e : holds.entrySet()) {
+			HoldKey key = e.getKey();
+			if(key.holder == holder && holds.remove(key, e.getValue())) {
+				giveBack(key.productId, e.getValue().quantity);
+			}
+		}
+	}
+	
+	/**
+	 * Sells quantities (product id -> units): the units holder holds are used 
+	 * first, then units available to all. Either every product is sold or
+	 * none is; returns the ids of the products of which too few units were 
+	 * left, empty if the sale went through. Afterwards holder holds nothing.
+	 */
+	List<Integer> commit(Object holder, Map<Integer, Integer> quantities) throws DatabaseException {
+		Map<Integer, Stock> lines = new HashMap<Integer, Stock>();
+		for(Integer productId : quantities.keySet()) {
+			lines.put(productId, stockFor(productId));
+		}
+		//the holds are removed first, so that they cannot expire during the sale
+		Map<HoldKey, Hold> used = new HashMap<HoldKey, Hold>();
+		Map<Integer, Integer> taken = new HashMap<Integer, Integer>();
+		List<Integer> missing = new ArrayList<Integer>();
+		for(Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+			int productId = line.getKey();
+			HoldKey key = new HoldKey(holder, productId);
+			Hold h = holds.remove(key);
+			if(h != null) used.put(key, h);
+			int extra = line.getValue() - ((h == null) ? 0 : h.quantity);
+			if(extra > 0) {
+				if(!lines.get(productId).take(extra)) {
+					missing.add(productId);
+					continue;
+				}
+				taken.put(productId, extra);
+			}
+		}
+		if(!missing.isEmpty()) {
+			//undo: the units taken go back, and the holds are put back as they were
+			for(Map.Entry<Integer, Integer> e : taken.entrySet()) {
+				giveBack(e.getKey(), e.getValue());
+			}
+			for(Map.Entry<HoldKey, Hold> e : used.entrySet()) {
+				if(holds.putIfAbsent(e.getKey(), e.getValue()) != null) {
+					giveBack(e.getKey().productId, e.getValue().quantity);
+				}
+			}
+			return missing;
+		}
+		for(Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+			int productId = line.getKey();
+			Hold h = used.get(new HoldKey(holder, productId));
+			int surplus = ((h == null) ? 0 : h.quantity) - line.getValue();
+			Stock s = lines.get(productId);
+			if(surplus > 0) s.free.addAndGet(surplus);
+			s.unflushed.addAndGet(-line.getValue());
+			stockChanged(productId, s);
+		}
+		releaseAll(holder);
+		return missing;
+	}
+	
+	/** Puts units sold by commit back into stock, as when the order could not be saved */
+	void restock(Map<Integer, Integer> quantities) {
+		for(Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+			Stock s = stock.get(line.getKey());
+			if(s == null) continue;
+			s.free.addAndGet(line.getValue());
+			s.unflushed.addAndGet(line.getValue());
+			stockChanged(line.getKey(), s);
+		}
+	}
+	
+	/** Forgets a deleted product; its holds lapse as usual */
+	void forget(int productId) {
+		stock.remove(productId);
+	}
+	
+	private Stock stockFor(int productId) throws DatabaseException {
+		Stock s = stock.get(productId);
+		if(s != null) return s;
+		IDbClassProduct dbClass = store;
+		if(dbClass == null) {
+			throw new DatabaseException("Inventory used before it was started");
+		}
+		Integer quantity = dbClass.readStockLevel(productId);
+		if(quantity == null) {
+			throw new DatabaseException("No product with id " + productId);
+		}
+		//another thread may have read it meanwhile; the first one in is kept
+		Stock loaded = stock.putIfAbsent(productId, new Stock(quantity));
+		return (loaded == null) ? stock.get(productId) : loaded;
+	}
+	
+	private void giveBack(int productId, int quantity) {
+		Stock s = stock.get(productId);
+		if(s == null) return;
+		s.free.addAndGet(quantity);
+		stockChanged(productId, s);
+	}
+	
+	private static void stockChanged(int productId, Stock s) {
+		ProductChangeBus.INSTANCE.stockChanged(productId, s.free.get());
+	}
+	
+	private void forgetDeleted(List<ProductChangeEvent> events) {
+		for(ProductChangeEvent e : events) {
+			if(e.getType() == ProductChangeEvent.Type.DELETED) forget(e.getProductId());
+		}
+	}
+	
+	private void maintain() {
+		try {
+			expireHolds(System.currentTimeMillis());
+			flush();
+		} catch(RuntimeException e) {
+			//an exception would cancel all future runs
+			LOG.warning("Inventory maintenance failed: " + e.getMessage());
+		}
+	}
+	
+	private void expireHolds(long now) {
+		for(Map.Entry<HoldKey, Hold> e : holds.entrySet()) {
+			if(e.getValue().expires <= now && holds.remove(e.getKey(), e.getValue())) {
+				giveBack(e.getKey().productId, e.getValue().quantity);
+			}
+		}
+	}
+	
+	/**
+	 * Writes the sales not yet written, in one transaction; if it fails none
+	 * of them is written, and all are kept for the next flush
+	 */
+	void flush() {
+		IDbClassProduct dbClass = store;
+		if(dbClass == null) return;
+		Map<Integer, Integer> deltas = new HashMap<Integer, Integer>();
+		for(Map.Entry<Integer, Stock> e : stock.entrySet()) {
+			int delta = e.getValue().unflushed.getAndSet(0);
+			if(delta != 0) deltas.put(e.getKey(), delta);
+		}
+		if(deltas.isEmpty()) return;
+		try {
+			dbClass.addToStock(deltas);
+			LOG.fine(() -> "Flushed stock changes for " + deltas.size() + " products");
+		} catch(DatabaseException | RuntimeException e) {
+			LOG.warning("Unable to write stock changes, will retry: " + e.getMessage());
+			for(Map.Entry<Integer, Integer> d : deltas.entrySet()) {
+				Stock s = stock.get(d.getKey());
+				if(s != null) s.unflushed.addAndGet(d.getValue());
+			}
+		}
+	}
+	
+	private static final class Stock {
+		//units neither sold nor held
+		private final AtomicInteger free;
+		//net change to totalquantity not yet written
+		private final AtomicInteger unflushed = new AtomicInteger();
+		
+		Stock(int quantity) {
+			free = new AtomicInteger(quantity);
+		}
+		
+		boolean take(int n) {
+			while(true) {
+				int cur = free.get();
+				if(cur < n) return false;
+				if(free.compareAndSet(cur, cur - n)) return true;
+			}
+		}
+		
+		/** Takes n units, or all there are if fewer; returns the number taken */
+		int takeUpTo(int n) {
+			while(true) {
+				int cur = free.get();
+				int got = Math.max(0, Math.min(cur, n));
+				if(got == 0 || free.compareAndSet(cur, cur - got)) return got;
+			}
+		}
+	}
+	
+	private static final class Hold {
+		private final int quantity;
+		private final long expires;
+		
+		Hold(int quantity, long expires) {
+			this.quantity = quantity;
+			this.expires = expires;
+		}
+	}
+	
+	/** Holders are told apart by identity */
+	private static final class HoldKey {
+		private final Object holder;
+		private final int productId;
+		
+		HoldKey(Object holder, int productId) {
+			this.holder = holder;
+			this.productId = productId;
+		}
+		
+		@Override
+		public boolean equals(Object ob) {
+			if(this == ob) return true;
+			if(!(ob instanceof HoldKey)) return false;
+			HoldKey k = (HoldKey)ob;
+			return holder == k.holder && productId == k.productId;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(holder) + productId;
+		}
+	}
+}
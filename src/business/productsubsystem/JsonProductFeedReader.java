@@ -0,0 +1,147 @@
+package business.productsubsystem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads a JSON array of flat objects, or objects one after another (JSON 
+ * Lines), one object at a time. Field values must be strings, numbers, 
+ * true, false or null; numbers are kept as written, and null fields are 
+ * left out.
+ */
+final class JsonProductFeedReader implements ProductFeedReader {
+	private final BufferedReader in;
+	private int line = 1;
+	private boolean started = false;
+	private boolean inArray = false;
+	private boolean atEnd = false;
+	
+	JsonProductFeedReader(BufferedReader in) {
+		this.in = in;
+	}
+
+	@Override
+	public Map<String, String> next() throws IOException {
+		if(atEnd) return null;
+		int c = skipSpace();
+		if(!started) {
+			started = true;
+			if(c == '[') {
+				inArray = true;
+				c = skipSpace();
+				if(c == ']') return end();
+			}
+		} else if(inArray) {
+			if(c == ']') return end();
+			if(c != ',') throw error("expected , or ] after an object");
+			c = skipSpace();
+		} else if(c == ',') {
+			c = skipSpace();
+		}
+		if(c == -1) {
+			if(inArray) throw error("the array is not closed");
+			return end();
+		}
+		if(c != '{') throw error("expected an object");
+		return readObject();
+	}
+	
+	private Map<String, String> end() throws IOException {
+		atEnd = true;
+		if(skipSpace() != -1) throw error("unexpected text after the end of the feed");
+		return null;
+	}
+	
+	private Map<String, String> readObject() throws IOException {
+		Map<String, String> record = new HashMap<String, String>();
+		int c = skipSpace();
+		if(c == '}') return record;
+		while(true) {
+			if(c != '"') throw error("expected a field name");
+			String name = readString().toLowerCase(Locale.ROOT);
+			if(skipSpace() != ':') throw error("expected : after \"" + name + "\"");
+			String value = readValue(skipSpace());
+			if(value != null) record.put(name, value);
+			c = skipSpace();
+			if(c == '}') return record;
+			if(c != ',') throw error("expected , or } in an object");
+			c = skipSpace();
+		}
+	}
+	
+	private String readValue(int c) throws IOException {
+		if(c == '"') return readString();
+		if(c == '{' || c == '[') throw error("nested objects and arrays are not supported");
+		if(!isWordChar(c)) throw error("expected a value");
+		StringBuilder word = new StringBuilder();
+		while(isWordChar(c)) {
+			word.append((char)c);
+			in.mark(1);
+			c = in.read();
+		}
+		//the character after the value is read again by skipSpace
+		if(c != -1) in.reset();
+		String text = word.toString();
+		return text.equals("null") ? null : text;
+	}
+	
+	//characters of numbers, true, false and null
+	private static boolean isWordChar(int c) {
+		return c != -1 && (Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.');
+	}
+	
+	/** The rest of a string whose opening quote has been read */
+	private String readString() throws IOException {
+		StringBuilder s = new StringBuilder();
+		while(true) {
+			int c = in.read();
+			if(c == -1 || c == '\n') throw error("string is not closed");
+			if(c == '"') return s.toString();
+			if(c != '\\') {
+				s.append((char)c);
+				continue;
+			}
+			c = in.read();
+			switch(c) {
+				case 'n': s.append('\n'); break;
+				case 't': s.append('\t'); break;
+				case 'r': s.append('\r'); break;
+				case 'b': s.append('\b'); break;
+				case 'f': s.append('\f'); break;
+				case 'u':
+					int code = 0;
+					for(int i = 0; i < 4; ++i) {
+						int digit = Character.digit(in.read(), 16);
+						if(digit < 0) throw error("bad \\u escape");
+						code = code * 16 + digit;
+					}
+					s.append((char)code);
+					break;
+				case '"': case '\\': case '/': s.append((char)c); break;
+				default: throw error("bad escape in string");
+			}
+		}
+	}
+	
+	/** The next character that is not white space, or -1 */
+	private int skipSpace() throws IOException {
+		int c;
+		do {
+			c = in.read();
+			if(c == '\n') ++line;
+		} while(c != -1 && Character.isWhitespace(c));
+		return c;
+	}
+	
+	private IOException error(String problem) {
+		return new IOException("Line " + line + ": " + problem);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,258 @@
+package business.productsubsystem;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import business.externalinterfaces.Product;
+import business.externalinterfaces.ProductSortOrder;
+
+/**
+ * The maps, including the per-catalog lists in each sort order, are
+ * filled in the constructor and never changed afterwards,
+ * so a snapshot can be shared by any number of threads once it has been
+ * published (DbClassProduct publishes it through a volatile field).
+ * withChanges and withCatalog sort again only the catalogs that changed,
+ * but build the product list and the id and name maps in full.
+ */
+final class ProductCatalogSnapshotImpl implements ProductStore {
+	static final ProductCatalogSnapshotImpl EMPTY = 
+			new ProductCatalogSnapshotImpl(0, Collections.<Product>emptyList());
+	
+	private final long version;
+	private final List<Product> products;
+	private final Map<Integer, Product> byId;
+	private final Map<String, Product> byName;
+	// catalog id -> that catalog's products, in every ProductSortOrder
+	private final Map<Integer, Map<ProductSortOrder, List<Product>>> byCatalog;
+	// the snapshot this one was made from, and the ids that may differ from it;
+	// weak, so that a chain of snapshots is not kept alive
+	private final WeakReference<ProductStore> base;
+	private final int[] differences;
+	
+	ProductCatalogSnapshotImpl(long version, List<Product> products) {
+		this(version, products, null, Collections.<Integer>emptySet(), null);
+	}
+	
+	/** 
+	 * The per-catalog lists of previous are reused for the catalogs whose products 
+	 * are the same in both; only those in changedCatalogs are sorted again.
+	 * differences are the ids of the products that may differ from previous.
+	 */
+	private ProductCatalogSnapshotImpl(long version, List<Product> products, 
+			ProductCatalogSnapshotImpl previous, Set<Integer> changedCatalogs, int[] differences) {
+		this.version = version;
+		this.base = (previous == null) ? null : new WeakReference<ProductStore>(previous);
+		this.differences = differences;
+		this.products = Collections.unmodifiableList(new ArrayList<Product>(products));
+		Map<Integer, Product> ids = new HashMap<Integer, Product>(products.size() * 2);
+		Map<String, Product> names = new HashMap<String, Product>(products.size() * 2);
+		for(Product p : products) {
+			ids.put(p.getProductId(), p);
+			names.put(p.getProductName(), p);
+		}
+		this.byId = ids;
+		this.byName = names;
+		this.byCatalog = indexByCatalog(this.products, previous, changedCatalogs);
+	}
+	
+	@Override
+	public ProductStore withCatalog(long newVersion, int catalogId, List<Product> catalogProducts) {
+		List<Product> all = new ArrayList<Product>(products.size() + catalogProducts.size());
+		for(Product p : products) {
+			if(p.getCatalog().getId() != catalogId) all.add(p);
+		}
+		all.addAll(catalogProducts);
+		List<Product> replaced = getProducts(catalogId);
+		int[] differences = new int[replaced.size() + catalogProducts.size()];
+		int i = 0;
+		for(Product p : replaced) differences[i++] = p.getProductId();
+		for(Product p : catalogProducts) differences[i++] = p.getProductId();
+		return new ProductCatalogSnapshotImpl(newVersion, all, this, Collections.singleton(catalogId), differences);
+	}
+	
+	@Override
+	public ProductStore withChanges(long newVersion, Collection<Product> changed, Set<Integer> removed) {
+		Map<Integer, Product> updates = new LinkedHashMap<Integer, Product>();
+		Set<Integer> changedCatalogs = new HashSet<Integer>();
+		for(Product p : changed) {
+			updates.put(p.getProductId(), p);
+			changedCatalogs.add(p.getCatalog().getId());
+			Product old = byId.get(p.getProductId());
+			if(old != null) changedCatalogs.add(old.getCatalog().getId());
+		}
+		for(Integer id : removed) {
+			Product old = byId.get(id);
+			if(old != null) changedCatalogs.add(old.getCatalog().getId());
+		}
+		List<Product> all = new ArrayList<Product>(products.size() + changed.size());
+		for(Product p : products) {
+			if(removed.contains(p.getProductId())) continue;
+			Product update = updates.remove(p.getProductId());
+			all.add((update == null) ? p : update);
+		}
+		for(Product p : updates.values()) {
+			if(!removed.contains(p.getProductId())) all.add(p);
+		}
+		Set<Integer> differences = new HashSet<Integer>(removed);
+		for(Product p : changed) differences.add(p.getProductId());
+		return new ProductCatalogSnapshotImpl(newVersion, all, this, changedCatalogs, 
+				differences.stream().mapToInt(Integer::intValue).toArray());
+	}
+	
+	private static Map<Integer, Map<ProductSortOrder, List<Product>>> indexByCatalog(List<Product> products,
+			ProductCatalogSnapshotImpl previous, Set<Integer> changedCatalogs) {
+		Map<Integer, Map<ProductSortOrder, List<Product>>> index = 
+				new HashMap<Integer, Map<ProductSortOrder, List<Product>>>();
+		if(previous != null) {
+			for(Map.Entry<Integer, Map<ProductSortOrder, List<Product>>> e : previous.byCatalog.entrySet()) {
+				if(!changedCatalogs.contains(e.getKey())) index.put(e.getKey(), e.getValue());
+			}
+		}
+		Map<Integer, List<Product>> groups = new HashMap<Integer, List<Product>>();
+		for(Product p : products) {
+			int catalogId = p.getCatalog().getId();
+			if(previous != null && !changedCatalogs.contains(catalogId)) continue;
+			groups.computeIfAbsent(catalogId, id -> new ArrayList<Product>()).add(p);
+		}
+		for(Map.Entry<Integer, List<Product>> group : groups.entrySet()) {
+			Map<ProductSortOrder, List<Product>> orders = 
+					new EnumMap<ProductSortOrder, List<Product>>(ProductSortOrder.class);
+			for(ProductSortOrder order : ProductSortOrder.values()) {
+				List<Product> sorted = new ArrayList<Product>(group.getValue());
+				if(order.getComparator() != null) sorted.sort(order.getComparator());
+				orders.put(order, Collections.unmodifiableList(sorted));
+			}
+			index.put(group.getKey(), orders);
+		}
+		return index;
+	}
+
+	@Override
+	public long getVersion() {
+		return version;
+	}
+
+	@Override
+	public Product getProduct(int productId) {
+		return byId.get(productId);
+	}
+
+	@Override
+	public Product getProductWithName(String productName) {
+		return byName.get(productName);
+	}
+
+	@Override
+	public Integer getProductId(String productName) {
+		Product p = byName.get(productName);
+		return (p == null) ? null : p.getProductId();
+	}
+
+	@Override
+	public List<Product> getProducts() {
+		return products;
+	}
+
+	@Override
+	public List<Product> getProducts(int catalogId) {
+		return getProducts(catalogId, ProductSortOrder.NONE);
+	}
+
+	@Override
+	public List<Product> getProducts(int catalogId, ProductSortOrder order) {
+		Map<ProductSortOrder, List<Product>> orders = byCatalog.get(catalogId);
+		return (orders == null) ? Collections.<Product>emptyList() : orders.get(order);
+	}
+
+	@Override
+	public List<Product> getProductPage(int catalogId, Integer afterProductId, int limit, ProductSortOrder order) {
+		List<Product> list = getProducts(catalogId, order);
+		int from = 0;
+		if(afterProductId != null) {
+			from = positionAfter(list, afterProductId, catalogId, order);
+		}
+		int to = (int)Math.min((long)from + Math.max(0, limit), list.size());
+		return (from >= to) ? Collections.<Product>emptyList() : list.subList(from, to);
+	}
+	
+	/** Index of the first product after the one with id afterProductId, in list */
+	private int positionAfter(List<Product> list, int afterProductId, int catalogId, ProductSortOrder order) {
+		if(order == ProductSortOrder.ID) {
+			//search by id alone, so that a deleted product still marks the place
+			int lo = 0, hi = list.size();
+			while(lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if(list.get(mid).getProductId() <= afterProductId) lo = mid + 1; else hi = mid;
+			}
+			return lo;
+		}
+		Product after = byId.get(afterProductId);
+		if(after == null || after.getCatalog().getId() != catalogId) {
+			return list.size();
+		}
+		if(order.getComparator() == null) {
+			return list.indexOf(after) + 1;
+		}
+		int pos = Collections.binarySearch(list, after, order.getComparator());
+		return (pos >= 0) ? pos + 1 : -pos - 1;
+	}
+
+	@Override
+	public int size() {
+		return products.size();
+	}
+	
+	@Override
+	public boolean contains(int productId) {
+		return byId.containsKey(productId);
+	}
+	
+	@Override
+	public void forEachId(IntConsumer action) {
+		for(Product p : products) {
+			action.accept(p.getProductId());
+		}
+	}
+	
+	@Override
+	public String nameOf(int productId) {
+		Product p = byId.get(productId);
+		return (p == null) ? null : p.getProductName();
+	}
+	
+	@Override
+	public String descriptionOf(int productId) {
+		Product p = byId.get(productId);
+		return (p == null) ? null : p.getDescription();
+	}
+	
+	@Override
+	public double unitPriceOf(int productId) {
+		Product p = byId.get(productId);
+		return (p == null) ? Double.NaN : p.getUnitPrice();
+	}
+	
+	@Override
+	public void forEachDifference(ProductStore previous, IntConsumer action) {
+		if(base != null && base.get() == previous) {
+			for(int id : differences) action.accept(id);
+		} else {
+			ProductStore.forEachIdOfEither(previous, this, action);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "ProductCatalogSnapshot[version=" + version + ", products=" + products.size() + "]";
+	}
+}
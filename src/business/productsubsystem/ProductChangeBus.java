@@ -0,0 +1,160 @@
+package business.productsubsystem;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import business.externalinterfaces.ProductChangeEvent;
+import business.externalinterfaces.ProductChangeListener;
+import middleware.DbConfigProperties;
+
+/**
+ * Passes product changes to the listeners added by addListener. Each 
+ * listener's changes are gathered for product_event_coalesce_millis and 
+ * then handed to it as one batch, on the Executor it was added with; 
+ * while a batch is waiting or being handled, further changes are merged
+ * into the next one, keeping only the latest of each kind per product.
+ * So a listener on the UI thread has at most one batch queued however 
+ * fast products change.
+ * 
+ * Product changes are found by comparing each product snapshot with the 
+ * one it replaces (see DbClassProduct.publish); stock changes come from 
+ * InventoryService.
+ */
+enum ProductChangeBus {
+	INSTANCE;
+	private static final Logger LOG = 
+			Logger.getLogger(ProductChangeBus.class.getPackage().getName());
+	
+	private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+	private ScheduledExecutorService timer;
+	
+	void addListener(ProductChangeListener listener, Executor deliverOn) {
+		subscribers.add(new Subscriber(listener, deliverOn, timer()));
+	}
+	
+	void removeListener(ProductChangeListener listener) {
+		subscribers.removeIf(s -> s.listener == listener);
+	}
+	
+	boolean hasListeners() {
+		return !subscribers.isEmpty();
+	}
+	
+	void publish(ProductChangeEvent event) {
+		for(Subscriber s : subscribers) {
+			s.offer(event);
+		}
+	}
+	
+	void stockChanged(int productId, int quantityAvailable) {
+		if(hasListeners()) publish(ProductChangeEventImpl.stockChanged(productId, quantityAvailable));
+	}
+	
+	/** 
+	 * Publishes the products added, deleted or repriced between previous and 
+	 * current; nothing if previous is null, since then nothing was known before.
+	 * Only the ids that may differ are looked at, and a Product is made only
+	 * for those that are added or repriced.
+	 */
+	void publishDifferences(ProductStore previous, ProductStore current) {
+		if(previous == null || !hasListeners()) return;
+		current.forEachDifference(previous, id -> {
+			boolean before = previous.contains(id), after = current.contains(id);
+			if(after && !before) {
+				publish(ProductChangeEventImpl.created(current.getProduct(id)));
+			} else if(before && !after) {
+				publish(ProductChangeEventImpl.deleted(id));
+			} else if(after && Double.compare(previous.unitPriceOf(id), current.unitPriceOf(id)) != 0) {
+				publish(ProductChangeEventImpl.priceChanged(current.getProduct(id)));
+			}
+		});
+	}
+	
+	private synchronized ScheduledExecutorService timer() {
+		if(timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "ebazaar-product-events");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return timer;
+	}
+	
+	private static final class Subscriber {
+		private final ProductChangeListener listener;
+		private final Executor deliverOn;
+		private final ScheduledExecutorService timer;
+		//latest stock event, and latest other event, per product id
+		private Map<Integer, ProductChangeEvent> pending = new LinkedHashMap<Integer, ProductChangeEvent>();
+		private Map<Integer, ProductChangeEvent> pendingStock = new LinkedHashMap<Integer, ProductChangeEvent>();
+		//true from the first pending event until the batch holding it is taken
+		private boolean scheduled;
+		
+		Subscriber(ProductChangeListener listener, Executor deliverOn, ScheduledExecutorService timer) {
+			this.listener = listener;
+			this.deliverOn = deliverOn;
+			this.timer = timer;
+		}
+		
+		synchronized void offer(ProductChangeEvent event) {
+			int id = event.getProductId();
+			if(event.getType() == ProductChangeEvent.Type.STOCK_CHANGED) {
+				pendingStock.put(id, event);
+			} else {
+				ProductChangeEvent merged = merge(pending.get(id), event);
+				if(merged == null) {
+					pending.remove(id);
+					pendingStock.remove(id);
+				} else {
+					pending.put(id, merged);
+				}
+			}
+			if(!scheduled) {
+				scheduled = true;
+				timer.schedule(() -> deliverOn.execute(this::deliver), 
+						DbConfigProperties.getConfig().getProductEventCoalesceMillis(), TimeUnit.MILLISECONDS);
+			}
+		}
+		
+		/** The one event that has the effect of earlier followed by later; null if they cancel out */
+		private static ProductChangeEvent merge(ProductChangeEvent earlier, ProductChangeEvent later) {
+			if(earlier == null || earlier.getType() != ProductChangeEvent.Type.CREATED) return later;
+			switch(later.getType()) {
+				case DELETED:
+					//the listener never saw it
+					return null;
+				case PRICE_CHANGED:
+					return ProductChangeEventImpl.created(later.getProduct());
+				default:
+					return later;
+			}
+		}
+		
+		private void deliver() {
+			List<ProductChangeEvent> batch;
+			synchronized(this) {
+				batch = new ArrayList<ProductChangeEvent>(pending.size() + pendingStock.size());
+				batch.addAll(pending.values());
+				batch.addAll(pendingStock.values());
+				pending = new LinkedHashMap<Integer, ProductChangeEvent>();
+				pendingStock = new LinkedHashMap<Integer, ProductChangeEvent>();
+				scheduled = false;
+			}
+			if(batch.isEmpty()) return;
+			try {
+				listener.productsChanged(batch);
+			} catch(RuntimeException e) {
+				LOG.warning("Product change listener failed: " + e);
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package business.productsubsystem;
+
+import business.externalinterfaces.Product;
+import business.externalinterfaces.ProductChangeEvent;
+
+final class ProductChangeEventImpl implements ProductChangeEvent {
+	private final Type type;
+	private final int productId;
+	private final Product product;
+	private final int quantityAvailable;
+	
+	private ProductChangeEventImpl(Type type, int productId, Product product, int quantityAvailable) {
+		this.type = type;
+		this.productId = productId;
+		this.product = product;
+		this.quantityAvailable = quantityAvailable;
+	}
+	
+	static ProductChangeEvent created(Product product) {
+		return new ProductChangeEventImpl(Type.CREATED, product.getProductId(), product, -1);
+	}
+	
+	static ProductChangeEvent deleted(int productId) {
+		return new ProductChangeEventImpl(Type.DELETED, productId, null, -1);
+	}
+	
+	static ProductChangeEvent priceChanged(Product product) {
+		return new ProductChangeEventImpl(Type.PRICE_CHANGED, product.getProductId(), product, -1);
+	}
+	
+	static ProductChangeEvent stockChanged(int productId, int quantityAvailable) {
+		return new ProductChangeEventImpl(Type.STOCK_CHANGED, productId, null, quantityAvailable);
+	}
+	
+	@Override
+	public Type getType() {
+		return type;
+	}
+	
+	@Override
+	public int getProductId() {
+		return productId;
+	}
+	
+	@Override
+	public Product getProduct() {
+		return product;
+	}
+	
+	@Override
+	public int getQuantityAvailable() {
+		return quantityAvailable;
+	}
+	
+	@Override
+	public String toString() {
+		return type + " " + productId;
+	}
+}
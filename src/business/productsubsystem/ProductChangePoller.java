@@ -0,0 +1,47 @@
+package business.productsubsystem;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import middleware.exceptions.DatabaseException;
+
+/**
+ * Merges products changed by other clients into the shared product snapshot,
+ * on a single background daemon thread (see DbClassProduct.refreshChangedProducts).
+ * Started by DbClassProduct once the product table has been read and found 
+ * to have a lastmodified column.
+ */
+final class ProductChangePoller {
+	private static final Logger LOG = 
+			Logger.getLogger(ProductChangePoller.class.getPackage().getName());
+	
+	private static ScheduledExecutorService executor;
+	
+	private ProductChangePoller() {}
+	
+	/** Later calls, and calls with intervalMillis <= 0, do nothing */
+	static synchronized void startOnce(long intervalMillis) {
+		if(executor != null || intervalMillis <= 0) return;
+		//its own instance, since a DbClass holds the state of the query it is running
+		DbClassProduct dbClass = new DbClassProduct();
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "ebazaar-product-poller");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.scheduleWithFixedDelay(() -> poll(dbClass), 
+				intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		LOG.info("Polling for product changes every " + intervalMillis + "ms");
+	}
+	
+	private static void poll(DbClassProduct dbClass) {
+		try {
+			dbClass.refreshChangedProducts();
+		} catch(DatabaseException | RuntimeException e) {
+			//an exception would cancel all future polls
+			LOG.warning("Unable to refresh changed products: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package business.productsubsystem;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the records of a product feed one at a time, so that a feed of any 
+ * size can be imported without holding it in memory. Field names are in 
+ * lower case; values are the text found in the feed, not yet checked.
+ * A feed that cannot be read any further (bad syntax) ends with an IOException.
+ */
+interface ProductFeedReader extends Closeable {
+	
+	/** The next record, field name -> value; null at the end of the feed */
+	Map<String, String> next() throws IOException;
+	
+	/** A reader for file: JSON if its name ends in .json, .jsonl or .ndjson, otherwise CSV */
+	static ProductFeedReader open(File file) throws IOException {
+		BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		if(name.endsWith(".json") || name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+			return new JsonProductFeedReader(in);
+		}
+		return new CsvProductFeedReader(in);
+	}
+}
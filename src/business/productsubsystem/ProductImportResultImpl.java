@@ -0,0 +1,60 @@
+package business.productsubsystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import business.externalinterfaces.ProductImportResult;
+
+/** Filled in by ProductImporter as the import goes on */
+final class ProductImportResultImpl implements ProductImportResult {
+	private static final int MAX_ERRORS_KEPT = 500;
+	
+	private int rowCount;
+	private int importedCount;
+	private int errorCount;
+	private final List<String> errors = new ArrayList<String>();
+	
+	void addRows(int n) {
+		rowCount += n;
+	}
+	
+	void addImported(int n) {
+		importedCount += n;
+	}
+	
+	void addError(int row, String problem) {
+		++errorCount;
+		if(errors.size() < MAX_ERRORS_KEPT) errors.add("Row " + row + ": " + problem);
+	}
+	
+	/** A problem that stopped the import; not counted as a row error */
+	void addFatalError(String problem) {
+		errors.add(problem);
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public int getImportedCount() {
+		return importedCount;
+	}
+
+	@Override
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	@Override
+	public List<String> getErrors() {
+		return Collections.unmodifiableList(errors);
+	}
+	
+	@Override
+	public String toString() {
+		return "Imported " + importedCount + " of " + rowCount + " products; " + errorCount + " rows not imported";
+	}
+}
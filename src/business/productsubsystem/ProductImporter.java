@@ -0,0 +1,206 @@
+package business.productsubsystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+import business.externalinterfaces.Catalog;
+import business.externalinterfaces.IDbClassProduct;
+import business.externalinterfaces.Product;
+import business.externalinterfaces.ProductCatalogSnapshot;
+import business.externalinterfaces.ProductImportResult;
+import business.util.Convert;
+import middleware.exceptions.DatabaseException;
+
+/**
+ * Imports the products in a feed file (see ProductFeedReader for the formats).
+ * Each record names its catalog, and gives the product's name, quantity, 
+ * price, mfgdate (MM/dd/yyyy or yyyy-MM-dd) and, optionally, description; 
+ * the product table's column names are accepted as well.
+ * 
+ * The calling thread reads the feed in chunks of import_batch_size records.
+ * Each chunk is checked on the common fork-join pool while the next ones are
+ * read, then saved, in feed order, as one JDBC batch in a transaction of its
+ * own. A record that fails its checks, and every record of a chunk that 
+ * cannot be saved, is reported as a row error; the import goes on without 
+ * it. The product cache is refreshed once, when the feed has been read.
+ */
+final class ProductImporter {
+	private static final Logger LOG = 
+			Logger.getLogger(ProductImporter.class.getPackage().getName());
+	//chunks read but not yet saved; bounds the memory used by a large feed
+	private static final int MAX_CHUNKS_AHEAD = Runtime.getRuntime().availableProcessors() * 2;
+	
+	private final IDbClassProduct dbClass;
+	private final CatalogTypesImpl catalogs;
+	private final int batchSize;
+	//names already taken: those in the cache when the import started, and those imported
+	private final Set<String> names = new HashSet<String>();
+	private final ProductImportResultImpl result = new ProductImportResultImpl();
+	
+	ProductImporter(IDbClassProduct dbClass, CatalogTypesImpl catalogs, int batchSize) {
+		this.dbClass = dbClass;
+		this.catalogs = catalogs;
+		this.batchSize = batchSize;
+	}
+	
+	/** Throws IOException only if the file cannot be opened; later problems are in the result */
+	ProductImportResult importFile(File file) throws IOException, DatabaseException {
+		ProductCatalogSnapshot existing = dbClass.readProductSnapshot();
+		for(Product p : existing.getProducts()) {
+			names.add(p.getProductName());
+		}
+		Deque<CompletableFuture<List<Row>>> pending = new ArrayDeque<CompletableFuture<List<Row>>>();
+		try (ProductFeedReader feed = ProductFeedReader.open(file)) {
+			int rowNumber = 1;
+			boolean more = true;
+			while(more) {
+				List<Map<String, String>> chunk = new ArrayList<Map<String, String>>(batchSize);
+				try {
+					Map<String, String> record;
+					while(chunk.size() < batchSize && (record = feed.next()) != null) {
+						chunk.add(record);
+					}
+					more = chunk.size() == batchSize;
+				} catch(IOException e) {
+					more = false;
+					result.addFatalError("Import stopped after row " + (rowNumber + chunk.size() - 1) 
+							+ ": " + e.getMessage());
+				}
+				if(!chunk.isEmpty()) {
+					int first = rowNumber;
+					pending.add(CompletableFuture.supplyAsync(() -> check(chunk, first)));
+					rowNumber += chunk.size();
+					result.addRows(chunk.size());
+				}
+				while(!pending.isEmpty() && (pending.size() >= MAX_CHUNKS_AHEAD || !more)) {
+					save(pending.poll().join());
+				}
+			}
+		} finally {
+			if(result.getImportedCount() > 0) refreshCache();
+		}
+		LOG.info(result + " from " + file);
+		return result;
+	}
+	
+	/** Turns each record into a Product, or a reason it cannot be one */
+	private List<Row> check(List<Map<String, String>> chunk, int firstRow) {
+		List<Row> rows = new ArrayList<Row>(chunk.size());
+		for(int i = 0; i < chunk.size(); ++i) {
+			Row row = new Row(firstRow + i);
+			try {
+				row.product = toProduct(chunk.get(i));
+			} catch(IllegalArgumentException e) {
+				row.error = e.getMessage();
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+	
+	private Product toProduct(Map<String, String> record) {
+		String catalogName = required(record, "catalog", "catalogname");
+		Catalog catalog = catalogs.getCatalogWithName(catalogName);
+		if(catalog == null) throw new IllegalArgumentException("no catalog named " + catalogName);
+		String name = required(record, "name", "productname");
+		int quantity;
+		double price;
+		String quantityText = required(record, "quantity", "totalquantity");
+		try {
+			quantity = Integer.parseInt(quantityText);
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("quantity is not a whole number: " + quantityText);
+		}
+		String priceText = required(record, "price", "priceperunit");
+		try {
+			price = Double.parseDouble(priceText);
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("price is not a number: " + priceText);
+		}
+		if(quantity < 0) throw new IllegalArgumentException("quantity is negative: " + quantity);
+		if(price < 0 || Double.isNaN(price) || Double.isInfinite(price)) {
+			throw new IllegalArgumentException("price is not valid: " + priceText);
+		}
+		String dateText = required(record, "mfgdate");
+		LocalDate mfgDate;
+		try {
+			mfgDate = dateText.contains("-") ? LocalDate.parse(dateText) : Convert.localDateForString(dateText);
+		} catch(DateTimeParseException e) {
+			throw new IllegalArgumentException("mfgdate is not a date: " + dateText);
+		}
+		String description = field(record, "description");
+		return new ProductImpl(catalog, name, mfgDate, quantity, price, (description == null) ? "" : description);
+	}
+	
+	private static String required(Map<String, String> record, String... names) {
+		String val = field(record, names);
+		if(val == null) throw new IllegalArgumentException(names[0] + " is missing");
+		return val;
+	}
+	
+	private static String field(Map<String, String> record, String... names) {
+		for(String name : names) {
+			String val = record.get(name);
+			if(val != null && !val.trim().isEmpty()) return val.trim();
+		}
+		return null;
+	}
+	
+	/** Saves the products of a checked chunk; runs on the importing thread */
+	private void save(List<Row> rows) {
+		List<Product> products = new ArrayList<Product>(rows.size());
+		List<Row> saved = new ArrayList<Row>(rows.size());
+		for(Row row : rows) {
+			if(row.error != null) {
+				result.addError(row.number, row.error);
+			} else if(!names.add(row.product.getProductName())) {
+				result.addError(row.number, "there is already a product named " + row.product.getProductName());
+			} else {
+				products.add(row.product);
+				saved.add(row);
+			}
+		}
+		if(products.isEmpty()) return;
+		try {
+			dbClass.saveNewProducts(products);
+			result.addImported(products.size());
+		} catch(DatabaseException | RuntimeException e) {
+			LOG.warning("Unable to save rows " + rows.get(0).number + " to " 
+					+ rows.get(rows.size() - 1).number + ": " + e.getMessage());
+			for(Row row : saved) {
+				names.remove(row.product.getProductName());
+				result.addError(row.number, "not saved: " + e.getMessage());
+			}
+		}
+	}
+	
+	private void refreshCache() {
+		try {
+			dbClass.refreshProductSnapshot();
+		} catch(DatabaseException e) {
+			//the poller, or the next refresh, will pick the products up
+			LOG.warning("Products imported, but the product cache could not be refreshed: " + e.getMessage());
+		}
+	}
+	
+	private static final class Row {
+		private final int number;
+		private Product product;
+		private String error;
+		
+		Row(int number) {
+			this.number = number;
+		}
+	}
+}
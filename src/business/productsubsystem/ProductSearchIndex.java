@@ -0,0 +1,281 @@
+package business.productsubsystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Inverted index over product names and descriptions, kept in step with 
+ * the product snapshot: when DbClassProduct publishes a new snapshot, only
+ * the products that were added or removed, or whose name or description 
+ * changed, are re-indexed. Only ids are kept, not the products, so the
+ * index works the same whether or not the snapshot keeps Product objects.
+ * 
+ * Each query word must match a word of the product, exactly, as a prefix,
+ * or (for words of four or more letters) with one typing mistake: a letter
+ * added, left out, changed, or two letters swapped. Exact matches count for
+ * more than prefixes, and prefixes for more than near misses; a match in the
+ * name counts for more than one in the description. Near misses are found
+ * through an index of every word with one letter deleted, so no scan of the 
+ * vocabulary is needed.
+ */
+final class ProductSearchIndex {
+	private static final int NAME_WEIGHT = 3;
+	private static final int DESCRIPTION_WEIGHT = 1;
+	private static final double EXACT = 1.0;
+	private static final double PREFIX = 0.6;
+	private static final double NEAR_MISS = 0.4;
+	private static final int MIN_FUZZY_LENGTH = 4;
+	
+	private static final Comparator<Hit> BY_SCORE = Comparator
+			.comparingDouble((Hit h) -> h.score)
+			.thenComparing(h -> h.name, Comparator.nullsFirst(Comparator.<String>reverseOrder()))
+			.thenComparing(h -> -h.productId);
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	// product id -> what was indexed for it
+	private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+	// word -> product id -> weight
+	private final TreeMap<String, Map<Integer, Integer>> postings = new TreeMap<String, Map<Integer, Integer>>();
+	// word with one letter deleted -> words it was made from
+	private final Map<String, Set<String>> deletions = new HashMap<String, Set<String>>();
+	
+	/** 
+	 * Brings the index up to date with current, given that it reflected previous
+	 * (null at first); only the ids that may differ between them are looked at
+	 */
+	void update(ProductStore previous, ProductStore current) {
+		IntConsumer reindex = id -> {
+			if(!current.contains(id)) {
+				remove(id);
+				return;
+			}
+			String name = current.nameOf(id), description = current.descriptionOf(id);
+			Entry e = entries.get(id);
+			if(e == null || !e.matches(name, description)) {
+				remove(id);
+				add(id, name, description);
+			}
+		};
+		lock.writeLock().lock();
+		try {
+			if(previous == null) {
+				current.forEachId(reindex);
+			} else {
+				current.forEachDifference(previous, reindex);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/** Ids of the best matches for query, best first; at most limit of them */
+	List<Integer> search(String query, int limit) {
+		List<String> words = new ArrayList<String>(new LinkedHashSet<String>(tokenize(query)));
+		if(words.isEmpty() || limit <= 0) {
+			return Collections.emptyList();
+		}
+		lock.readLock().lock();
+		try {
+			Map<Integer, Double> scores = null;
+			for(String word : words) {
+				Map<Integer, Double> wordScores = score(word);
+				if(scores == null) {
+					scores = wordScores;
+				} else {
+					//every word of the query must match
+					scores.keySet().retainAll(wordScores.keySet());
+					for(Map.Entry<Integer, Double> e : scores.entrySet()) {
+						e.setValue(e.getValue() + wordScores.get(e.getKey()));
+					}
+				}
+				if(scores.isEmpty()) {
+					return Collections.emptyList();
+				}
+			}
+			PriorityQueue<Hit> best = new PriorityQueue<Hit>(limit + 1, BY_SCORE);
+			for(Map.Entry<Integer, Double> e : scores.entrySet()) {
+				best.add(new Hit(e.getKey(), entries.get(e.getKey()).name, e.getValue()));
+				if(best.size() > limit) best.poll();
+			}
+			List<Integer> result = new ArrayList<Integer>(best.size());
+			while(!best.isEmpty()) {
+				result.add(best.poll().productId);
+			}
+			Collections.reverse(result);
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/** product id -> best score of any of its words against word */
+	private Map<Integer, Double> score(String word) {
+		Map<Integer, Double> scores = new HashMap<Integer, Double>();
+		addScores(scores, postings.get(word), EXACT);
+		for(Map<Integer, Integer> posting : postings.subMap(word, false, word + Character.MAX_VALUE, false).values()) {
+			addScores(scores, posting, PREFIX);
+		}
+		if(word.length() >= MIN_FUZZY_LENGTH) {
+			for(String candidate : nearMisses(word)) {
+				addScores(scores, postings.get(candidate), NEAR_MISS);
+			}
+		}
+		return scores;
+	}
+	
+	private static void addScores(Map<Integer, Double> scores, Map<Integer, Integer> posting, double quality) {
+		if(posting == null) return;
+		for(Map.Entry<Integer, Integer> e : posting.entrySet()) {
+			scores.merge(e.getKey(), quality * e.getValue(), Math::max);
+		}
+	}
+	
+	/** Indexed words one mistake away from word (not word itself) */
+	private Set<String> nearMisses(String word) {
+		Set<String> candidates = new HashSet<String>();
+		//a letter added to the indexed word, or letters changed or swapped
+		for(String d : deletes(word)) {
+			if(postings.containsKey(d)) candidates.add(d);
+			Set<String> sources = deletions.get(d);
+			if(sources != null) candidates.addAll(sources);
+		}
+		//a letter left out of the indexed word
+		Set<String> sources = deletions.get(word);
+		if(sources != null) candidates.addAll(sources);
+		candidates.remove(word);
+		candidates.removeIf(c -> !withinOneEdit(word, c));
+		return candidates;
+	}
+	
+	private void add(int productId, String name, String description) {
+		Map<String, Integer> words = new HashMap<String, Integer>();
+		for(String w : tokenize(description)) {
+			words.merge(w, DESCRIPTION_WEIGHT, Math::max);
+		}
+		for(String w : tokenize(name)) {
+			words.merge(w, NAME_WEIGHT, Math::max);
+		}
+		entries.put(productId, new Entry(name, description, words.keySet()));
+		for(Map.Entry<String, Integer> e : words.entrySet()) {
+			String w = e.getKey();
+			Map<Integer, Integer> posting = postings.get(w);
+			if(posting == null) {
+				posting = new HashMap<Integer, Integer>();
+				postings.put(w, posting);
+				if(w.length() >= MIN_FUZZY_LENGTH) {
+					for(String d : deletes(w)) {
+						deletions.computeIfAbsent(d, k -> new HashSet<String>()).add(w);
+					}
+				}
+			}
+			posting.put(productId, e.getValue());
+		}
+	}
+	
+	private void remove(int productId) {
+		Entry e = entries.remove(productId);
+		if(e == null) return;
+		for(String w : e.words) {
+			Map<Integer, Integer> posting = postings.get(w);
+			if(posting == null) continue;
+			posting.remove(productId);
+			if(posting.isEmpty()) {
+				postings.remove(w);
+				for(String d : deletes(w)) {
+					Set<String> sources = deletions.get(d);
+					if(sources != null && sources.remove(w) && sources.isEmpty()) {
+						deletions.remove(d);
+					}
+				}
+			}
+		}
+	}
+	
+	/** Lower-case runs of letters and digits */
+	static List<String> tokenize(String text) {
+		List<String> words = new ArrayList<String>();
+		if(text == null) return words;
+		String lower = text.toLowerCase(Locale.ROOT);
+		int start = -1;
+		for(int i = 0; i <= lower.length(); ++i) {
+			boolean inWord = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+			if(inWord && start < 0) {
+				start = i;
+			} else if(!inWord && start >= 0) {
+				words.add(lower.substring(start, i));
+				start = -1;
+			}
+		}
+		return words;
+	}
+	
+	/** word with each one of its letters left out in turn */
+	private static List<String> deletes(String word) {
+		List<String> result = new ArrayList<String>(word.length());
+		for(int i = 0; i < word.length(); ++i) {
+			result.add(word.substring(0, i) + word.substring(i + 1));
+		}
+		return result;
+	}
+	
+	/** Whether a and b differ by one insertion, deletion, substitution or adjacent swap */
+	static boolean withinOneEdit(String a, String b) {
+		int la = a.length(), lb = b.length();
+		if(Math.abs(la - lb) > 1) return false;
+		int i = 0;
+		while(i < la && i < lb && a.charAt(i) == b.charAt(i)) ++i;
+		if(i == la || i == lb) return true;
+		if(la == lb) {
+			//substitution, or swap of i and i + 1
+			if(a.regionMatches(i + 1, b, i + 1, la - i - 1)) return true;
+			return i + 1 < la && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+					&& a.regionMatches(i + 2, b, i + 2, la - i - 2);
+		}
+		return (la > lb) 
+				? a.regionMatches(i + 1, b, i, lb - i) 
+				: b.regionMatches(i + 1, a, i, la - i);
+	}
+	
+	private static final class Entry {
+		private final String name;
+		private final String description;
+		private final Set<String> words;
+		
+		Entry(String name, String description, Set<String> words) {
+			this.name = name;
+			this.description = description;
+			this.words = words;
+		}
+		
+		boolean matches(String otherName, String otherDescription) {
+			return Objects.equals(name, otherName) 
+					&& Objects.equals(description, otherDescription);
+		}
+	}
+	
+	private static final class Hit {
+		private final int productId;
+		private final String name;
+		private final double score;
+		
+		Hit(int productId, String name, double score) {
+			this.productId = productId;
+			this.name = name;
+			this.score = score;
+		}
+	}
+}
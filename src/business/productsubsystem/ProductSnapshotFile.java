@@ -0,0 +1,207 @@
+package business.productsubsystem;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import business.externalinterfaces.Catalog;
+import business.externalinterfaces.Product;
+import business.externalinterfaces.ProductCatalogSnapshot;
+
+/**
+ * The product cache saved to disk, so that a restart can begin with the 
+ * products as they were rather than wait for the whole product table to
+ * be read. The file holds the snapshot's version, the change watermark
+ * (see DbClassProduct.refreshChangedProducts) from which the saved 
+ * products can be brought up to date, the catalog list and the products,
+ * followed by a CRC32 of all of it. It is written to a temporary file
+ * that then replaces the old one, so a reader never sees half a file. 
+ * It is read into a heap buffer rather than mapped, since it is decoded in
+ * full anyway, and a mapped file could not be replaced (on Windows) until
+ * the mapping was collected.
+ */
+final class ProductSnapshotFile {
+	private static final Logger LOG = 
+			Logger.getLogger(ProductSnapshotFile.class.getPackage().getName());
+	private static final int MAGIC = 0x45425a50; //"EBZP"
+	private static final int FORMAT = 1;
+	private static final int NO_DATE = Integer.MIN_VALUE;
+	
+	private final long version;
+	private final Timestamp watermark;
+	private final Map<Integer, String> catalogs;
+	private final List<Product> products;
+	
+	ProductSnapshotFile(long version, Timestamp watermark, Map<Integer, String> catalogs, List<Product> products) {
+		this.version = version;
+		this.watermark = watermark;
+		this.catalogs = catalogs;
+		this.products = products;
+	}
+	
+	long getVersion() {
+		return version;
+	}
+	
+	/** null if the products cannot be brought up to date from changes alone */
+	Timestamp getWatermark() {
+		return watermark;
+	}
+	
+	/** catalog id -> name; empty if the catalog list was not loaded when the file was saved */
+	Map<Integer, String> getCatalogs() {
+		return catalogs;
+	}
+	
+	List<Product> getProducts() {
+		return products;
+	}
+	
+	/** The contents of a snapshot (and the catalogs, if loaded), ready to be saved */
+	static ProductSnapshotFile of(ProductCatalogSnapshot snapshot, Timestamp watermark, CatalogTypesImpl types) {
+		Map<Integer, String> catalogs = new LinkedHashMap<Integer, String>();
+		if(types != null) {
+			for(Catalog c : types.getCatalogs()) {
+				catalogs.put(c.getId(), c.getName());
+			}
+		}
+		return new ProductSnapshotFile(snapshot.getVersion(), watermark, catalogs, snapshot.getProducts());
+	}
+	
+	/** Writes this to file, replacing it as a whole */
+	void save(Path file) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			CRC32 crc = new CRC32();
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					Files.newOutputStream(tmp), 1 << 16))) {
+				DataOutputStream body = new DataOutputStream(new CheckedOutputStream(out, crc));
+				body.writeInt(MAGIC);
+				body.writeInt(FORMAT);
+				body.writeLong(version);
+				body.writeLong((watermark == null) ? Long.MIN_VALUE : watermark.getTime());
+				body.writeInt((watermark == null) ? 0 : watermark.getNanos());
+				body.writeInt(catalogs.size());
+				for(Map.Entry<Integer, String> c : catalogs.entrySet()) {
+					body.writeInt(c.getKey());
+					writeString(body, c.getValue());
+				}
+				body.writeInt(products.size());
+				for(Product p : products) {
+					LocalDate mfg = p.getMfgDate();
+					body.writeInt(p.getProductId());
+					body.writeInt(p.getCatalog().getId());
+					body.writeInt(p.getQuantityAvail());
+					body.writeDouble(p.getUnitPrice());
+					body.writeInt((mfg == null) ? NO_DATE : (int)mfg.toEpochDay());
+					writeString(body, p.getProductName());
+					writeString(body, p.getDescription());
+				}
+				body.flush();
+				out.writeLong(crc.getValue());
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+	
+	/** 
+	 * The snapshot saved in file, its products in the shared catalogs of 
+	 * CatalogRegistry (whose list is loaded from the file, if not loaded yet);
+	 * null if there is no such file, or it cannot be used
+	 */
+	static ProductSnapshotFile load(Path file) {
+		try {
+			return decode(ByteBuffer.wrap(Files.readAllBytes(file)));
+		} catch(NoSuchFileException e) {
+			return null;
+		} catch(IOException | RuntimeException e) {
+			LOG.warning("Ignoring saved product snapshot " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+	
+	private static ProductSnapshotFile decode(ByteBuffer in) throws IOException {
+		if(in.remaining() < 8 + 8) throw new IOException("file is too short");
+		CRC32 crc = new CRC32();
+		ByteBuffer body = in.duplicate();
+		body.limit(in.limit() - 8);
+		crc.update(body.duplicate());
+		if(crc.getValue() != in.getLong(in.limit() - 8)) throw new IOException("checksum does not match");
+		try {
+			if(body.getInt() != MAGIC || body.getInt() != FORMAT) throw new IOException("not a product snapshot");
+			long version = body.getLong();
+			long millis = body.getLong();
+			int nanos = body.getInt();
+			Timestamp watermark = null;
+			if(millis != Long.MIN_VALUE) {
+				watermark = new Timestamp(millis);
+				watermark.setNanos(nanos);
+			}
+			int catalogCount = body.getInt();
+			Map<Integer, String> catalogs = new LinkedHashMap<Integer, String>(catalogCount * 2);
+			for(int i = 0; i < catalogCount; ++i) {
+				catalogs.put(body.getInt(), readString(body));
+			}
+			//before the products, so that their catalogs have names
+			if(CatalogRegistry.INSTANCE.getCatalogTypes() == null && !catalogs.isEmpty()) {
+				CatalogRegistry.INSTANCE.load(catalogs);
+			}
+			int productCount = body.getInt();
+			List<Product> products = new ArrayList<Product>(productCount);
+			for(int i = 0; i < productCount; ++i) {
+				int id = body.getInt();
+				int catalogId = body.getInt();
+				int quantity = body.getInt();
+				double price = body.getDouble();
+				int days = body.getInt();
+				products.add(new ProductImpl(CatalogRegistry.INSTANCE.intern(catalogId), id, 
+						readString(body), quantity, price, 
+						(days == NO_DATE) ? null : LocalDate.ofEpochDay(days), 
+						readString(body)));
+			}
+			return new ProductSnapshotFile(version, watermark, catalogs, Collections.unmodifiableList(products));
+		} catch(BufferUnderflowException e) {
+			throw new IOException("file is truncated");
+		}
+	}
+	
+	//length in bytes, -1 for null, then UTF-8
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if(s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if(length < 0) return null;
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
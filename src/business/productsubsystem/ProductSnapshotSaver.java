@@ -0,0 +1,53 @@
+package business.productsubsystem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Saves the shared product snapshot to its ProductSnapshotFile, on a single 
+ * background daemon thread, whenever its version has changed; and once more
+ * when the JVM shuts down. Started by DbClassProduct once the snapshot has
+ * first been published.
+ */
+final class ProductSnapshotSaver {
+	private static final Logger LOG = 
+			Logger.getLogger(ProductSnapshotSaver.class.getPackage().getName());
+	
+	private static ScheduledExecutorService executor;
+	//version of the snapshot last saved, or loaded at startup; only touched by save
+	private static long savedVersion = -1;
+	
+	private ProductSnapshotSaver() {}
+	
+	/** Later calls, and calls with intervalMillis <= 0, do nothing */
+	static synchronized void startOnce(Path file, long loadedVersion, long intervalMillis) {
+		if(executor != null || intervalMillis <= 0) return;
+		savedVersion = loadedVersion;
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "ebazaar-snapshot-writer");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.scheduleWithFixedDelay(() -> save(file), 
+				intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> save(file), "ebazaar-snapshot-shutdown"));
+		LOG.info("Saving the product cache to " + file + " every " + intervalMillis + "ms");
+	}
+	
+	private static synchronized void save(Path file) {
+		try {
+			ProductSnapshotFile contents = DbClassProduct.captureSnapshot();
+			if(contents == null || contents.getVersion() == savedVersion) return;
+			contents.save(file);
+			savedVersion = contents.getVersion();
+			LOG.fine(() -> "Saved " + contents.getProducts().size() + " products to " + file);
+		} catch(IOException | RuntimeException e) {
+			//an exception would cancel all future saves
+			LOG.warning("Unable to save the product cache to " + file + ": " + e.getMessage());
+		}
+	}
+}
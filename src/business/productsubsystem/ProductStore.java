@@ -0,0 +1,70 @@
+package business.productsubsystem;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import business.externalinterfaces.Product;
+import business.externalinterfaces.ProductCatalogSnapshot;
+import middleware.DbConfigProperties;
+
+/**
+ * A product snapshot as kept by DbClassProduct, which derives each new 
+ * snapshot from the one before. Two layouts are available, chosen by 
+ * product_cache_layout in dbconfig.properties: ProductCatalogSnapshotImpl
+ * keeps the Product objects themselves; ColumnarProductStore keeps their 
+ * fields in primitive arrays, for very large catalogs.
+ */
+interface ProductStore extends ProductCatalogSnapshot {
+	
+	/** A snapshot like this one, with the products of catalogId replaced by catalogProducts */
+	ProductStore withCatalog(long newVersion, int catalogId, List<Product> catalogProducts);
+	
+	/** 
+	 * A snapshot like this one, except that each product in changed replaces the 
+	 * one with the same id (or is added), and the products with ids in removed are left out
+	 */
+	ProductStore withChanges(long newVersion, Collection<Product> changed, Set<Integer> removed);
+	
+	// id-level access, so that snapshots can be walked and compared without 
+	// making a Product for each row (see ProductSearchIndex, ProductChangeBus)
+	
+	boolean contains(int productId);
+	
+	/** Calls action with the id of each product, in the order of getProducts() */
+	void forEachId(IntConsumer action);
+	
+	/** Null if there is no such product, or it has no name */
+	String nameOf(int productId);
+	
+	/** Null if there is no such product, or it has no description */
+	String descriptionOf(int productId);
+	
+	/** NaN if there is no such product */
+	double unitPriceOf(int productId);
+	
+	/**
+	 * Calls action with the id of each product that may differ between previous
+	 * and this snapshot: added, removed, or changed in any way. If this snapshot 
+	 * was made from previous by withChanges or withCatalog, only the ids these 
+	 * were given are visited; otherwise, the ids of both snapshots.
+	 */
+	void forEachDifference(ProductStore previous, IntConsumer action);
+	
+	/** forEachDifference for snapshots not known to be related */
+	static void forEachIdOfEither(ProductStore previous, ProductStore current, IntConsumer action) {
+		current.forEachId(action);
+		previous.forEachId(id -> {
+			if(!current.contains(id)) action.accept(id);
+		});
+	}
+	
+	/** A new snapshot, in the layout configured */
+	static ProductStore create(long version, List<Product> products) {
+		if(DbConfigProperties.getConfig().isColumnarProductCache()) {
+			return ColumnarProductStore.of(version, products);
+		}
+		return new ProductCatalogSnapshotImpl(version, products);
+	}
+}
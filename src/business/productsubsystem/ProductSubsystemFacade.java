@@ -1,7 +1,13 @@
 package business.productsubsystem;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 import javax.inject.Inject;
@@ -9,15 +15,22 @@ import javax.inject.Inject;
 import org.springframework.stereotype.Service;
 
 import business.exceptions.BackendException;
+import business.exceptions.BusinessException;
+import business.externalinterfaces.CartItem;
 import business.externalinterfaces.Catalog;
 import business.externalinterfaces.CatalogTypes;
 import business.externalinterfaces.IDbClassCatalog;
 import business.externalinterfaces.IDbClassCatalogTypes;
 import business.externalinterfaces.IDbClassProduct;
 import business.externalinterfaces.Product;
+import business.externalinterfaces.ProductCatalogSnapshot;
+import business.externalinterfaces.ProductChangeListener;
+import business.externalinterfaces.ProductImportResult;
+import business.externalinterfaces.ProductSortOrder;
 import business.externalinterfaces.ProductSubsystem;
-import business.util.TwoKeyHashMap;
+import business.externalinterfaces.ShoppingCartSubsystem;
 import launch.Start;
+import middleware.DbConfigProperties;
 import middleware.exceptions.DatabaseException;
 
 @Service("pss")
@@ -56,13 +69,26 @@ public class ProductSubsystemFacade implements ProductSubsystem {
     }
     public Integer getProductIdFromName(String prodName) throws BackendException {
 		try {
-			TwoKeyHashMap<Integer,String,Product> table = dbclassProduct.readProductTable();
-			return table.getFirstKey(prodName);
+			return dbclassProduct.readProductSnapshot().getProductId(prodName);
 		} catch(DatabaseException e) {
 			throw new BackendException(e);
 		}
 		
 	}
+    public List<Product> searchProducts(String query, int limit) throws BackendException {
+		try {
+			return dbclassProduct.searchProducts(query, limit);
+		} catch(DatabaseException e) {
+			throw new BackendException(e);
+		}
+	}
+    public ProductCatalogSnapshot getProductSnapshot() throws BackendException {
+		try {
+			return dbclassProduct.readProductSnapshot();
+		} catch(DatabaseException e) {
+			throw new BackendException(e);
+		}
+	}
     public Product getProductFromId(Integer prodId) throws BackendException {
 		try {
 			return dbclassProduct.readProduct(prodId);
@@ -97,16 +123,91 @@ public class ProductSubsystemFacade implements ProductSubsystem {
     	}
     }
     
+    public List<Product> getProductList(Catalog catalog, ProductSortOrder order) throws BackendException {
+    	try {
+    		return dbclassProduct.readProductList(catalog, order);
+    	} catch(DatabaseException e) {
+    		throw new BackendException(e);
+    	}
+    }
+    
+    public List<Product> getProductList(Catalog catalog, Integer afterProductId, int limit, 
+    		ProductSortOrder order) throws BackendException {
+    	try {
+    		return dbclassProduct.readProductList(catalog, afterProductId, limit, order);
+    	} catch(DatabaseException e) {
+    		throw new BackendException(e);
+    	}
+    }
+    
     
 	public int readQuantityAvailable(Product product) throws BackendException {
     	try {
-    		Product p = dbclassProduct.readProduct(product.getProductId());
-    		return p.getQuantityAvail();
+    		return inventory().available(product.getProductId());
     	} catch(DatabaseException e) {
     		throw new BackendException(e);
     	}
 	}
 	
+	public int readQuantityAvailable(ShoppingCartSubsystem cart, Product product) throws BackendException {
+    	try {
+    		return inventory().availableTo(cart, product.getProductId());
+    	} catch(DatabaseException e) {
+    		throw new BackendException(e);
+    	}
+	}
+	
+	public void reserveStock(ShoppingCartSubsystem cart, List<CartItem> items) throws BackendException {
+		try {
+			inventory().reserve(cart, quantities(items));
+		} catch(DatabaseException e) {
+			throw new BackendException(e);
+		}
+	}
+	
+	public void releaseStock(ShoppingCartSubsystem cart) {
+		inventory().releaseAll(cart);
+	}
+	
+	public void commitStock(ShoppingCartSubsystem cart, List<CartItem> items) throws BusinessException {
+		List<Integer> missing;
+		try {
+			missing = inventory().commit(cart, quantities(items));
+		} catch(DatabaseException e) {
+			throw new BackendException(e);
+		}
+		if(!missing.isEmpty()) {
+			List<String> names = new ArrayList<String>();
+			for(CartItem item : items) {
+				if(missing.contains(item.getProductid())) names.add(item.getProductName());
+			}
+			throw new BusinessException("Not enough left in stock of: " + String.join(", ", names));
+		}
+	}
+	
+	public void restock(List<CartItem> items) {
+		inventory().restock(quantities(items));
+	}
+	
+	private InventoryService inventory() {
+		InventoryService.INSTANCE.start(dbclassProduct);
+		return InventoryService.INSTANCE;
+	}
+	
+	/** product id -> units, over all of the items */
+	private static Map<Integer, Integer> quantities(List<CartItem> items) {
+		Map<Integer, Integer> quantities = new HashMap<Integer, Integer>();
+		for(CartItem item : items) {
+			if(item.getProductid() == null) continue;
+			try {
+				quantities.merge(item.getProductid(), Integer.parseInt(item.getQuantity().trim()), Integer::sum);
+			} catch(NumberFormatException | NullPointerException e) {
+				LOG.warning("Ignoring cart item with quantity " + item.getQuantity());
+			}
+		}
+		return quantities;
+	}
+	
 	public int saveNewCatalog(String catalogName) throws BackendException {
 		try {
 			return dbclassCatalog.saveNewCatalog(catalogName);
@@ -117,11 +218,12 @@ public class ProductSubsystemFacade implements ProductSubsystem {
 	
 	@Override
 	public Catalog getCatalogFromName(String catName) throws BackendException {
-		// TODO Auto-generated method stub
 		try {
-			return dbclassCatalogTypes.getCatalogTypes().getCatalogs().stream()
-					.filter(c -> c.getName() == catName)
-					.findFirst().get();
+			Catalog cat = dbclassCatalogTypes.getCatalogTypes().getCatalogWithName(catName);
+			if(cat == null) {
+				throw new BackendException("No catalog named " + catName);
+			}
+			return cat;
 		} catch (DatabaseException e) {
 			throw new BackendException(e);
 		}
@@ -135,9 +237,21 @@ public class ProductSubsystemFacade implements ProductSubsystem {
 		}	
 	}
 	@Override
+	public ProductImportResult importProducts(File file) throws BackendException {
+		try {
+			ProductImporter importer = new ProductImporter(dbclassProduct, dbclassCatalogTypes.getCatalogTypes(),
+					DbConfigProperties.getConfig().getImportBatchSize());
+			return importer.importFile(file);
+		} catch(IOException | DatabaseException e) {
+			throw new BackendException(e);
+		}
+	}
+	@Override
 	public boolean deleteProduct(Product product) throws BackendException {
 		try {
-			return dbclassProduct.deleteProduct(product);
+			boolean deleted = dbclassProduct.deleteProduct(product);
+			if(deleted) InventoryService.INSTANCE.forget(product.getProductId());
+			return deleted;
 		} catch (DatabaseException e) {
 			throw new BackendException(e);
 		}		
@@ -150,6 +264,14 @@ public class ProductSubsystemFacade implements ProductSubsystem {
 			throw new BackendException(e);
 		}	
 	}
+	@Override
+	public void addProductChangeListener(ProductChangeListener listener, Executor deliverOn) {
+		ProductChangeBus.INSTANCE.addListener(listener, deliverOn);
+	}
+	@Override
+	public void removeProductChangeListener(ProductChangeListener listener) {
+		ProductChangeBus.INSTANCE.removeListener(listener);
+	}
 	
     //TESTING
 	@Override
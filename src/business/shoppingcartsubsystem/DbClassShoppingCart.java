@@ -6,6 +6,7 @@ import static business.util.StringParse.makeString;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Logger;
@@ -21,11 +22,12 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import middleware.DbConfigProperties;
+import middleware.dataaccess.CompiledRowMapper;
 import middleware.dataaccess.DataAccessSubsystemFacade;
 import middleware.exceptions.DatabaseException;
 import middleware.externalinterfaces.DataAccessSubsystem;
 import middleware.externalinterfaces.DbClass;
-import middleware.externalinterfaces.DbConfigKey;
+import middleware.externalinterfaces.DbConnectionHandle;
 import business.customersubsystem.CustomerSubsystemFacade;
 import business.exceptions.BackendException;
 import business.externalinterfaces.Address;
@@ -76,9 +78,20 @@ public class DbClassShoppingCart implements  IDbClassShoppingCart {
     CartItem cartItem;//this is inserted to support a save operation
     List<CartItem> cartItemsList;
     Integer cartId;  //used once when read, but don't use other times
+    //The fields above hold the state of the operation running. The instance 
+    //Spring injects is shared by every caller, so each operation runs on its 
+    //own instance (see newCall); this one's are never set.
     
     DbClassShoppingCart() {}
     
+    /** A new instance to run one operation on, with the same collaborators */
+    private DbClassShoppingCart newCall() {
+    	DbClassShoppingCart call = new DbClassShoppingCart();
+    	call.dataAccessSS = dataAccessSS;
+    	call.jdbcTemplate = jdbcTemplate;
+    	return call;
+    }
+    
     
     private JdbcTemplate jdbcTemplate;
 
@@ -90,6 +103,11 @@ public class DbClassShoppingCart implements  IDbClassShoppingCart {
 	
     public void saveCart(CustomerProfile custProfile, ShoppingCart cart) 
     		throws DatabaseException {
+    	newCall().insertCart(custProfile, cart);
+    }
+    
+    private void insertCart(CustomerProfile custProfile, ShoppingCart cart) 
+    		throws DatabaseException {
     	//This will be used by support methods
     	this.cart = cart;
     	Integer cartId = null;
@@ -98,68 +116,68 @@ public class DbClassShoppingCart implements  IDbClassShoppingCart {
 	    List<CartItem> cartItems = cart.getCartItems();
 
 	    //Begin transaction
-	    dataAccessSS.establishConnection(this);
-	    dataAccessSS.startTransaction();
+	    DbConnectionHandle handle = dataAccessSS.establishConnection(this);
 	    try { 
+	    	dataAccessSS.startTransaction(handle);
 	    	
 	    	//If customer has a saved cart already, get its cartId -- will delete
 		    //this cart as part of the transaction
-		    Integer oldCartId = getShoppingCartId(custProfile);
+		    Integer oldCartId = getShoppingCartId(handle, custProfile);
 	    	
 	    	//First, delete old cart in two steps
 	    	if(oldCartId != null) {
-	    		deleteCart(oldCartId);
-	    		deleteAllCartItems(oldCartId);
+	    		deleteCart(handle, oldCartId);
+	    		deleteAllCartItems(handle, oldCartId);
 	    	}
 	    	    	
 		    //Second, save top level of cart to be saved
-		    cartId = saveCartTopLevel(custProfile);  //returns new cartId
+		    cartId = saveCartTopLevel(handle, custProfile);  //returns new cartId
 	    
-		    //Finally, save the associated cartitems in a loop
+		    //Finally, save the associated cartitems in one batch
 		    //We have the cartId for these cartitems
 		    for(CartItem item : cartItems){
 		    	item.setCartId(cartId);	        
-		        saveCartItem(item);
 		    }
-		    dataAccessSS.commit();
+		    saveCartItems(handle, cartItems);
+		    dataAccessSS.commit(handle);
 		    
 	    } catch(DatabaseException e) {
-        	dataAccessSS.rollback();
+        	dataAccessSS.rollback(handle);
         	LOG.warning("Rolling back...");
         	throw (e);
         }  finally {
-        	dataAccessSS.releaseConnection();
+        	dataAccessSS.releaseConnection(handle);
         }
     }
    
     //Support method for saveCart -- part of another transaction started within saveCart
-    private void deleteCart(Integer cartId) throws DatabaseException {
+    private void deleteCart(DbConnectionHandle handle, Integer cartId) throws DatabaseException {
     	queryType = Type.DELETE_CART;
     	deleteCartParams = new Object[]{cartId};
     	deleteCartTypes = new int[]{Types.INTEGER};
-    	dataAccessSS.delete();  	
+    	dataAccessSS.delete(handle);  	
     }
     
     //Support method for saveCart -- part of another transaction started within saveCart
-    private void deleteAllCartItems(Integer cartId) throws DatabaseException {
+    private void deleteAllCartItems(DbConnectionHandle handle, Integer cartId) throws DatabaseException {
     	queryType = Type.DELETE_ALL_CART_ITEMS;
     	deleteAllCartItemsParams = new Object[]{cartId};
     	deleteAllCartItemsTypes = new int[]{Types.INTEGER};
-    	dataAccessSS.delete();
+    	dataAccessSS.delete(handle);
     }
     
      //support method for saveCart and also for retrieveSavedCart; part of another transaction
-    private Integer getShoppingCartId(CustomerProfile custProfile) throws DatabaseException {
+    private Integer getShoppingCartId(DbConnectionHandle handle, CustomerProfile custProfile) throws DatabaseException {
         queryType = Type.GET_ID;
         getIdParams = new Object[]{custProfile.getCustId()};
         getIdTypes = new int[]{Types.INTEGER};
-        dataAccessSS.read(); //value from read is stored in cartId instance variable 
+        dataAccessSS.read(handle); //value from read is stored in cartId instance variable 
         return cartId;
     }
     
     //Support method for saveCart -- part of another transaction started within saveCart
     //Precondition: shopping cart was stored as instance variable (should be done by saveCart method)
-    private int saveCartTopLevel(CustomerProfile custProfile) throws DatabaseException {
+    private int saveCartTopLevel(DbConnectionHandle handle, CustomerProfile custProfile) throws DatabaseException {
     	
     	
     	/*private String saveCartQuery = "INSERT INTO shopcarttbl (custid,shipaddress1, " + 
@@ -199,68 +217,76 @@ public class DbClassShoppingCart implements  IDbClassShoppingCart {
     			Types.VARCHAR,Types.VARCHAR,Types.VARCHAR,
     			Types.VARCHAR,Types.VARCHAR,Types.VARCHAR,
     			Types.VARCHAR,Types.DOUBLE,Types.DOUBLE, Types.DOUBLE,Types.DOUBLE};	
-    	return dataAccessSS.insert();
+    	return dataAccessSS.insert(handle);
     }
     
     //Support method for saveCart -- part of another transaction started within saveCart
-    private void saveCartItem(CartItem item) throws DatabaseException {
-    	this.cartItem = item;
+    private void saveCartItems(DbConnectionHandle handle, List<CartItem> items) throws DatabaseException {
     	queryType = Type.SAVE_CART_ITEM;
-    	saveCartItemParams = new Object[]{cartItem.getCartid(), cartItem.getProductid(), Integer.parseInt(cartItem.getQuantity()),
-    			Double.parseDouble(cartItem.getTotalprice()), 0.00, 0.00};		
+    	List<Object[]> rows = new ArrayList<Object[]>(items.size());
+    	for(CartItem item : items) {
+    		rows.add(new Object[]{item.getCartid(), item.getProductid(), Integer.parseInt(item.getQuantity()),
+    			Double.parseDouble(item.getTotalprice()), 0.00, 0.00});
+    	}
+    	saveCartItemParams = rows.isEmpty() ? null : rows.get(0);
     	saveCartItemTypes = new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER,
     			Types.DOUBLE, Types.DOUBLE, Types.DOUBLE};
-    	dataAccessSS.insert();
+    	dataAccessSS.insertBatch(handle, rows);
     }
     
    
    public ShoppingCartImpl retrieveSavedCart(CustomerProfile custProfile) throws DatabaseException {
-    	dataAccessSS.establishConnection(this);
-	    dataAccessSS.startTransaction();
+    	return newCall().readSavedCart(custProfile);
+   }
+   
+   private ShoppingCartImpl readSavedCart(CustomerProfile custProfile) throws DatabaseException {
+    	DbConnectionHandle handle = dataAccessSS.establishConnection(this);
 	    try { 
+	    	dataAccessSS.startTransaction(handle);
 	    	ShoppingCartImpl cart = null;
 	    	//First, get cartId
-			Integer cartId = getShoppingCartId(custProfile);
+			Integer cartId = getShoppingCartId(handle, custProfile);
 	    	
 			//Second, if saved cart found, get top level cart data
 			if(cartId != null) {
-				cart = getTopLevelSavedCart(cartId);
+				cart = getTopLevelSavedCart(handle, cartId);
 				
 				//Last, get cart items associated with this cart id, and insert into cart
-			    List<CartItem> items = getSavedCartItems(cartId);
+			    List<CartItem> items = getSavedCartItems(handle, cartId);
 			    cart.setCartItems(items);
 			}
 		     
-		    dataAccessSS.commit();
+		    dataAccessSS.commit(handle);
 		    return cart;
 		    
 	    } catch(DatabaseException e) {
-        	dataAccessSS.rollback();
+        	dataAccessSS.rollback(handle);
         	LOG.warning("Rolling back...");
         	throw (e);
         }  finally {
-        	//dataAccessSS.releaseConnection(this);
-        	dataAccessSS.releaseConnection();
+        	dataAccessSS.releaseConnection(handle);
         }	
     }  
     
     //support method for retrieveSavedCart -- this is part of transaction that begins in
     //retrieveSavedCart
-    private List<CartItem> getSavedCartItems(Integer cartId) throws DatabaseException {
+    private List<CartItem> getSavedCartItems(DbConnectionHandle handle, Integer cartId) throws DatabaseException {
         queryType = Type.GET_SAVED_ITEMS;
         getSavedItemsParams = new Object[]{cartId};
         getSavedItemsTypes = new int[]{Types.INTEGER};
-        dataAccessSS.read();
+        List<CartItem> items = new LinkedList<CartItem>();
+        dataAccessSS.streamRead(handle, CART_ITEM_MAPPER.streamTo(getSavedItemsQuery, items::add));
+        cartItemsList = items;
         return cartItemsList;      
     }
     
     //support method for retrieveSavedCart -- this is part of transaction that begins in
     //retrieveSavedCart
-    private ShoppingCartImpl getTopLevelSavedCart(Integer cartId) throws DatabaseException {
+    private ShoppingCartImpl getTopLevelSavedCart(DbConnectionHandle handle, Integer cartId) throws DatabaseException {
         queryType = Type.GET_TOP_LEVEL_SAVED_CART;
         getTopLevelSavedCartParams = new Object[]{cartId};
         getTopLevelSavedCartTypes = new int[]{Types.INTEGER};
-        dataAccessSS.read(); //stores value in cartImpl
+        dataAccessSS.read(handle); //stores value in cartImpl
         return cartImpl;
     }
      
@@ -343,29 +369,39 @@ public class DbClassShoppingCart implements  IDbClassShoppingCart {
     	
     }
     private void populateCartItemsList(ResultSet rs) throws BackendException {
-    	CartItem cartItem = null;
         cartItemsList= new LinkedList<CartItem>();
         try {
+            CompiledRowMapper.Binding<CartItem> binding = CART_ITEM_MAPPER.bind(getSavedItemsQuery, rs);
             while(rs.next()){
-                cartItem = new CartItemImpl(rs.getInt("shopcartid"),
-                                        rs.getInt("productid"),
-                                        rs.getInt("cartitemid"),
-                                        makeString(rs.getInt("quantity")),
-                                        makeString(rs.getDouble("totalprice")),
-                                        true);
-                
-                cartItemsList.add(cartItem);
+                cartItemsList.add(binding.map(rs));
             }
         }
         catch(SQLException e){
             throw new BackendException(e);
         }       
     }
+    
+    //maps a row of shopcartitem; columns are read by position
+    private static final CompiledRowMapper<CartItem> CART_ITEM_MAPPER = new CompiledRowMapper<CartItem>(
+    		"shopcartid", "productid", "cartitemid", "quantity", "totalprice") {
+    	@Override
+    	protected CartItem mapRow(ResultSet rs, int[] col) throws SQLException {
+    		try {
+    			return new CartItemImpl(rs.getInt(col[0]),
+    					rs.getInt(col[1]),
+    					rs.getInt(col[2]),
+    					makeString(rs.getInt(col[3])),
+    					makeString(rs.getDouble(col[4])),
+    					true);
+    		} catch(BackendException e) {
+    			throw new SQLException(e);
+    		}
+    	}
+    };
 
     @Override
     public String getDbUrl() {
-    	DbConfigProperties props = new DbConfigProperties();	
-    	return props.getProperty(DbConfigKey.ACCOUNT_DB_URL.getVal());
+    	return DbConfigProperties.getConfig().getAccountDbUrl();
     }
 
     @Override
@@ -3,6 +3,8 @@ package business.usecasecontrol;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
 
 import business.RulesQuantity;
 import business.exceptions.BackendException;
@@ -13,6 +15,8 @@ import business.externalinterfaces.Catalog;
 import business.externalinterfaces.CustomerProfile;
 import business.externalinterfaces.CustomerSubsystem;
 import business.externalinterfaces.Product;
+import business.externalinterfaces.ProductChangeListener;
+import business.externalinterfaces.ProductSortOrder;
 import business.externalinterfaces.ProductSubsystem;
 import business.externalinterfaces.Rules;
 import business.externalinterfaces.ShoppingCartSubsystem;
@@ -23,12 +27,20 @@ import business.util.DataUtil;
 import launch.Start;
 
 public class BrowseAndSelectController {
-
+	private static final Logger LOG = 
+			Logger.getLogger(BrowseAndSelectController.class.getPackage().getName());
 	
 	ProductSubsystem pss = ( ProductSubsystemFacade)Start.ctx.getBean("pss");
 	
+	/** Also holds stock for the new items, and gives back what was held for items removed */
 	public void updateShoppingCartItems(ShoppingCartSubsystem shopCartSs, List<CartItem> cartitems) {
 		shopCartSs.setCartItems(cartitems);
+		try {
+			pss.reserveStock(shopCartSs, cartitems);
+		} catch(BackendException e) {
+			//the order is checked against stock again when it is submitted
+			LOG.warning("Unable to hold stock for cart: " + e.getMessage());
+		}
 	}
 
 	
@@ -86,6 +98,14 @@ public class BrowseAndSelectController {
 
 	}
 	
+	/** As above, but the units already held for the cart also count as available */
+	public void runQuantityRules(ShoppingCartSubsystem shopCartSs, Product product, String quantityRequested)
+			throws RuleException, BusinessException {
+		int currentQuantityAvail = pss.readQuantityAvailable(shopCartSs, product);
+		Rules transferObject = new RulesQuantity(currentQuantityAvail, quantityRequested);
+		transferObject.runRules();
+	}
+	
 	public List<Catalog> getCatalogs() throws BackendException {
 		//ProductSubsystem pss = new ProductSubsystemFacade();
 		return pss.getCatalogList();
@@ -95,11 +115,20 @@ public class BrowseAndSelectController {
 		//ProductSubsystem pss = new ProductSubsystemFacade();
 		return pss.getProductList(catalog);
 	}
+	/** One page of the catalog's products, in product id order */
+	public List<Product> getProducts(Catalog catalog, Integer afterProductId, int limit) throws BackendException {
+		return pss.getProductList(catalog, afterProductId, limit, ProductSortOrder.ID);
+	}
 	public Product getProductForProductName(String name) throws BackendException {
 		//ProductSubsystem pss = new ProductSubsystemFacade();
 		return pss.getProductFromName(name);
 	}
 	
+	/** Has listener told, on deliverOn, about changes to products and their stock */
+	public void addProductChangeListener(ProductChangeListener listener, Executor deliverOn) {
+		pss.addProductChangeListener(listener, deliverOn);
+	}
+	
 	/** Assume customer is logged in */
 	public CustomerProfile getCustomerProfile(CustomerSubsystem cust) {
 		return cust.getCustomerProfile();
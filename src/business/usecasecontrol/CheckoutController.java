@@ -71,12 +71,24 @@ public class CheckoutController  {
 		cust.saveNewAddress(addr);
 	}
 	
-	/** Asks Customer Subsystem to submit final order */
-	public void submitFinalOrder() throws BackendException {
+	/** 
+	 * Asks Customer Subsystem to submit final order. The items are taken out of 
+	 * stock first, so the order fails if any has sold out meanwhile, and put 
+	 * back if the order cannot be saved.
+	 */
+	public void submitFinalOrder() throws BusinessException {
 		OrderSubsystem orderSubsystem=(OrderSubsystemFacade)Start.ctx.getBean("oss");
 		orderSubsystem.setCustomerProfile(CacheReader.readCustomer().getCustomerProfile());
 //		OrderSubsystemFacade orderSubsystemFacade=new OrderSubsystemFacade(CacheReader.readCustomer().getCustomerProfile());
-		orderSubsystem.submitOrder((ShoppingCart) CacheReader.readCustomer().getShoppingCart().getLiveCart());
+		ShoppingCartSubsystem cartSS = CacheReader.readCustomer().getShoppingCart();
+		List<CartItem> items = cartSS.getLiveCart().getCartItems();
+		pss.commitStock(cartSS, items);
+		try {
+			orderSubsystem.submitOrder((ShoppingCart) cartSS.getLiveCart());
+		} catch(BackendException | RuntimeException e) {
+			pss.restock(items);
+			throw e;
+		}
 	}
 
 
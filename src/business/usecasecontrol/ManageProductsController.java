@@ -1,8 +1,10 @@
 
 package business.usecasecontrol;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 import javax.inject.Inject;
@@ -15,6 +17,8 @@ import middleware.exceptions.DatabaseException;
 import business.exceptions.BackendException;
 import business.externalinterfaces.Catalog;
 import business.externalinterfaces.Product;
+import business.externalinterfaces.ProductChangeListener;
+import business.externalinterfaces.ProductImportResult;
 import business.externalinterfaces.ProductSubsystem;
 import business.productsubsystem.ProductSubsystemFacade;
 
@@ -55,5 +59,15 @@ public class ManageProductsController   {
     
     public boolean deleteProduct(Product product) throws BackendException  {
     	return pss.deleteProduct(product);
-    }     
+    }
+    
+    /** Saves every valid product in a CSV or JSON feed file */
+    public ProductImportResult importProducts(File file) throws BackendException {
+    	return pss.importProducts(file);
+    }
+    
+    /** Has listener told, on deliverOn, about changes to products and their stock */
+    public void addProductChangeListener(ProductChangeListener listener, Executor deliverOn) {
+    	pss.addProductChangeListener(listener, deliverOn);
+    }
 }
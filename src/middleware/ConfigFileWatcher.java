@@ -0,0 +1,95 @@
+package middleware;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Calls back when a configuration file on the classpath changes on disk.
+ * One WatchService, on one daemon thread, serves every watched file. Files
+ * inside a jar cannot change and are not watched.
+ */
+public final class ConfigFileWatcher {
+	private static final Logger LOG = Logger.getLogger(ConfigFileWatcher.class.getName());
+	
+	//editors often write a file in several steps; wait for them to finish
+	private static final long SETTLE_MILLIS = 250;
+	
+	private static final ConcurrentMap<Path, Runnable> callbacks = new ConcurrentHashMap<Path, Runnable>();
+	private static final Set<Path> watchedDirs = new HashSet<Path>();
+	private static WatchService service;
+	
+	private ConfigFileWatcher() {}
+	
+	/**
+	 * Runs onChange (on the watcher thread) each time the classpath resource
+	 * changes. Returns false if the resource is not a file that can be watched.
+	 */
+	public static synchronized boolean watch(String resource, Runnable onChange) {
+		URL url = ConfigFileWatcher.class.getClassLoader().getResource(resource);
+		if(url == null || !"file".equals(url.getProtocol())) {
+			return false;
+		}
+		try {
+			Path file = Paths.get(url.toURI()).toAbsolutePath();
+			Path dir = file.getParent();
+			if(service == null) {
+				service = FileSystems.getDefault().newWatchService();
+				Thread t = new Thread(ConfigFileWatcher::run, "ebazaar-config-watcher");
+				t.setDaemon(true);
+				t.start();
+			}
+			if(watchedDirs.add(dir)) {
+				dir.register(service, StandardWatchEventKinds.ENTRY_MODIFY, 
+						StandardWatchEventKinds.ENTRY_CREATE);
+			}
+			callbacks.put(file, onChange);
+			LOG.info("Watching " + file + " for changes");
+			return true;
+		} catch(IOException | URISyntaxException e) {
+			LOG.warning("Unable to watch " + resource + " for changes: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	private static void run() {
+		while(true) {
+			WatchKey key;
+			try {
+				key = service.take();
+				Thread.sleep(SETTLE_MILLIS);
+			} catch(InterruptedException e) {
+				return;
+			}
+			Path dir = (Path)key.watchable();
+			Set<Path> changed = new HashSet<Path>();
+			for(WatchEvent<?> event : key.pollEvents()) {
+				if(event.context() instanceof Path) {
+					changed.add(dir.resolve((Path)event.context()));
+				}
+			}
+			key.reset();
+			for(Path file : changed) {
+				Runnable callback = callbacks.get(file);
+				if(callback == null) continue;
+				try {
+					callback.run();
+				} catch(RuntimeException e) {
+					LOG.warning("Reloading " + file + " failed: " + e.getMessage());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package middleware;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import middleware.externalinterfaces.DbConfigKey;
+
+/**
+ * An immutable, validated snapshot of dbconfig.properties. It is parsed once
+ * each time the file is read (see DbConfigProperties), so readers get typed 
+ * values with no parsing or string lookups; when the file changes, a new 
+ * snapshot replaces this one as a whole, so a reader never sees a mixture 
+ * of old and new settings.
+ */
+public final class DbConfig {
+	/** Fetch size that makes MySQL stream a result row by row ("stream" in the file) */
+	public static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+	
+	private final Properties props;
+	private final String productDbUrl;
+	private final String accountDbUrl;
+	private final List<String> productReplicaUrls;
+	private final List<String> accountReplicaUrls;
+	private final String replicaRouting;
+	private final long readYourWritesMillis;
+	private final String driver;
+	private final String dbUser;
+	private final String dbPassword;
+	private final int maxConnections;
+	private final long acquireTimeoutMillis;
+	private final int minIdle;
+	private final long idleTimeoutMillis;
+	private final long maxLifetimeMillis;
+	private final String validationQuery;
+	private final long maintenanceIntervalMillis;
+	private final int statementCacheSize;
+	private final int fetchSize;
+	private final long fanOutTimeoutMillis;
+	private final long metricsDumpIntervalMillis;
+	private final long productPollIntervalMillis;
+	private final String productCacheLayout;
+	private final long inventoryFlushIntervalMillis;
+	private final long reservationTtlMillis;
+	private final int importBatchSize;
+	private final String productSnapshotFile;
+	private final long productSnapshotIntervalMillis;
+	private final long productEventCoalesceMillis;
+	
+	/**
+	 * Parses and checks props; throws IllegalArgumentException listing every 
+	 * problem found if a required value is missing or a value is malformed
+	 */
+	public static DbConfig parse(Properties props) {
+		return new DbConfig(props);
+	}
+	
+	private DbConfig(Properties source) {
+		props = new Properties();
+		props.putAll(source);
+		List<String> errors = new ArrayList<String>();
+		productDbUrl = required(DbConfigKey.PRODUCT_DB_URL, errors);
+		accountDbUrl = required(DbConfigKey.ACCOUNT_DB_URL, errors);
+		productReplicaUrls = list(DbConfigKey.PRODUCT_DB_REPLICA_URLS);
+		accountReplicaUrls = list(DbConfigKey.ACCOUNT_DB_REPLICA_URLS);
+		replicaRouting = string(DbConfigKey.REPLICA_ROUTING, "round_robin").toLowerCase();
+		if(!replicaRouting.equals("round_robin") && !replicaRouting.equals("least_loaded")) {
+			errors.add(DbConfigKey.REPLICA_ROUTING.getVal() + " must be round_robin or least_loaded");
+		}
+		readYourWritesMillis = number(DbConfigKey.READ_YOUR_WRITES_MILLIS, 5000, 0, errors);
+		driver = string(DbConfigKey.DRIVER, "");
+		dbUser = string(DbConfigKey.DB_USER, "");
+		dbPassword = string(DbConfigKey.DB_PASSWORD, "");
+		maxConnections = (int)number(DbConfigKey.MAX_CONNECTIONS, 1, 1, errors);
+		acquireTimeoutMillis = number(DbConfigKey.ACQUIRE_TIMEOUT_MILLIS, 5000, 0, errors);
+		minIdle = (int)number(DbConfigKey.MIN_IDLE, 0, 0, errors);
+		if(minIdle > maxConnections) {
+			errors.add(DbConfigKey.MIN_IDLE.getVal() + " must not exceed " + DbConfigKey.MAX_CONNECTIONS.getVal());
+		}
+		idleTimeoutMillis = number(DbConfigKey.IDLE_TIMEOUT_MILLIS, 0, 0, errors);
+		maxLifetimeMillis = number(DbConfigKey.MAX_LIFETIME_MILLIS, 0, 0, errors);
+		validationQuery = string(DbConfigKey.VALIDATION_QUERY, "");
+		maintenanceIntervalMillis = number(DbConfigKey.MAINTENANCE_INTERVAL_MILLIS, 30000, 1, errors);
+		statementCacheSize = (int)number(DbConfigKey.STATEMENT_CACHE_SIZE, 32, 1, errors);
+		String fetch = string(DbConfigKey.FETCH_SIZE, "stream");
+		fetchSize = fetch.equalsIgnoreCase("stream") 
+				? STREAMING_FETCH_SIZE : (int)number(DbConfigKey.FETCH_SIZE, 0, 0, errors);
+		fanOutTimeoutMillis = number(DbConfigKey.FANOUT_QUERY_TIMEOUT_MILLIS, 10000, 1, errors);
+		metricsDumpIntervalMillis = number(DbConfigKey.METRICS_DUMP_INTERVAL_MILLIS, 0, 0, errors);
+		productPollIntervalMillis = number(DbConfigKey.PRODUCT_POLL_INTERVAL_MILLIS, 0, 0, errors);
+		productCacheLayout = string(DbConfigKey.PRODUCT_CACHE_LAYOUT, "objects").toLowerCase();
+		if(!productCacheLayout.equals("objects") && !productCacheLayout.equals("columnar")) {
+			errors.add(DbConfigKey.PRODUCT_CACHE_LAYOUT.getVal() + " must be objects or columnar");
+		}
+		inventoryFlushIntervalMillis = number(DbConfigKey.INVENTORY_FLUSH_INTERVAL_MILLIS, 1000, 1, errors);
+		reservationTtlMillis = number(DbConfigKey.RESERVATION_TTL_MILLIS, 900000, 1, errors);
+		importBatchSize = (int)number(DbConfigKey.IMPORT_BATCH_SIZE, 1000, 1, errors);
+		productSnapshotFile = string(DbConfigKey.PRODUCT_SNAPSHOT_FILE, "");
+		productSnapshotIntervalMillis = number(DbConfigKey.PRODUCT_SNAPSHOT_INTERVAL_MILLIS, 300000, 1, errors);
+		productEventCoalesceMillis = number(DbConfigKey.PRODUCT_EVENT_COALESCE_MILLIS, 100, 0, errors);
+		if(!errors.isEmpty()) {
+			throw new IllegalArgumentException("Invalid database configuration: " + errors);
+		}
+	}
+	
+	///////// LOOKUPS USED WHILE PARSING //////////////
+	
+	private String string(DbConfigKey key, String defaultValue) {
+		String val = props.getProperty(key.getVal());
+		return (val == null || val.trim().isEmpty()) ? defaultValue : val.trim();
+	}
+	
+	private String required(DbConfigKey key, List<String> errors) {
+		String val = string(key, null);
+		if(val == null) errors.add(key.getVal() + " is missing");
+		return val;
+	}
+	
+	private long number(DbConfigKey key, long defaultValue, long min, List<String> errors) {
+		String val = string(key, null);
+		if(val == null) return defaultValue;
+		try {
+			long n = Long.parseLong(val);
+			if(n >= min) return n;
+			errors.add(key.getVal() + " must be at least " + min);
+		} catch(NumberFormatException e) {
+			errors.add(key.getVal() + " is not a number: " + val);
+		}
+		return defaultValue;
+	}
+	
+	private List<String> list(DbConfigKey key) {
+		List<String> vals = new ArrayList<String>();
+		for(String val : string(key, "").split(",")) {
+			if(!val.trim().isEmpty()) vals.add(val.trim());
+		}
+		return Collections.unmodifiableList(vals);
+	}
+	
+	///////// ACCESSORS //////////////
+	
+	/** The raw value for key, as in the file; null if absent */
+	public String getProperty(String key) {
+		return props.getProperty(key);
+	}
+	
+	/** The url for PRODUCT_DB_URL or ACCOUNT_DB_URL */
+	public String getDbUrl(DbConfigKey key) {
+		switch(key) {
+			case PRODUCT_DB_URL: 
+				return productDbUrl;
+			case ACCOUNT_DB_URL: 
+				return accountDbUrl;
+			default:
+				throw new IllegalArgumentException(key + " is not a database url");
+		}
+	}
+	
+	public String getProductDbUrl() {
+		return productDbUrl;
+	}
+	
+	public String getAccountDbUrl() {
+		return accountDbUrl;
+	}
+	
+	public List<String> getProductReplicaUrls() {
+		return productReplicaUrls;
+	}
+	
+	public List<String> getAccountReplicaUrls() {
+		return accountReplicaUrls;
+	}
+	
+	/** round_robin or least_loaded */
+	public String getReplicaRouting() {
+		return replicaRouting;
+	}
+	
+	public long getReadYourWritesMillis() {
+		return readYourWritesMillis;
+	}
+	
+	public String getDriver() {
+		return driver;
+	}
+	
+	public String getDbUser() {
+		return dbUser;
+	}
+	
+	public String getDbPassword() {
+		return dbPassword;
+	}
+	
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+	
+	public long getAcquireTimeoutMillis() {
+		return acquireTimeoutMillis;
+	}
+	
+	public int getMinIdle() {
+		return minIdle;
+	}
+	
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+	
+	public long getMaxLifetimeMillis() {
+		return maxLifetimeMillis;
+	}
+	
+	public String getValidationQuery() {
+		return validationQuery;
+	}
+	
+	public long getMaintenanceIntervalMillis() {
+		return maintenanceIntervalMillis;
+	}
+	
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+	
+	/** Rows per round trip for streaming reads; STREAMING_FETCH_SIZE for "stream" */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+	
+	public long getFanOutTimeoutMillis() {
+		return fanOutTimeoutMillis;
+	}
+	
+	public long getMetricsDumpIntervalMillis() {
+		return metricsDumpIntervalMillis;
+	}
+	
+	/** How often changed products are merged into the product cache; 0 = never */
+	public long getProductPollIntervalMillis() {
+		return productPollIntervalMillis;
+	}
+	
+	/** True if the product cache keeps its products in primitive arrays rather than as objects */
+	public boolean isColumnarProductCache() {
+		return productCacheLayout.equals("columnar");
+	}
+	
+	/** How often units sold are written to product.totalquantity */
+	public long getInventoryFlushIntervalMillis() {
+		return inventoryFlushIntervalMillis;
+	}
+	
+	/** How long units in a shopping cart stay held after the cart was last changed */
+	public long getReservationTtlMillis() {
+		return reservationTtlMillis;
+	}
+	
+	/** Products saved per JDBC batch, and per transaction, by a bulk import */
+	public int getImportBatchSize() {
+		return importBatchSize;
+	}
+	
+	/** File the product cache is saved to, and started from; empty if it is not saved */
+	public String getProductSnapshotFile() {
+		return productSnapshotFile;
+	}
+	
+	/** How often the product cache is saved, if it has changed */
+	public long getProductSnapshotIntervalMillis() {
+		return productSnapshotIntervalMillis;
+	}
+	
+	/** How long product changes are gathered before they are passed on to listeners as one batch */
+	public long getProductEventCoalesceMillis() {
+		return productEventCoalesceMillis;
+	}
+}
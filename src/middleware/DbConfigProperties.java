@@ -1,25 +1,76 @@
 package middleware;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
+/**
+ * Holds the current DbConfig, read from dbconfig.properties. The file is
+ * parsed and validated as a whole; the new DbConfig then replaces the old
+ * one in a single volatile write. Once watchForChanges has been called, 
+ * the file is read again whenever it changes on disk, and the change 
+ * listeners are told about the new configuration. An invalid file is 
+ * rejected: at startup with an IllegalStateException, later by keeping
+ * the configuration already in use.
+ */
 public class DbConfigProperties {
 	private static final String PROPERTIES = "resources/dbconfig.properties";
 	private static final Logger LOG = Logger.getLogger("");
 	private static final String PROPS = PROPERTIES;
-	private static Properties props;
+	private static volatile DbConfig config;
+	private static volatile String location = PROPS;
+	private static final List<Consumer<DbConfig>> listeners = new CopyOnWriteArrayList<Consumer<DbConfig>>();
 	
 	static {
 		readProps();
 	}
 	
+	/** The current configuration snapshot */
+	public static DbConfig getConfig() {
+		return config;
+	}
+	
 	public String getProperty(String key) {
-		LOG.info(props.toString());
-		return props.getProperty(key);
+		return config.getProperty(key);
 		
 	}
+	
+	public String getProperty(String key, String defaultValue) {
+		String val = getProperty(key);
+		return (val == null) ? defaultValue : val.trim();
+	}
+	
+	/** 
+	 * Reads a comma-separated list; returns an empty list if the key is 
+	 * missing or blank
+	 */
+	public List<String> getPropertyList(String key) {
+		List<String> vals = new ArrayList<String>();
+		for(String val : getProperty(key, "").split(",")) {
+			if(!val.trim().isEmpty()) vals.add(val.trim());
+		}
+		return vals;
+	}
+	
+	/** listener is called, on the watcher thread, each time a new configuration is in place */
+	public static void addChangeListener(Consumer<DbConfig> listener) {
+		listeners.add(listener);
+	}
+	
+	/** 
+	 * Starts reloading the properties file when it changes on disk. Does 
+	 * nothing if the file is packed in a jar. 
+	 */
+	public static void watchForChanges() {
+		ConfigFileWatcher.watch(location, DbConfigProperties::reload);
+	}
+	
 	private static void readProps() {
 		readProps(PROPS);
 		
@@ -32,18 +83,40 @@ public class DbConfigProperties {
 	 */
 	public static void readProps(String loc) {
 		LOG.info("Location from which readProps will read (in DbConfigProperties): " + loc);
+		try {
+			config = DbConfig.parse(load(loc));
+			location = loc;
+		} catch(IOException | IllegalArgumentException e) {
+			LOG.severe("Unable to read properties file for Ebazaar: " + e.getMessage());
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+	
+	private static void reload() {
+		DbConfig newConfig;
+		try {
+			newConfig = DbConfig.parse(load(location));
+		} catch(IOException | IllegalArgumentException e) {
+			LOG.warning("Keeping the current database configuration: " + e.getMessage());
+			return;
+		}
+		config = newConfig;
+		LOG.info("Database configuration reloaded from " + location);
+		for(Consumer<DbConfig> listener : listeners) {
+			listener.accept(newConfig);
+		}
+	}
+	
+	private static Properties load(String loc) throws IOException {
+		URL url = DbConfigProperties.class.getClassLoader().getResource(loc);
+		if(url == null) {
+			throw new IOException(loc + " not found on the classpath");
+		}
 		Properties ret = new Properties();
-            URL url = DbConfigProperties.class.getClassLoader().
-                    getResource(loc);
-            
-            try {
-                ret.load(url.openStream()); 
-            } catch(IOException e) {
-                LOG.warning("Unable to read properties file for Ebazaar");
-            } finally {
-                props = ret;
-            }
-
+		try(InputStream in = url.openStream()) {
+			ret.load(in);
+		}
+		return ret;
 	}
 	
 	
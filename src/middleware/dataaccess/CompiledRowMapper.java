@@ -0,0 +1,114 @@
+package middleware.dataaccess;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import middleware.externalinterfaces.RowHandler;
+
+/**
+ * Maps rows to objects by column position rather than by column name. A mapper
+ * declares the names of the columns it reads; the first time it is used on the
+ * result of a query, the positions of those columns are looked up in the 
+ * ResultSetMetaData and remembered for that query, so from then on rows are
+ * read with getXxx(int) calls only and no column names are resolved per row.
+ * 
+ * Subclasses implement mapRow, where col[i] is the position of the i-th
+ * declared column. A mapper has no per-read state, so one instance (usually
+ * a static final field of the DbClass) serves every read and every thread.
+ * Within a read, use bind directly, or one of the adapters: forQuery for
+ * JdbcTemplate, streamTo for DataAccessSubsystem.streamRead.
+ */
+public abstract class CompiledRowMapper<T> {
+	private final String[] columns;
+	// query text -> column positions in its result
+	private final ConcurrentMap<String, int[]> positions = new ConcurrentHashMap<String, int[]>();
+	
+	protected CompiledRowMapper(String... columns) {
+		this.columns = columns;
+	}
+	
+	/** col[i] is the position in rs of the i-th column given to the constructor */
+	protected abstract T mapRow(ResultSet rs, int[] col) throws SQLException;
+	
+	/**
+	 * Returns a Binding of this mapper to rs, the result of query. Column positions
+	 * are resolved from rs's metadata only if query has not been seen before, or its
+	 * result no longer has the same number of columns.
+	 */
+	public Binding<T> bind(String query, ResultSet rs) throws SQLException {
+		int[] col = positions.get(query);
+		if(col == null || col[columns.length] != rs.getMetaData().getColumnCount()) {
+			col = resolve(rs.getMetaData());
+			positions.put(query, col);
+		}
+		return new Binding<T>(this, col);
+	}
+	
+	/** A JdbcTemplate RowMapper for query that maps rows with this mapper */
+	public RowMapper<T> forQuery(String query) {
+		return new RowMapper<T>() {
+			private Binding<T> binding;
+			public T mapRow(ResultSet rs, int rownum) throws SQLException {
+				if(rownum == 0 || binding == null) binding = bind(query, rs);
+				return binding.map(rs);
+			}
+		};
+	}
+	
+	/** A RowHandler for a streaming read of query that passes each mapped row to sink */
+	public RowHandler streamTo(String query, Consumer<? super T> sink) {
+		return new RowHandler() {
+			private Binding<T> binding;
+			public boolean handleRow(ResultSet rs) throws SQLException {
+				if(binding == null) binding = bind(query, rs);
+				sink.accept(binding.map(rs));
+				return true;
+			}
+		};
+	}
+	
+	// the extra last element records the column count the positions were resolved for
+	private int[] resolve(ResultSetMetaData md) throws SQLException {
+		int count = md.getColumnCount();
+		Map<String, Integer> byLabel = new HashMap<String, Integer>();
+		for(int i = count; i >= 1; --i) {
+			//the first of several columns with the same label wins, as with findColumn
+			byLabel.put(md.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+		}
+		int[] col = new int[columns.length + 1];
+		for(int i = 0; i < columns.length; ++i) {
+			Integer pos = byLabel.get(columns[i].toLowerCase(Locale.ROOT));
+			if(pos == null) {
+				throw new SQLException("Column " + columns[i] + " is not in the result");
+			}
+			col[i] = pos;
+		}
+		col[columns.length] = count;
+		return col;
+	}
+	
+	/** A mapper together with the column positions for one result */
+	public static final class Binding<T> {
+		private final CompiledRowMapper<T> mapper;
+		private final int[] col;
+		
+		private Binding(CompiledRowMapper<T> mapper, int[] col) {
+			this.mapper = mapper;
+			this.col = col;
+		}
+		
+		/** Maps the row rs is positioned on */
+		public T map(ResultSet rs) throws SQLException {
+			return mapper.mapRow(rs, col);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package middleware.dataaccess;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs ConnectionPool housekeeping on a single background daemon thread.
+ * The first round starts immediately, so the pools for the configured
+ * dburls are warmed up to their minimum number of idle connections
+ * without holding up startup or the first client; after that, each
+ * dburl is validated, trimmed and topped up every intervalMillis.
+ */
+class ConnectionHealthKeeper {
+	private static final Logger LOG =
+		Logger.getLogger(ConnectionHealthKeeper.class.getPackage().getName());
+	
+	private volatile List<String> dburls;
+	private final long intervalMillis;
+	private final ScheduledExecutorService executor = 
+		Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "ebazaar-connection-keeper");
+			t.setDaemon(true);
+			return t;
+		});
+	
+	ConnectionHealthKeeper(List<String> dburls, long intervalMillis) {
+		this.dburls = dburls;
+		this.intervalMillis = (intervalMillis <= 0) ? 30000 : intervalMillis;
+	}
+	
+	/** Takes effect from the next round */
+	void setDburls(List<String> dburls) {
+		this.dburls = dburls;
+	}
+	
+	void start() {
+		LOG.info("Starting connection health keeper for " + dburls);
+		executor.scheduleWithFixedDelay(this::maintainAll, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	void stop() {
+		executor.shutdownNow();
+	}
+	
+	private void maintainAll() {
+		for(String dburl : dburls) {
+			try {
+				ConnectionPool.INSTANCE.maintain(dburl);
+			} catch(RuntimeException e) {
+				//an exception would cancel all future rounds
+				LOG.warning("Connection maintenance failed for " + dburl + ": " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,408 @@
+package middleware.dataaccess;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import middleware.exceptions.DatabaseException;
+import middleware.exceptions.PoolExhaustedException;
+
+/**
+ *  This is a singleton. Connections are pooled separately for each URI,
+ *  and max_connections is a hard limit per URI: a client must obtain
+ *  one of the URI's permits before it may take (or create) a connection,
+ *  and gives the permit back in returnToPool. Permits are handed out
+ *  in FIFO order, so waiting clients are served fairly. If no permit
+ *  becomes available within the acquire timeout, a PoolExhaustedException
+ *  is thrown rather than opening another connection.
+ *
+ *  Free connections are kept in a lock-free deque per URI, so clients of
+ *  different databases (and clients of the same database) never contend
+ *  on a common monitor. Housekeeping of free connections (warm-up,
+ *  validation, eviction) is done in the background by ConnectionHealthKeeper,
+ *  through the maintain method.
+ */
+enum ConnectionPool {
+	INSTANCE;
+	ConnectionPool() {}
+
+	private static final Logger LOG = Logger.getLogger(ConnectionPool.class
+			.getPackage().getName());
+
+	// maps URI -> free connections and permits for that URI
+	private final ConcurrentMap<String, UriPool> pools = new ConcurrentHashMap<String, UriPool>();
+
+	private volatile String dbuser;
+
+	private volatile String dbpass;
+
+	private volatile int maxconn = 1;
+
+	private volatile long acquireTimeoutMillis;
+
+	// housekeeping settings; 0 disables the corresponding check
+	private volatile int minIdle;
+
+	private volatile long idleTimeoutMillis;
+
+	private volatile long maxLifetimeMillis;
+
+	private volatile String validationQuery;
+
+	private volatile int statementCacheSize = 32;
+
+	///////// INITIALIZE INSTANCE //////////////
+
+    /** 
+     * Called by DataAccessUtil.initializePool(), and again whenever
+     * dbconfig.properties changes. A new maxconn applies at once to the
+     * pools already in use: a larger limit frees permits for waiting clients,
+     * a smaller one holds back permits as connections are returned.
+     */
+	synchronized void init(String dbuser, String dbpass, String drivername,
+			int maxconn, long acquireTimeoutMillis) throws DatabaseException {
+		this.dbuser = dbuser;
+		this.dbpass = dbpass;
+		int oldMaxconn = this.maxconn;
+		this.maxconn = (maxconn <= 0) ? 1 : maxconn;
+		if(this.maxconn != oldMaxconn) {
+			for(UriPool pool : pools.values()) {
+				pool.permits.resize(oldMaxconn, this.maxconn);
+			}
+		}
+		this.acquireTimeoutMillis = (acquireTimeoutMillis < 0) ? 0 : acquireTimeoutMillis;
+		if(drivername != null && !drivername.isEmpty()) loadJDBCDriver(drivername);
+	}
+
+	/**
+	 * Settings used by maintain (and by returnToPool, for maxLifetimeMillis).
+	 * Called by DataAccessUtil.initializePool() before the health keeper starts.
+	 */
+	synchronized void initMaintenance(int minIdle, long idleTimeoutMillis,
+			long maxLifetimeMillis, String validationQuery) {
+		this.minIdle = Math.max(0, Math.min(minIdle, maxconn));
+		this.idleTimeoutMillis = Math.max(0, idleTimeoutMillis);
+		this.maxLifetimeMillis = Math.max(0, maxLifetimeMillis);
+		this.validationQuery = (validationQuery == null || validationQuery.isEmpty())
+				? null : validationQuery;
+	}
+
+	/** Maximum number of PreparedStatements cached for each connection */
+	synchronized void initStatementCache(int statementCacheSize) {
+		this.statementCacheSize = Math.max(1, statementCacheSize);
+	}
+
+	private void loadJDBCDriver(String drivername) throws DatabaseException {
+		try {
+			Class.forName(drivername);
+		} catch (java.lang.ClassNotFoundException e) {
+			LOG.warning("ClassNotFoundException: " + e.getMessage());
+			throw new DatabaseException(e);
+		}
+	}
+
+	/////////// GET CONNECTION ///////////////
+
+	/**
+	 * Waits (at most acquireTimeoutMillis) for one of the permits for URI, then
+	 * returns a live free connection, or a new one if none is free.
+	 * Every connection obtained here must be handed back with returnToPool.
+	 */
+	Connection getConnection(String URI) throws DatabaseException {
+		UriPool pool = poolFor(URI);
+		pool.acquirePermit();
+		try {
+			PooledConnection pc;
+			while((pc = pool.freeConnections.pollFirst()) != null) {
+				if(isUsable(pc.con)) {
+					return pc.con;
+				}
+				LOG.info("Removed closed connection!");
+				pool.discard(pc);
+			}
+			return pool.newConnection().con;
+		} catch(DatabaseException | RuntimeException e) {
+			pool.permits.release();
+			throw e;
+		}
+	}
+
+	private Connection createConnection(String URI) throws DatabaseException {
+		try {
+			LOG.info("Adding new connection to pool");
+			if (dbuser == null || dbuser.isEmpty()) {
+				return DriverManager.getConnection(URI);
+			}
+			return DriverManager.getConnection(URI, dbuser, dbpass);
+		} catch (SQLException e) {
+			LOG.warning("Unable to create a connection to database with dburl "
+					+ URI);
+			throw new DatabaseException("Database is unavailable.");
+		}
+	}
+
+	private UriPool poolFor(String URI) {
+		return pools.computeIfAbsent(URI, uri -> new UriPool(uri, maxconn));
+	}
+
+	private boolean isUsable(Connection con) {
+		try {
+			return !con.isClosed();
+		} catch (SQLException e) {
+			LOG.info("Exception occurred in checking whether connection is closed");
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the statement cache belonging to con, which must currently
+	 * be checked out from the pool for URI.
+	 */
+	StatementCache statementCacheFor(Connection con, String URI) throws DatabaseException {
+		UriPool pool = pools.get(URI);
+		PooledConnection pc = (pool == null) ? null : pool.allConnections.get(con);
+		if(pc == null) {
+			throw new DatabaseException("Connection was not obtained from the pool for " + URI);
+		}
+		return pc.statements;
+	}
+
+	/** Number of connections to URI currently checked out */
+	int numActive(String URI) {
+		UriPool pool = pools.get(URI);
+		return (pool == null) ? 0 : pool.allConnections.size() - pool.freeConnections.size();
+	}
+
+	/** Number of free connections to URI */
+	int numIdle(String URI) {
+		UriPool pool = pools.get(URI);
+		return (pool == null) ? 0 : pool.freeConnections.size();
+	}
+
+	///////////// RETURNING CONN TO POOL /////////////////
+
+	/**
+	 * Puts con back on the free list for URI (if it is still usable and has not
+	 * outlived maxLifetimeMillis) and releases the permit taken in getConnection.
+	 * Must be called exactly once per checkout.
+	 */
+	void returnToPool(Connection con, String URI) {
+		UriPool pool = pools.get(URI);
+		PooledConnection pc = (pool == null || con == null) ? null : pool.allConnections.get(con);
+		if(pc == null) {
+			LOG.warning("Connection returned for unknown dburl " + URI + "; closing it");
+			closeQuietly(con);
+			return;
+		}
+		try {
+			if (!con.isClosed() && !pc.isExpired(System.currentTimeMillis())) {
+				con.setAutoCommit(true);
+				pc.statements.release();
+				pc.lastReturned = System.currentTimeMillis();
+				pool.freeConnections.offerFirst(pc);
+			} else {
+				pool.discard(pc);
+			}
+		} catch (SQLException e) {
+			LOG.warning("Unable to return connection to pool. Proceeding..."
+					+ e.getMessage());
+			// don't return con to the pool
+			pool.discard(pc);
+		} finally {
+			pool.permits.release();
+		}
+	}
+
+	///////////// HOUSEKEEPING /////////////////
+
+	/**
+	 * One round of housekeeping for URI, run by ConnectionHealthKeeper:
+	 * closes free connections that have been idle longer than idleTimeoutMillis
+	 * (down to the minIdle floor) or have outlived maxLifetimeMillis, checks the
+	 * remaining free connections with the validation query, and then opens new
+	 * connections until minIdle free connections are available.
+	 *
+	 * Each step is done while holding one of the URI's permits, so clients 
+	 * are never kept waiting on housekeeping: if no permit is free, the step 
+	 * is skipped. Permits only count connections checked out, so a new free
+	 * connection is opened only while there are more permits left than free 
+	 * connections, leaving one for each client that could check one out; 
+	 * together with the permits that keeps the open connections within 
+	 * max_connections.
+	 */
+	void maintain(String URI) {
+		UriPool pool = poolFor(URI);
+		long now = System.currentTimeMillis();
+		int toCheck = pool.freeConnections.size();
+		for(int i = 0; i < toCheck; ++i) {
+			if(!pool.permits.tryAcquire()) return;
+			try {
+				// oldest returned connections sit at the end of the deque
+				PooledConnection pc = pool.freeConnections.pollLast();
+				if(pc == null) break;
+				boolean idleTooLong = idleTimeoutMillis > 0
+						&& now - pc.lastReturned > idleTimeoutMillis
+						&& pool.freeConnections.size() >= minIdle;
+				if(idleTooLong || pc.isExpired(now) || !isValid(pc.con)) {
+					pool.discard(pc);
+				} else {
+					pool.freeConnections.offerFirst(pc);
+				}
+			} finally {
+				pool.permits.release();
+			}
+		}
+		while(pool.freeConnections.size() < minIdle) {
+			if(!pool.permits.tryAcquire()) return;
+			try {
+				//available permits leave out the one held here
+				if(pool.freeConnections.size() > pool.permits.availablePermits()
+						|| pool.allConnections.size() >= maxconn) return;
+				PooledConnection pc = pool.newConnection();
+				pc.lastReturned = System.currentTimeMillis();
+				pool.freeConnections.offerLast(pc);
+			} catch(DatabaseException e) {
+				LOG.warning("Unable to warm connection pool for " + URI + ": " + e.getMessage());
+				return;
+			} finally {
+				pool.permits.release();
+			}
+		}
+	}
+
+	/** Runs the validation query on con, falling back on isClosed if none is set */
+	private boolean isValid(Connection con) {
+		if(validationQuery == null) {
+			return isUsable(con);
+		}
+		try (Statement stmt = con.createStatement()) {
+			stmt.setQueryTimeout(5);
+			stmt.execute(validationQuery);
+			return true;
+		} catch (SQLException e) {
+			LOG.info("Validation query failed; evicting connection: " + e.getMessage());
+			return false;
+		}
+	}
+
+	///////////////// CLOSING CONNECTIONS ////////////////
+
+	/**
+	 * Closes every free connection. Connections currently checked out
+	 * are unaffected and are returned to the pool as usual.
+	 */
+	void closeConnections() {
+		LOG.info("Closing all connections");
+		for (UriPool pool : pools.values()) {
+			PooledConnection pc;
+			while((pc = pool.freeConnections.pollFirst()) != null) {
+				pool.discard(pc);
+			}
+		}
+	}
+
+	private static void closeQuietly(Connection con) {
+		if(con == null) return;
+		try {
+			con.close();
+		} catch (SQLException e) {
+			LOG.warning("Cannot close connection! (Probably already closed?)");
+		}
+	}
+
+	/** A fair semaphore whose number of permits can be changed while in use */
+	private static class ResizableSemaphore extends Semaphore {
+		private static final long serialVersionUID = 1L;
+
+		ResizableSemaphore(int permits) {
+			super(permits, true);
+		}
+
+		/** May leave fewer than zero permits available until enough are released */
+		void resize(int from, int to) {
+			if(to > from) {
+				release(to - from);
+			} else if(to < from) {
+				reducePermits(from - to);
+			}
+		}
+	}
+
+	/**
+	 * A pooled connection together with its statement cache and
+	 * the bookkeeping used by maintain
+	 */
+	private class PooledConnection {
+		private final Connection con;
+		private final StatementCache statements;
+		private final long created = System.currentTimeMillis();
+		private volatile long lastReturned = created;
+
+		PooledConnection(Connection con) {
+			this.con = con;
+			this.statements = new StatementCache(con, statementCacheSize);
+		}
+
+		boolean isExpired(long now) {
+			return maxLifetimeMillis > 0 && now - created > maxLifetimeMillis;
+		}
+	}
+
+	/**
+	 * Free list and permits for a single URI. A fair semaphore bounds the
+	 * number of connections handed out; the free list needs no locking.
+	 */
+	private class UriPool {
+		private final String URI;
+		private final ResizableSemaphore permits;
+		private final Deque<PooledConnection> freeConnections = new ConcurrentLinkedDeque<PooledConnection>();
+		// every open connection for this URI, free or checked out
+		private final ConcurrentMap<Connection, PooledConnection> allConnections
+			= new ConcurrentHashMap<Connection, PooledConnection>();
+
+		UriPool(String URI, int maxconn) {
+			this.URI = URI;
+			this.permits = new ResizableSemaphore(maxconn);
+		}
+
+		/** Waits for a permit; the wait is recorded in DataAccessMetrics */
+		void acquirePermit() throws DatabaseException {
+			boolean acquired = false;
+			long start = System.nanoTime();
+			try {
+				acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DatabaseException("Interrupted while waiting for a connection to " + URI);
+			} finally {
+				DataAccessMetrics.INSTANCE.recordPoolWait(URI, System.nanoTime() - start, acquired);
+			}
+			if(!acquired) {
+				LOG.warning("No connection available for dburl " + URI
+						+ " after waiting " + acquireTimeoutMillis + "ms");
+				throw new PoolExhaustedException(URI, maxconn, acquireTimeoutMillis);
+			}
+		}
+
+		/** Precondition: caller holds a permit */
+		PooledConnection newConnection() throws DatabaseException {
+			PooledConnection pc = new PooledConnection(createConnection(URI));
+			allConnections.put(pc.con, pc);
+			return pc;
+		}
+
+		void discard(PooledConnection pc) {
+			allConnections.remove(pc.con);
+			pc.statements.closeAll();
+			closeQuietly(pc.con);
+		}
+	}
+}
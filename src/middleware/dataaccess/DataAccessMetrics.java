@@ -0,0 +1,187 @@
+package middleware.dataaccess;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This is a singleton. Collects timings for the Data Access Subsystem: 
+ * a latency histogram, row count and error count for each query shape 
+ * (the query text, with its ? placeholders, as given by the DbClass), and 
+ * a histogram of the time spent waiting for a connection for each dburl. 
+ * Recording is lock-free, so it is cheap enough to leave on all the time.
+ *
+ * The figures, together with the pool's active and idle counts and the
+ * statement cache hit rate, are published over JMX and can also be
+ * written to the log periodically (see metrics_dump_interval_millis
+ * in dbconfig.properties).
+ */
+public enum DataAccessMetrics implements DataAccessMetricsMBean {
+	INSTANCE;
+	
+	private static final Logger LOG = 
+		Logger.getLogger(DataAccessMetrics.class.getPackage().getName());
+	
+	static final String OBJECT_NAME = "ebazaar:type=DataAccessMetrics";
+	
+	//guards against unbounded growth if queries are built with literal values
+	private static final int MAX_QUERY_SHAPES = 500;
+	private static final String OTHER_QUERIES = "(other queries)";
+	
+	private final ConcurrentMap<String, QueryStats> queries = new ConcurrentHashMap<String, QueryStats>();
+	private final ConcurrentMap<String, PoolWaitStats> poolWaits = new ConcurrentHashMap<String, PoolWaitStats>();
+	private ScheduledExecutorService dumper;
+	
+	///////// RECORDING //////////////
+	
+	/** Records one execution of query; rows is the number of rows read or affected */
+	void recordQuery(String query, long nanos, long rows) {
+		QueryStats stats = statsFor(query);
+		stats.latency.record(nanos);
+		stats.rows.add(rows);
+	}
+	
+	void recordError(String query, long nanos) {
+		QueryStats stats = statsFor(query);
+		stats.latency.record(nanos);
+		stats.errors.increment();
+	}
+	
+	/** Records how long a client waited for a permit for dburl, and whether it got one */
+	void recordPoolWait(String dburl, long nanos, boolean acquired) {
+		PoolWaitStats stats = poolWaits.computeIfAbsent(dburl, u -> new PoolWaitStats());
+		stats.wait.record(nanos);
+		if(!acquired) stats.timeouts.increment();
+	}
+	
+	private QueryStats statsFor(String query) {
+		String key = (query == null) ? "" : query;
+		QueryStats stats = queries.get(key);
+		if(stats != null) return stats;
+		if(queries.size() >= MAX_QUERY_SHAPES) key = OTHER_QUERIES;
+		return queries.computeIfAbsent(key, q -> new QueryStats());
+	}
+	
+	///////// PUBLISHING //////////////
+	
+	/** Registers this with the platform MBean server; called by DataAccessUtil.initializePool() */
+	synchronized void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+		} catch(JMException e) {
+			LOG.warning("Unable to register data access metrics with JMX: " + e.getMessage());
+		}
+	}
+	
+	/** Logs a snapshot every intervalMillis on a daemon thread; 0 or less disables it */
+	synchronized void startPeriodicDump(long intervalMillis) {
+		if(intervalMillis <= 0 || dumper != null) return;
+		dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "ebazaar-metrics-dump");
+			t.setDaemon(true);
+			return t;
+		});
+		dumper.scheduleAtFixedRate(() -> {
+			try {
+				LOG.info(snapshot());
+			} catch(RuntimeException e) {
+				//an exception would cancel all future dumps
+				LOG.warning("Unable to dump data access metrics: " + e.getMessage());
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	@Override
+	public String[] getQueryStats() {
+		List<String> lines = new ArrayList<String>();
+		for(Map.Entry<String, QueryStats> e : new TreeMap<String, QueryStats>(queries).entrySet()) {
+			QueryStats s = e.getValue();
+			LatencyHistogram h = s.latency;
+			lines.add(String.format("count=%d rows=%d errors=%d mean=%dus p50=%dus p95=%dus p99=%dus max=%dus | %s",
+					h.getCount(), s.rows.sum(), s.errors.sum(), h.getMeanMicros(), 
+					h.percentileMicros(0.50), h.percentileMicros(0.95), h.percentileMicros(0.99),
+					h.getMaxMicros(), e.getKey()));
+		}
+		return lines.toArray(new String[0]);
+	}
+	
+	@Override
+	public String[] getPoolStats() {
+		ConnectionPool pool = ConnectionPool.INSTANCE;
+		List<String> lines = new ArrayList<String>();
+		for(String dburl : new TreeMap<String, PoolWaitStats>(poolWaits).keySet()) {
+			PoolWaitStats s = poolWaits.get(dburl);
+			LatencyHistogram h = s.wait;
+			lines.add(String.format("active=%d idle=%d checkouts=%d timeouts=%d wait p50=%dus p95=%dus p99=%dus max=%dus | %s",
+					pool.numActive(dburl), pool.numIdle(dburl), h.getCount(), s.timeouts.sum(),
+					h.percentileMicros(0.50), h.percentileMicros(0.95), h.percentileMicros(0.99),
+					h.getMaxMicros(), dburl));
+		}
+		return lines.toArray(new String[0]);
+	}
+	
+	@Override
+	public long getStatementCacheHits() {
+		return StatementCache.getHits();
+	}
+	
+	@Override
+	public long getStatementCacheMisses() {
+		return StatementCache.getMisses();
+	}
+	
+	@Override
+	public double getStatementCacheHitRate() {
+		long hits = getStatementCacheHits();
+		long total = hits + getStatementCacheMisses();
+		return (total == 0) ? 0.0 : (double)hits / total;
+	}
+	
+	@Override
+	public String snapshot() {
+		StringBuilder sb = new StringBuilder("Data access metrics");
+		sb.append(String.format("%n  statement cache: hits=%d misses=%d hitRate=%.3f",
+				getStatementCacheHits(), getStatementCacheMisses(), getStatementCacheHitRate()));
+		for(String line : getPoolStats()) {
+			sb.append(String.format("%n  pool: ")).append(line);
+		}
+		for(String line : getQueryStats()) {
+			sb.append(String.format("%n  query: ")).append(line);
+		}
+		return sb.toString();
+	}
+	
+	@Override
+	public void reset() {
+		queries.clear();
+		poolWaits.clear();
+	}
+	
+	private static final class QueryStats {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final LongAdder rows = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+	}
+	
+	private static final class PoolWaitStats {
+		private final LatencyHistogram wait = new LatencyHistogram();
+		private final LongAdder timeouts = new LongAdder();
+	}
+}
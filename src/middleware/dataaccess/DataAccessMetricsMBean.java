@@ -0,0 +1,26 @@
+package middleware.dataaccess;
+
+/**
+ * Management interface of DataAccessMetrics, registered with the platform 
+ * MBean server as ebazaar:type=DataAccessMetrics. Latencies are in microseconds.
+ */
+public interface DataAccessMetricsMBean {
+	/** One line per query shape: count, rows, errors, mean, p50, p95, p99, max, query */
+	String[] getQueryStats();
+	
+	/** One line per dburl: active and idle connections, checkouts, timeouts, wait p50/p95/p99 */
+	String[] getPoolStats();
+	
+	long getStatementCacheHits();
+	
+	long getStatementCacheMisses();
+	
+	/** Fraction of statement requests served from a statement cache, 0 if none yet */
+	double getStatementCacheHitRate();
+	
+	/** Everything above as one multi-line report */
+	String snapshot();
+	
+	/** Discards the query and pool wait statistics gathered so far */
+	void reset();
+}
@@ -3,15 +3,31 @@ package middleware.dataaccess;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
 import org.springframework.stereotype.Repository;
 
 import middleware.exceptions.DatabaseException;
+import middleware.externalinterfaces.DataAccessCall;
 import middleware.externalinterfaces.DataAccessSubsystem;
 import middleware.externalinterfaces.DataAccessTest;
 import middleware.externalinterfaces.DbClass;
+import middleware.externalinterfaces.DbConnectionHandle;
+import middleware.externalinterfaces.RowHandler;
 
 /**
  * Facade for access to the Data Access Subsystem. Instances of this class
@@ -40,11 +56,9 @@ public class DataAccessSubsystemFacade implements DataAccessSubsystem, DataAcces
 	private static final Logger LOG 
 	  = Logger.getLogger(DataAccessSubsystemFacade.class.getPackage().getName());
 
-	DbAction action;
-	
 	/**
-	 * Gets a connection from the SimpleConnectionPool and stores 
-	 * it in a DbAction, which is cached here. Note that all
+	 * Gets a connection from the ConnectionPool and wraps it in a 
+	 * DbAction, which is returned to the caller as a handle. Note that all
 	 * methods for data requests in DataAccess require 
 	 * a call to establishConnection as the first step.
 	 * In insertWithInTransaction, deleteWithinTransaction,
@@ -53,15 +67,18 @@ public class DataAccessSubsystemFacade implements DataAccessSubsystem, DataAcces
 	 * called explicitly. On the other hand, the calls to
 	 * read, save and delete are "raw" -- they need to be preceded
 	 * by a call to establishConenction and followed by a call
-	 * to releaseConnection. Typically, these raw methods are parts
-	 * of a user-created transaction in which establishConnection
-	 * is called at the beginning and releaseConnection called at the
-	 * end. A template for performing transactions can be found
-	 * in the implementation of updateWithinTransaction.
+	 * to releaseConnection, passing the handle each time. Typically, 
+	 * these raw methods are parts of a user-created transaction in 
+	 * which establishConnection is called at the beginning and 
+	 * releaseConnection called at the end. A template for performing 
+	 * transactions can be found in the implementation of updateWithinTransaction.
+	 * 
+	 * No state is kept in this class between calls, so one instance may
+	 * serve any number of concurrent interactions, each with its own handle.
 	 */
-	public void establishConnection(DbClass dbClass) throws DatabaseException {
+	public DbConnectionHandle establishConnection(DbClass dbClass) throws DatabaseException {
 		if(dbClass != null) {
-			action = new DbAction(dbClass);
+			return new DbAction(dbClass);
 		}
 		else {
 			throw new DatabaseException("Cannot establish connection - DbClass is null");
@@ -70,72 +87,110 @@ public class DataAccessSubsystemFacade implements DataAccessSubsystem, DataAcces
 	
 	/**
 	 * Returns connection to pool and sets autoCommit to true.
+	 * Releasing a handle more than once has no further effect.
 	 */
-	public void releaseConnection() throws DatabaseException {  
-		action.returnToPool();
+	public void releaseConnection(DbConnectionHandle handle) throws DatabaseException {  
+		if(!(handle instanceof DbAction)) {
+    		throw new DatabaseException("Not a handle obtained from establishConnection: " + handle);
+    	}
+		((DbAction)handle).returnToPool();
 	}
 	
 	/**
 	 * Sets autoCommit to false. (Note: autocommit is set back to true when 
 	 * connection is returned to pool.)
 	 * 
-	 * Precondition: A Connection has been obtained via establishConnection
+	 * Precondition: handle has been obtained via establishConnection
 	 */
-	public void startTransaction() throws DatabaseException {
-		action.startTransaction();
+	public void startTransaction(DbConnectionHandle handle) throws DatabaseException {
+		actionFor(handle).startTransaction();
 	}
 	
 	/**
-	 * Precondition: A Connection has been obtained via establishConnection
+	 * Precondition: handle has been obtained via establishConnection
 	 */
-	public void commit() throws DatabaseException {
-		action.commit();
+	public void commit(DbConnectionHandle handle) throws DatabaseException {
+		actionFor(handle).commit();
 	}
 	
 	/**
-	 * Precondition: A Connection has been obtained via establishConnection
+	 * Precondition: handle has been obtained via establishConnection
 	 */
-	public void rollback() throws DatabaseException {
-		action.rollback();
+	public void rollback(DbConnectionHandle handle) throws DatabaseException {
+		actionFor(handle).rollback();
 	}
 	
 	///// Raw read, delete, update methods -- typically used as part of a bigger transaction //////
 	
 	/**
-	 * Precondition: A Connection has been obtained via establishConnection. 
+	 * Precondition: handle has been obtained via establishConnection. 
 	 * User must manually releaseConnection after read has completed. 
 	 * Can use atomicRead to handle createConnection and releaseConnection
 	 * if no other data access code is bundled with the read.
 	 */
-    public void read() throws DatabaseException {
-        action.performRead();
+    public void read(DbConnectionHandle handle) throws DatabaseException {
+        actionFor(handle).performRead();
     }
 	
     /**
-	 * Precondition: A Connection has been obtained via establishConnection. User
+	 * Precondition: handle has been obtained via establishConnection. User
 	 * of this code must manually releaseConnection after operation has completed.
 	 * Returns generated key, if there is one.
 	 */
-    public Integer insert() throws DatabaseException  {     
-        return action.performInsert();
+    public Integer insert(DbConnectionHandle handle) throws DatabaseException  {     
+        return actionFor(handle).performInsert();
     }
     
     /**
- 	 * Precondition: A Connection has been obtained via establishConnection. User
+ 	 * Precondition: handle has been obtained via establishConnection. User
 	 * of this code must manually releaseConnection after operation has completed.
      * Returns number of rows affected
      */
-    public Integer update() throws DatabaseException  {     
-    	return action.performUpdateOrDelete();
+    public Integer update(DbConnectionHandle handle) throws DatabaseException  {     
+    	return actionFor(handle).performUpdateOrDelete();
     }
 
     /**
-     * Precondition: A Connection has been obtained via establishConnection. User
+     * Precondition: handle has been obtained via establishConnection. User
 	 * of this code must manually releaseConnection after operation has completed.
 	 * Returns number of rows deleted
      */
-    public Integer delete() throws DatabaseException  {
-       return action.performUpdateOrDelete();
+    public Integer delete(DbConnectionHandle handle) throws DatabaseException  {
+       return actionFor(handle).performUpdateOrDelete();
+    }
+    
+    /**
+     * Precondition: handle has been obtained via establishConnection. User
+	 * of this code must manually releaseConnection after operation has completed.
+	 * Executes the insert query of the handle's DbClass once for each element of 
+	 * paramRows (each in the form returned by getQueryParams), in a single JDBC
+	 * batch. Returns the generated keys in row order, if the driver provides them.
+     */
+    public List<Integer> insertBatch(DbConnectionHandle handle, List<Object[]> paramRows) 
+    		throws DatabaseException {
+    	return actionFor(handle).performBatchInsert(paramRows);
+    }
+    
+    /**
+     * Precondition: handle has been obtained via establishConnection. User
+	 * of this code must manually releaseConnection after read has completed.
+	 * Like read, but rows are fetched from the database fetch_size at a time and
+	 * passed one by one to handler, which may stop the read early; 
+	 * populateEntity is not called. Use atomicStreamRead for a single read.
+     */
+    public void streamRead(DbConnectionHandle handle, RowHandler handler) throws DatabaseException {
+    	actionFor(handle).performStreamingRead(handler, DataAccessUtil.getFetchSize());
+    }
+    
+    private DbAction actionFor(DbConnectionHandle handle) throws DatabaseException {
+    	if(!(handle instanceof DbAction)) {
+    		throw new DatabaseException("Not a handle obtained from establishConnection: " + handle);
+    	}
+    	DbAction action = (DbAction)handle;
+    	if(action.isReleased()) {
+    		throw new DatabaseException("Connection has already been released");
+    	}
+    	return action;
     }
     
     
@@ -150,18 +205,18 @@ public class DataAccessSubsystemFacade implements DataAccessSubsystem, DataAcces
 	 */
 	public Integer insertWithinTransaction(DbClass dbClass) 
 			throws DatabaseException {
-		establishConnection(dbClass);
-		startTransaction();
+		DbConnectionHandle handle = establishConnection(dbClass);
         try {
-        	int autoGenKey = insert();
-        	commit();
+        	startTransaction(handle);
+        	int autoGenKey = insert(handle);
+        	commit(handle);
         	return autoGenKey;
         } catch(DatabaseException e) {
         	LOG.warning("Attempting to rollback...");
-        	rollback();
+        	rollback(handle);
         	throw (e);
         }  finally {
-        	releaseConnection();
+        	releaseConnection(handle);
         }
 	}
 	
@@ -174,18 +229,18 @@ public class DataAccessSubsystemFacade implements DataAccessSubsystem, DataAcces
 	 */
 	public Integer updateWithinTransaction(DbClass dbClass) 
 			throws DatabaseException {
-		establishConnection(dbClass);
-		startTransaction();
+		DbConnectionHandle handle = establishConnection(dbClass);
         try {
-        	int numRows = update();
-        	commit();
+        	startTransaction(handle);
+        	int numRows = update(handle);
+        	commit(handle);
         	return numRows;
         } catch(DatabaseException e) {
         	LOG.warning("Attempting to rollback...");
-        	rollback();
+        	rollback(handle);
         	throw (e);
         }  finally {
-        	releaseConnection();
+        	releaseConnection(handle);
         }
 	}
 	
@@ -198,57 +253,229 @@ public class DataAccessSubsystemFacade implements DataAccessSubsystem, DataAcces
 	 */
 	public Integer deleteWithinTransaction(DbClass dbClass) 
 			throws DatabaseException {
-		establishConnection(dbClass);
-		startTransaction();
-		int numRows = 0;
+		DbConnectionHandle handle = establishConnection(dbClass);
         try {
-        	numRows = delete();
-        	commit();  
+        	startTransaction(handle);
+        	int numRows = delete(handle);
+        	commit(handle);  
         	return numRows;
         } catch(DatabaseException e) {
         	LOG.warning("Attempting to rollback...");
-        	rollback();
+        	rollback(handle);
         	throw (e);
         }  finally {
-        	releaseConnection();
+        	releaseConnection(handle);
+        }
+	}
+	
+	/**
+	 * This convenience method carries out a batch insert within a transaction. As with
+	 * insertWithinTransaction, establishConnection and releaseConnection are handled
+	 * automatically.
+	 */
+	public List<Integer> insertBatchWithinTransaction(DbClass dbClass, List<Object[]> paramRows) 
+			throws DatabaseException {
+		DbConnectionHandle handle = establishConnection(dbClass);
+        try {
+        	startTransaction(handle);
+        	List<Integer> keys = insertBatch(handle, paramRows);
+        	commit(handle);
+        	return keys;
+        } catch(DatabaseException e) {
+        	LOG.warning("Attempting to rollback...");
+        	rollback(handle);
+        	throw (e);
+        }  finally {
+        	releaseConnection(handle);
         }
 	}
 	
 	/**
 	 * This convenience method performs a single read operation. It handles
-	 * the establishConnection and releaseConnection steps.
+	 * the establishConnection and releaseConnection steps. The read may be
+	 * served by a read replica of the DbClass's database.
 	 */
 	public void atomicRead(DbClass dbClass) 
 			throws DatabaseException {
-		establishConnection(dbClass);
-		read();
-		releaseConnection();
+		DbConnectionHandle handle = establishReadConnection(dbClass);
+		try {
+			read(handle);
+		} finally {
+			releaseConnection(handle);
+		}
+	}
+	
+	/**
+	 * This convenience method performs a single streaming read operation. It handles
+	 * the establishConnection and releaseConnection steps. The read may be
+	 * served by a read replica of the DbClass's database.
+	 */
+	public void atomicStreamRead(DbClass dbClass, RowHandler handler) 
+			throws DatabaseException {
+		DbConnectionHandle handle = establishReadConnection(dbClass);
+		try {
+			streamRead(handle, handler);
+		} finally {
+			releaseConnection(handle);
+		}
+	}
+	
+	////// Asynchronous versions of the convenience methods ////////
+	
+	/**
+	 * Runs atomicRead on a data access thread. The future fails with the
+	 * DatabaseException that atomicRead would have thrown.
+	 */
+	public CompletableFuture<Void> atomicReadAsync(DbClass dbClass) {
+		return callAsync(dbClass.getDbUrl(), () -> {
+			atomicRead(dbClass);
+			return null;
+		});
+	}
+	
+	/** Runs insertWithinTransaction on a data access thread */
+	public CompletableFuture<Integer> insertWithinTransactionAsync(DbClass dbClass) {
+		return callAsync(dbClass.getDbUrl(), () -> insertWithinTransaction(dbClass));
+	}
+	
+	/** Runs updateWithinTransaction on a data access thread */
+	public CompletableFuture<Integer> updateWithinTransactionAsync(DbClass dbClass) {
+		return callAsync(dbClass.getDbUrl(), () -> updateWithinTransaction(dbClass));
+	}
+	
+	/** Runs deleteWithinTransaction on a data access thread */
+	public CompletableFuture<Integer> deleteWithinTransactionAsync(DbClass dbClass) {
+		return callAsync(dbClass.getDbUrl(), () -> deleteWithinTransaction(dbClass));
+	}
+	
+	/**
+	 * Runs call on one of the data access threads for dburl, whose number is 
+	 * tied to the size of its connection pool (see DataAccessUtil.getAsyncExecutor). 
+	 * The returned future completes with call's result, or exceptionally with 
+	 * whatever call threw.
+	 */
+	public <T> CompletableFuture<T> callAsync(String dburl, DataAccessCall<T> call) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		try {
+			DataAccessUtil.getAsyncExecutor(dburl).execute(() -> {
+				try {
+					future.complete(call.call());
+				} catch(Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			future.completeExceptionally(new DatabaseException("Data access executor is not accepting work"));
+		}
+		return future;
+	}
+	
+	/**
+	 * Like establishConnection, but connects to the database chosen by the 
+	 * ReplicaRouter. If the chosen replica cannot be reached, falls back 
+	 * to the DbClass's own database.
+	 */
+	private DbConnectionHandle establishReadConnection(DbClass dbClass) throws DatabaseException {
+		if(dbClass == null) {
+			throw new DatabaseException("Cannot establish connection - DbClass is null");
+		}
+		String primary = dbClass.getDbUrl();
+		String dburl = ReplicaRouter.INSTANCE.readUrlFor(primary);
+		if(dburl.equals(primary)) {
+			return new DbAction(dbClass);
+		}
+		try {
+			return new DbAction(dbClass, dburl);
+		} catch(DatabaseException e) {
+			LOG.warning("Read replica " + dburl + " unavailable, reading from primary: " + e.getMessage());
+			return new DbAction(dbClass);
+		}
 	}
 	
 	/**
 	 * Literally closes every connection in the connection pool.
 	 */
 	public void closeAllConnections(){
-        SimpleConnectionPool.INSTANCE.closeConnections();	
+        ConnectionPool.INSTANCE.closeConnections();	
 	}
 
 	     
     //Testing interface
+    
+    /**
+     * Runs queries[i] against dburls[i], for every i, in parallel on separate pooled
+     * connections, so the whole call takes about as long as the slowest query rather
+     * than the sum of them. Each result is read completely into a disconnected 
+     * CachedRowSet before its connection goes back to the pool, so the returned 
+     * ResultSets remain usable and hold no database resources.
+     * 
+     * Each query must finish within fanout_query_timeout_millis of the call; if any
+     * query fails or runs out of time, the others are cancelled and a DatabaseException 
+     * is thrown. Every connection is returned to the pool in all cases.
+     */
     public ResultSet[] multipleInstanceQueries(String[] queries, String[] dburls) throws DatabaseException {
     	if(queries == null || dburls == null) return null;
     	if(queries.length != dburls.length) return null;
-    	int numConnections = queries.length;
-    	ResultSet[] results = new ResultSet[numConnections];
-        ArrayList<Connection> cons = new ArrayList<Connection>();
-        for(int i = 0; i < numConnections; ++i) {
-        	cons.add(SimpleConnectionPool.INSTANCE.getConnection(dburls[i]));
-        }
-        //need to rethink this
-//        for(int i = 0; i < numConnections; ++i) {
-//        	results[i] = SimpleConnectionPool.doQuery(cons.get(i), queries[i]);
-//        }
-        return results;   	
-    	
+    	int numQueries = queries.length;
+    	long timeoutMillis = DataAccessUtil.getFanOutTimeoutMillis();
+    	long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    	List<Future<CachedRowSet>> futures = new ArrayList<Future<CachedRowSet>>();
+    	try {
+    		for(int i = 0; i < numQueries; ++i) {
+    			String query = queries[i];
+    			String dburl = dburls[i];
+    			ExecutorService executor = DataAccessUtil.getAsyncExecutor(dburl);
+    			futures.add(executor.submit(() -> readDetached(query, dburl, timeoutMillis)));
+    		}
+    		ResultSet[] results = new ResultSet[numQueries];
+    		for(int i = 0; i < numQueries; ++i) {
+    			long remaining = deadline - System.nanoTime();
+    			results[i] = futures.get(i).get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+    		}
+    		return results;
+    	} catch(TimeoutException e) {
+    		throw new DatabaseException("Fan-out query did not complete within " + timeoutMillis + "ms");
+    	} catch(ExecutionException e) {
+    		Throwable cause = e.getCause();
+    		if(cause instanceof DatabaseException) throw (DatabaseException)cause;
+    		throw new DatabaseException((cause instanceof Exception) ? (Exception)cause : e);
+    	} catch(InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new DatabaseException("Interrupted while waiting for fan-out queries");
+    	} catch(RejectedExecutionException e) {
+    		throw new DatabaseException("Data access executor is not accepting work");
+    	} finally {
+    		//no effect on queries that have completed
+    		for(Future<CachedRowSet> future : futures) {
+    			future.cancel(true);
+    		}
+    	}
+    }
+    
+    /** 
+     * Runs query on its own pooled connection to dburl and copies the whole result
+     * into a CachedRowSet; the connection is returned to the pool before this returns.
+     */
+    private static CachedRowSet readDetached(String query, String dburl, long timeoutMillis) 
+    		throws DatabaseException {
+    	ConnectionPool pool = ConnectionPool.INSTANCE;
+    	DataAccessMetrics metrics = DataAccessMetrics.INSTANCE;
+    	Connection con = pool.getConnection(dburl);
+    	long start = System.nanoTime();
+    	try (Statement stmt = con.createStatement()) {
+    		stmt.setQueryTimeout((int)Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis + 999)));
+    		try (ResultSet rs = stmt.executeQuery(query)) {
+    			CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+    			rows.populate(rs);
+    			metrics.recordQuery(query, System.nanoTime() - start, rows.size());
+    			return rows;
+    		}
+    	} catch(SQLException e) {
+    		metrics.recordError(query, System.nanoTime() - start);
+    		throw new DatabaseException(e);
+    	} finally {
+    		pool.returnToPool(con, dburl);
+    	}
     }
 
 }
@@ -1,11 +1,21 @@
 
 package middleware.dataaccess;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
+import middleware.DbConfig;
 import middleware.DbConfigProperties;
 import middleware.exceptions.DatabaseException;
-import middleware.externalinterfaces.DbConfigKey;
 
 /**
  * @author pcorazza
@@ -18,15 +28,131 @@ class DataAccessUtil {
 	private static final Logger LOG =
 		Logger.getLogger(DataAccessUtil.class.getName());
 	
-	static void initializePool() throws DatabaseException {
+	private static ConnectionHealthKeeper healthKeeper;
+	//dburl -> executor for the async work against it; see getAsyncExecutor
+	private static final Map<String, ThreadPoolExecutor> asyncExecutors = 
+			new ConcurrentHashMap<String, ThreadPoolExecutor>();
+	private static volatile int asyncThreadsPerUrl;
+	private static final AtomicInteger asyncThreadCount = new AtomicInteger();
+	private static boolean initialized = false;
+	
+	//MySQL streams a result row by row only when given this fetch size
+	static final int MYSQL_STREAMING_FETCH_SIZE = DbConfig.STREAMING_FETCH_SIZE;
+	private static volatile int fetchSize = MYSQL_STREAMING_FETCH_SIZE;
+	private static volatile long fanOutTimeoutMillis = 10000;
+	
+	/**
+	 * Called by both DataAccessSubsystemFacade and PooledDataSource, 
+	 * whichever comes first; later calls do nothing.
+	 */
+	static synchronized void initializePool() throws DatabaseException {
+		if(initialized) return;
 		LOG.info("Connection Pool initialized");
-		DbConfigProperties props = new DbConfigProperties();
-		SimpleConnectionPool.INSTANCE.init(
-	            props.getProperty(DbConfigKey.DB_USER.getVal()), 
-	            props.getProperty(DbConfigKey.DB_PASSWORD.getVal()), 
-	            props.getProperty(DbConfigKey.DRIVER.getVal()),
-	            Integer.parseInt(props.getProperty(DbConfigKey.MAX_CONNECTIONS.getVal())));
-	    
+		DbConfig config = DbConfigProperties.getConfig();
+		List<String> dburls = configure(config);
+		
+		//warm up and look after the configured databases in the background
+		healthKeeper = new ConnectionHealthKeeper(dburls, config.getMaintenanceIntervalMillis());
+		healthKeeper.start();
+		
+		//more threads than this per dburl would only queue up in the pool for a connection
+		asyncThreadsPerUrl = config.getMaxConnections();
+		
+		DataAccessMetrics.INSTANCE.register();
+		DataAccessMetrics.INSTANCE.startPeriodicDump(config.getMetricsDumpIntervalMillis());
+		
+		DbConfigProperties.addChangeListener(DataAccessUtil::reconfigure);
+		DbConfigProperties.watchForChanges();
+		initialized = true;
+	}
+	
+	/**
+	 * Applies a reloaded dbconfig.properties: pool limits and credentials,
+	 * housekeeping settings, replicas and the size of the async executors all 
+	 * change in place. The maintenance and metrics dump intervals keep their 
+	 * startup values.
+	 */
+	private static synchronized void reconfigure(DbConfig config) {
+		try {
+			List<String> dburls = configure(config);
+			healthKeeper.setDburls(dburls);
+			int threads = config.getMaxConnections();
+			asyncThreadsPerUrl = threads;
+			for(ThreadPoolExecutor executor : asyncExecutors.values()) {
+				if(threads > executor.getMaximumPoolSize()) {
+					executor.setMaximumPoolSize(threads);
+					executor.setCorePoolSize(threads);
+				} else {
+					executor.setCorePoolSize(threads);
+					executor.setMaximumPoolSize(threads);
+				}
+			}
+			LOG.info("Connection Pool reconfigured");
+		} catch(DatabaseException e) {
+			LOG.warning("Unable to apply the new database configuration: " + e.getMessage());
+		}
+	}
+	
+	/** Passes config on to the pool and the replica router; returns every dburl in use */
+	private static List<String> configure(DbConfig config) throws DatabaseException {
+		ConnectionPool.INSTANCE.init(
+				config.getDbUser(), 
+				config.getDbPassword(), 
+				config.getDriver(),
+				config.getMaxConnections(),
+				config.getAcquireTimeoutMillis());
+		ConnectionPool.INSTANCE.initMaintenance(
+				config.getMinIdle(),
+				config.getIdleTimeoutMillis(),
+				config.getMaxLifetimeMillis(),
+				config.getValidationQuery());
+		ConnectionPool.INSTANCE.initStatementCache(config.getStatementCacheSize());
+		fetchSize = config.getFetchSize();
+		fanOutTimeoutMillis = config.getFanOutTimeoutMillis();
+		
+		Map<String, List<String>> replicas = new HashMap<String, List<String>>();
+		replicas.put(config.getAccountDbUrl(), config.getAccountReplicaUrls());
+		replicas.put(config.getProductDbUrl(), config.getProductReplicaUrls());
+		ReplicaRouter.INSTANCE.init(replicas, 
+				ReplicaRouter.Routing.valueOf(config.getReplicaRouting().toUpperCase()),
+				config.getReadYourWritesMillis());
+		
+		List<String> dburls = new ArrayList<String>(replicas.keySet());
+		dburls.addAll(ReplicaRouter.INSTANCE.allReplicas());
+		return dburls;
+	}
+	
+	/** 
+	 * Executor for the async work of DataAccessSubsystemFacade against dburl. 
+	 * Each dburl has its own, with at most max_connections daemon threads: as
+	 * many as the pool will open connections to it. So a burst of work against
+	 * one database waits in that executor's queue, rather than failing with 
+	 * PoolExhaustedException, and does not hold up work against the others.
+	 * Threads left idle for a minute end.
+	 */
+	static ExecutorService getAsyncExecutor(String dburl) {
+		return asyncExecutors.computeIfAbsent(dburl, url -> createAsyncExecutor(asyncThreadsPerUrl));
+	}
+	
+	private static ThreadPoolExecutor createAsyncExecutor(int threads) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), r -> {
+			Thread t = new Thread(r, "ebazaar-data-access-" + asyncThreadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
+	/** Fetch size used by streaming reads */
+	static int getFetchSize() {
+		return fetchSize;
+	}
+	
+	/** Time allowed for each query run by DataAccessSubsystemFacade.multipleInstanceQueries */
+	static long getFanOutTimeoutMillis() {
+		return fanOutTimeoutMillis;
 	}
    
     
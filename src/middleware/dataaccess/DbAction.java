@@ -5,20 +5,26 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import middleware.exceptions.DatabaseException;
 import middleware.externalinterfaces.DbClass;
+import middleware.externalinterfaces.DbConnectionHandle;
+import middleware.externalinterfaces.RowHandler;
 
 
 /**
  * This is the Mediator class for the Data Access Subsystem.
  * It is responsible for executing one query from a DbClass instance,
- * using one Connection. 
+ * using one Connection. Instances are handed to clients of the
+ * Data Access Subsystem as DbConnectionHandles.
  * @author pcorazza
  *
  */
-class DbAction {
+class DbAction implements DbConnectionHandle {
 	private static final Logger LOG 
 	    = Logger.getLogger(DbAction.class.getName());
     protected String query;
@@ -27,11 +33,27 @@ class DbAction {
     protected int[] paramTypes;
     protected DbClass concreteDbClass;
     protected Connection con;
-    protected SimpleConnectionPool pool = SimpleConnectionPool.INSTANCE;
+    protected StatementCache statements;
+    protected ConnectionPool pool = ConnectionPool.INSTANCE;
+    protected DataAccessMetrics metrics = DataAccessMetrics.INSTANCE;
+    protected ReplicaRouter router = ReplicaRouter.INSTANCE;
+    //the database actually connected to: the DbClass's own, or one of its read replicas
+    protected String dburl;
+    private boolean released = false;
     
     DbAction(DbClass c) throws DatabaseException {
+        this(c, c.getDbUrl());
+    }
+    
+    /** 
+     * Uses a connection to dburl rather than to the DbClass's own database;
+     * used to send reads to a replica
+     */
+    DbAction(DbClass c, String dburl) throws DatabaseException {
         concreteDbClass = c;
-        con = pool.getConnection(concreteDbClass.getDbUrl());    	
+        this.dburl = dburl;
+        con = pool.getConnection(dburl);
+        statements = pool.statementCacheFor(con, dburl);
     }
     /**
      * This method extracts query, params, types from the concreteDbClass
@@ -48,50 +70,156 @@ class DbAction {
     
     void performRead() throws DatabaseException {
     	extractQueryData();
-    	stmt = StatementPrep.createGeneralPreparedStatement(
-    			con, query, params, paramTypes);
+    	long start = System.nanoTime();
+    	CountingResultSet counted = null;
     	try {
-	    	ResultSet rs = stmt.executeQuery();
-			concreteDbClass.populateEntity(rs);
+	    	stmt = StatementPrep.createGeneralPreparedStatement(
+	    			statements, query, params, paramTypes);
+	    	try (ResultSet rs = stmt.executeQuery()) {
+	    		counted = new CountingResultSet(rs);
+				concreteDbClass.populateEntity(counted);
+	    	}
+    	} catch(SQLException e) {
+    		metrics.recordError(query, System.nanoTime() - start);
+    		throw new DatabaseException(e);
+    	} catch(DatabaseException | RuntimeException e) {
+    		metrics.recordError(query, System.nanoTime() - start);
+    		throw e;
+    	}
+    	metrics.recordQuery(query, System.nanoTime() - start, counted.getRowCount());
+    }
+    
+    /**
+     * Reads the concreteDbClass's query forward-only, fetchSize rows at a time, passing
+     * each row to handler until the rows run out or handler returns false. A statement
+     * set up for streaming is not reused, so it is prepared here and closed when done
+     * rather than taken from the statement cache.
+     */
+    void performStreamingRead(RowHandler handler, int fetchSize) throws DatabaseException {
+    	extractQueryData();
+    	long start = System.nanoTime();
+    	long rows = 0;
+    	try (PreparedStatement streamStmt = con.prepareStatement(query, 
+    			ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+    		StatementPrep.setValues(streamStmt, params, paramTypes);
+    		streamStmt.setFetchSize(fetchSize);
+    		try (ResultSet rs = streamStmt.executeQuery()) {
+    			while (rs.next()) {
+    				++rows;
+    				if(!handler.handleRow(rs)) break;
+    			}
+    		}
     	} catch(SQLException e) {
+    		metrics.recordError(query, System.nanoTime() - start);
     		throw new DatabaseException(e);
+    	} catch(RuntimeException e) {
+    		metrics.recordError(query, System.nanoTime() - start);
+    		throw e;
     	}
+    	metrics.recordQuery(query, System.nanoTime() - start, rows);
     }
     
     Integer performInsert() throws DatabaseException {
     	extractQueryData();
-    	stmt = StatementPrep.createInsertPreparedStatement(
-    			con, query, params, paramTypes);
-    	LOG.info(stmt.toString());
+    	long start = System.nanoTime();
     	try {		
-    		stmt.executeUpdate();	
+	    	stmt = StatementPrep.createInsertPreparedStatement(
+	    			statements, query, params, paramTypes);
+	    	PreparedStatement insertStmt = stmt;
+	    	LOG.fine(() -> insertStmt.toString());
+    		int rows = stmt.executeUpdate();	
     		int key = -1;
-    		ResultSet rs = stmt.getGeneratedKeys();
-    		if (rs.next()) {
-    			key = rs.getInt(1);
-    		} else {
-    			LOG.info("No return value for " + stmt.toString());
+    		try (ResultSet rs = stmt.getGeneratedKeys()) {
+	    		if (rs.next()) {
+	    			key = rs.getInt(1);
+	    		} else {
+	    			LOG.log(Level.FINE, "No generated key returned for {0}", query);
+	    		}
     		}
+    		metrics.recordQuery(query, System.nanoTime() - start, rows);
+    		router.recordWrite(concreteDbClass.getDbUrl());
     		return key;
     	} catch(SQLException e) {
+    		metrics.recordError(query, System.nanoTime() - start);
     		throw new DatabaseException(e);
+    	} catch(DatabaseException | RuntimeException e) {
+    		metrics.recordError(query, System.nanoTime() - start);
+    		throw e;
+    	}
+    }
+    
+    /**
+     * Runs the concreteDbClass's insert query once for each row of parameter values,
+     * in a single JDBC batch. The param types are taken from the concreteDbClass as usual;
+     * its query params are ignored. Returns the generated keys, in row order, if the
+     * driver reports them; otherwise the list is empty.
+     */
+    List<Integer> performBatchInsert(List<Object[]> paramRows) throws DatabaseException {
+    	extractQueryData();
+    	List<Integer> keys = new ArrayList<Integer>();
+    	if(paramRows == null || paramRows.isEmpty()) return keys;
+    	long start = System.nanoTime();
+    	try {
+	    	stmt = StatementPrep.createInsertPreparedStatement(
+	    			statements, query, paramRows.get(0), paramTypes);
+    		stmt.clearBatch();
+    		for(Object[] row : paramRows) {
+    			StatementPrep.addBatch(stmt, row, paramTypes);
+    		}
+    		LOG.log(Level.FINE, "Executing batch of {0} rows: {1}", new Object[] {paramRows.size(), query});
+    		stmt.executeBatch();
+    		try (ResultSet rs = stmt.getGeneratedKeys()) {
+    			while (rs.next()) {
+    				keys.add(rs.getInt(1));
+    			}
+    		}
+    		metrics.recordQuery(query, System.nanoTime() - start, paramRows.size());
+    		router.recordWrite(concreteDbClass.getDbUrl());
+    		return keys;
+    	} catch(SQLException e) {
+    		metrics.recordError(query, System.nanoTime() - start);
+    		throw new DatabaseException(e);
+    	} catch(DatabaseException | RuntimeException e) {
+    		metrics.recordError(query, System.nanoTime() - start);
+    		throw e;
     	}
     }
     
     Integer performUpdateOrDelete() throws DatabaseException {
     	extractQueryData();
-    	stmt = StatementPrep.createInsertPreparedStatement(con, query, params, paramTypes);
-    	LOG.info(stmt.toString());
+    	long start = System.nanoTime();
     	try {	  		
+	    	stmt = StatementPrep.createInsertPreparedStatement(statements, query, params, paramTypes);
+	    	PreparedStatement updateStmt = stmt;
+	    	LOG.fine(() -> updateStmt.toString());
     		int result = stmt.executeUpdate();	
+    		metrics.recordQuery(query, System.nanoTime() - start, result);
+    		router.recordWrite(concreteDbClass.getDbUrl());
     		return result;
     	} catch(SQLException e) {
+    		metrics.recordError(query, System.nanoTime() - start);
     		throw new DatabaseException(e);
+    	} catch(DatabaseException | RuntimeException e) {
+    		metrics.recordError(query, System.nanoTime() - start);
+    		throw e;
     	}
     }
     
+    /** Idempotent: the connection goes back to the pool only once */
     void returnToPool() throws DatabaseException {
-    	pool.returnToPool(con, concreteDbClass.getDbUrl());
+    	if(released) return;
+    	released = true;
+    	pool.returnToPool(con, dburl);
+    }
+    
+    @Override
+    public DbClass getDbClass() {
+    	return concreteDbClass;
+    }
+    
+    @Override
+    public boolean isReleased() {
+    	return released;
     }
     
     void startTransaction() throws DatabaseException {
@@ -103,15 +231,19 @@ class DbAction {
 		}
     }
     void commit() throws DatabaseException {
-    	LOG.info("Performing COMMIT");
+    	LOG.fine("Performing COMMIT");
     	try {
 			con.commit();
+			//replicas only see the transaction's writes some time after the commit
+			router.recordWrite(concreteDbClass.getDbUrl());
 		} catch(SQLException e) {
 			throw new DatabaseException(e.getMessage());
 		}
     }
     public void rollback() throws DatabaseException {
 		try {
+			//nothing to roll back if the transaction was never started
+			if(con.getAutoCommit()) return;
 			con.rollback();		
 		} catch(SQLException e) {
 			throw new DatabaseException("rollback encountered a SQLException " + e.getMessage());		
@@ -0,0 +1,76 @@
+package middleware.dataaccess;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations, in microseconds. Each power of two is
+ * split into four buckets, so a reported percentile is within about 19% of
+ * the true value, from 1 microsecond up to many hours, in a fixed 2KB of counters.
+ */
+class LatencyHistogram {
+	private static final int SUB_BUCKETS = 4;
+	private static final int SUB_BITS = 2;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+	
+	void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		counts.incrementAndGet(bucketFor(micros));
+		count.increment();
+		totalMicros.add(micros);
+		maxMicros.accumulate(micros);
+	}
+	
+	long getCount() {
+		return count.sum();
+	}
+	
+	long getMeanMicros() {
+		long n = count.sum();
+		return (n == 0) ? 0 : totalMicros.sum() / n;
+	}
+	
+	long getMaxMicros() {
+		return maxMicros.get();
+	}
+	
+	/** 
+	 * Upper bound of the bucket holding the given fraction (0 < p <= 1)
+	 * of recorded values, in microseconds
+	 */
+	long percentileMicros(double p) {
+		long total = 0;
+		for(int i = 0; i < counts.length(); ++i) {
+			total += counts.get(i);
+		}
+		if(total == 0) return 0;
+		long target = (long)Math.ceil(p * total);
+		long seen = 0;
+		for(int i = 0; i < counts.length(); ++i) {
+			seen += counts.get(i);
+			if(seen >= target) {
+				return Math.min(upperBound(i), getMaxMicros());
+			}
+		}
+		return getMaxMicros();
+	}
+	
+	private static int bucketFor(long micros) {
+		if(micros < SUB_BUCKETS) return (int)micros;
+		int msb = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int)((micros >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1));
+		return msb * SUB_BUCKETS + sub;
+	}
+	
+	private static long upperBound(int bucket) {
+		if(bucket < SUB_BUCKETS) return bucket;
+		int msb = bucket / SUB_BUCKETS;
+		int sub = bucket % SUB_BUCKETS;
+		return ((long)(SUB_BUCKETS + sub + 1) << (msb - SUB_BITS)) - 1;
+	}
+}
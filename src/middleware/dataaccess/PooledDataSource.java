@@ -0,0 +1,246 @@
+package middleware.dataaccess;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import middleware.DbConfigProperties;
+import middleware.exceptions.DatabaseException;
+import middleware.exceptions.PoolExhaustedException;
+import middleware.externalinterfaces.DbConfigKey;
+
+/**
+ * A javax.sql.DataSource view of the ConnectionPool for one of the
+ * configured databases. This is what the Spring beans dataSourceProducts
+ * and dataSourceAccounts (see application.xml) are, so the JdbcTemplate-based
+ * DbClasses and the Spring transaction managers draw from the same pool,
+ * with the same max_connections limit, as the DbClasses that go through
+ * DataAccessSubsystemFacade.
+ * 
+ * Connections handed out here are wrappers: closing one returns the 
+ * underlying connection to the pool.
+ * 
+ * A PooledDataSource created for reads (dataSourceProductsReads and 
+ * dataSourceAccountsReads) hands out connections to whichever database the
+ * ReplicaRouter picks, so it must be used only for queries outside of 
+ * transactions. A connection from a primary PooledDataSource that ran an
+ * update or a commit starts the read-your-writes window for that database
+ * when it is closed, as DbAction does for the DbClasses.
+ */
+public class PooledDataSource implements DataSource {
+	private static final Logger LOG = 
+		Logger.getLogger(PooledDataSource.class.getPackage().getName());
+	
+	private final DbConfigKey dbUrlKey;
+	private final boolean forReads;
+	private final ConnectionPool pool = ConnectionPool.INSTANCE;
+	private final ReplicaRouter router = ReplicaRouter.INSTANCE;
+	private PrintWriter logWriter;
+	
+	/**
+	 * @param dbUrlKey the key of the database url in dbconfig.properties, 
+	 * PRODUCT_DB_URL or ACCOUNT_DB_URL
+	 */
+	public PooledDataSource(DbConfigKey dbUrlKey) throws DatabaseException {
+		this(dbUrlKey, false);
+	}
+	
+	/**
+	 * @param dbUrlKey the key of the database url in dbconfig.properties, 
+	 * PRODUCT_DB_URL or ACCOUNT_DB_URL
+	 * @param forReads whether connections may come from the database's read replicas
+	 */
+	public PooledDataSource(DbConfigKey dbUrlKey, boolean forReads) throws DatabaseException {
+		this.forReads = forReads;
+		DataAccessUtil.initializePool();
+		try {
+			DbConfigProperties.getConfig().getDbUrl(dbUrlKey);
+		} catch(IllegalArgumentException e) {
+			throw new DatabaseException(e.getMessage());
+		}
+		this.dbUrlKey = dbUrlKey;
+	}
+	
+	/** The url as currently configured; it may change when dbconfig.properties is reloaded */
+	public String getUrl() {
+		return DbConfigProperties.getConfig().getDbUrl(dbUrlKey);
+	}
+	
+	/** Number of connections to this database currently checked out, through any path */
+	public int getNumActive() {
+		return pool.numActive(getUrl());
+	}
+	
+	/** Number of free connections to this database */
+	public int getNumIdle() {
+		return pool.numIdle(getUrl());
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		String dburl = getUrl();
+		String url = forReads ? router.readUrlFor(dburl) : dburl;
+		try {
+			return connectTo(url);
+		} catch(SQLTransientConnectionException e) {
+			throw e;
+		} catch(SQLException e) {
+			if(url.equals(dburl)) throw e;
+			LOG.warning("Read replica " + url + " unavailable, reading from primary: " + e.getMessage());
+			return connectTo(dburl);
+		}
+	}
+	
+	private Connection connectTo(String url) throws SQLException {
+		Connection con;
+		try {
+			con = pool.getConnection(url);
+		} catch(PoolExhaustedException e) {
+			throw new SQLTransientConnectionException(e.getMessage(), e);
+		} catch(DatabaseException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+		return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new PooledConnectionHandler(con, url));
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Pooled connections all use the configured dbuser");
+	}
+
+	@Override
+	public PrintWriter getLogWriter() {
+		return logWriter;
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) {
+		logWriter = out;
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) {
+		//acquire timeout is set by acquire_timeout_millis
+	}
+
+	@Override
+	public int getLoginTimeout() {
+		return 0;
+	}
+
+	@Override
+	public Logger getParentLogger() {
+		return LOG;
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if(iface.isInstance(this)) return iface.cast(this);
+		throw new SQLException("Not a wrapper for " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) {
+		return iface.isInstance(this);
+	}
+	
+	/**
+	 * Delegates to the pooled connection, except that close returns it to
+	 * the pool, and nothing may be done with it afterwards. Statements it 
+	 * creates are wrapped so that updates run through them are noticed.
+	 */
+	private class PooledConnectionHandler implements InvocationHandler {
+		private final Connection con;
+		private final String url;
+		private boolean closed = false;
+		private volatile boolean wrote = false;
+		
+		PooledConnectionHandler(Connection con, String url) {
+			this.con = con;
+			this.url = url;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch(method.getName()) {
+				case "close":
+					if(!closed) {
+						closed = true;
+						if(wrote && !forReads) router.recordWrite(url);
+						pool.returnToPool(con, url);
+					}
+					return null;
+				case "isClosed":
+					return closed || con.isClosed();
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "Pooled connection to " + url + (closed ? " (closed)" : "");
+				default:
+					if(closed) {
+						throw new SQLException("Connection has been returned to the pool");
+					}
+					Object result;
+					try {
+						result = method.invoke(con, args);
+					} catch(InvocationTargetException e) {
+						throw e.getCause();
+					}
+					if(method.getName().equals("commit")) {
+						//replicas only see the transaction's writes some time after the commit
+						wrote = true;
+					} else if(result instanceof Statement && method.getReturnType().isInterface()) {
+						result = Proxy.newProxyInstance(Connection.class.getClassLoader(),
+								new Class<?>[] { method.getReturnType() }, new StatementHandler(result, this));
+					}
+					return result;
+			}
+		}
+	}
+	
+	/**
+	 * Delegates to a statement of a pooled connection, marking the connection
+	 * as having written once an update is run through it. Queries leave it 
+	 * unmarked, so reads on the primary do not hold off the replicas.
+	 */
+	private static class StatementHandler implements InvocationHandler {
+		private final Object stmt;
+		private final PooledConnectionHandler connection;
+		
+		StatementHandler(Object stmt, PooledConnectionHandler connection) {
+			this.stmt = stmt;
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Object result;
+			try {
+				result = method.invoke(stmt, args);
+			} catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+			String name = method.getName();
+			if(name.startsWith("execute") && !name.equals("executeQuery")) {
+				//execute returns false when the statement produced an update count
+				if(!name.equals("execute") || Boolean.FALSE.equals(result)) {
+					connection.wrote = true;
+				}
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package middleware.dataaccess;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * This is a singleton. Decides which database a read goes to. Each primary
+ * dburl may have any number of read replicas (see product_dburl_replicas and
+ * account_dburl_replicas in dbconfig.properties); reads that are not part of
+ * a transaction are spread over them, either round-robin or by sending each
+ * read to the replica with the fewest connections checked out. Writes and
+ * transactions always use the primary.
+ *
+ * Replicas lag behind the primary, so for read_your_writes_millis after a
+ * write to a primary, reads of that database go to the primary as well. A
+ * running EBazaar client serves a single customer, so every write made by
+ * this process counts as one of the customer's own.
+ */
+enum ReplicaRouter {
+	INSTANCE;
+	
+	private static final Logger LOG = 
+		Logger.getLogger(ReplicaRouter.class.getPackage().getName());
+	
+	enum Routing { ROUND_ROBIN, LEAST_LOADED }
+	
+	private volatile Map<String, List<String>> replicas = Collections.emptyMap();
+	private volatile Routing routing = Routing.ROUND_ROBIN;
+	private volatile long readYourWritesMillis;
+	
+	private final ConcurrentMap<String, AtomicInteger> nextReplica = new ConcurrentHashMap<String, AtomicInteger>();
+	private final ConcurrentMap<String, AtomicLong> lastWrite = new ConcurrentHashMap<String, AtomicLong>();
+	
+	/** Called only once during execution, by DataAccessUtil.initializePool() */
+	synchronized void init(Map<String, List<String>> replicasByPrimary, Routing routing, 
+			long readYourWritesMillis) {
+		this.replicas = replicasByPrimary;
+		this.routing = routing;
+		this.readYourWritesMillis = Math.max(0, readYourWritesMillis);
+		for(Map.Entry<String, List<String>> e : replicasByPrimary.entrySet()) {
+			if(!e.getValue().isEmpty()) {
+				LOG.info("Reads of " + e.getKey() + " are routed " + routing + " to " + e.getValue());
+			}
+		}
+	}
+	
+	/** The dburl a read of the database at primary should use */
+	String readUrlFor(String primary) {
+		List<String> candidates = replicas.get(primary);
+		if(candidates == null || candidates.isEmpty() || recentlyWritten(primary)) {
+			return primary;
+		}
+		if(candidates.size() == 1) return candidates.get(0);
+		if(routing == Routing.LEAST_LOADED) {
+			String best = candidates.get(0);
+			int bestActive = ConnectionPool.INSTANCE.numActive(best);
+			for(int i = 1; i < candidates.size(); ++i) {
+				int active = ConnectionPool.INSTANCE.numActive(candidates.get(i));
+				if(active < bestActive) {
+					best = candidates.get(i);
+					bestActive = active;
+				}
+			}
+			return best;
+		}
+		int next = nextReplica.computeIfAbsent(primary, p -> new AtomicInteger()).getAndIncrement();
+		return candidates.get(Math.floorMod(next, candidates.size()));
+	}
+	
+	/** Records that primary has just been written to, starting its read-your-writes window */
+	void recordWrite(String primary) {
+		if(readYourWritesMillis == 0 || !replicas.containsKey(primary)) return;
+		lastWrite.computeIfAbsent(primary, p -> new AtomicLong()).set(System.currentTimeMillis());
+	}
+	
+	/** Every replica dburl, so their pools can be maintained along with the primaries */
+	List<String> allReplicas() {
+		return replicas.values().stream()
+				.flatMap(List::stream)
+				.collect(Collectors.toList());
+	}
+	
+	private boolean recentlyWritten(String primary) {
+		AtomicLong written = lastWrite.get(primary);
+		return written != null 
+				&& System.currentTimeMillis() - written.get() < readYourWritesMillis;
+	}
+}
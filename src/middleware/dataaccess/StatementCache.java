@@ -0,0 +1,138 @@
+package middleware.dataaccess;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Least-recently-used cache of PreparedStatements for a single pooled
+ * Connection, keyed by query text and generated-keys mode. The cache lives
+ * as long as its Connection, so a query that is run repeatedly is parsed
+ * only once per connection. A statement pushed out of the cache, and every
+ * statement in the cache when its Connection is closed by the pool, is closed.
+ *
+ * Hit and miss counts are kept across all caches.
+ */
+class StatementCache {
+	private static final Logger LOG =
+		Logger.getLogger(StatementCache.class.getPackage().getName());
+
+	private static final LongAdder hits = new LongAdder();
+	private static final LongAdder misses = new LongAdder();
+
+	private final Connection con;
+	private final LinkedHashMap<Key, PreparedStatement> statements;
+	// statements handed out since the connection was last returned to the pool
+	private final List<PreparedStatement> inUse = new ArrayList<PreparedStatement>();
+
+	StatementCache(Connection con, int maxSize) {
+		this.con = con;
+		this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+				if(size() > maxSize) {
+					close(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached statement for query, preparing (and caching) it first
+	 * if necessary. autoGeneratedKeys is Statement.RETURN_GENERATED_KEYS or
+	 * Statement.NO_GENERATED_KEYS.
+	 */
+	synchronized PreparedStatement prepare(String query, int autoGeneratedKeys) throws SQLException {
+		Key key = new Key(query, autoGeneratedKeys);
+		PreparedStatement stmt = statements.get(key);
+		if(stmt == null || stmt.isClosed()) {
+			misses.increment();
+			stmt = (autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS)
+					? con.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)
+					: con.prepareStatement(query);
+			statements.put(key, stmt);
+		} else {
+			hits.increment();
+		}
+		inUse.add(stmt);
+		return stmt;
+	}
+
+	/**
+	 * Called when the connection goes back to the pool: clears the parameters of
+	 * the statements used during the checkout, so no values are held on to.
+	 */
+	synchronized void release() {
+		for(PreparedStatement stmt : inUse) {
+			try {
+				if(!stmt.isClosed()) stmt.clearParameters();
+			} catch(SQLException e) {
+				LOG.warning("Unable to clear statement parameters: " + e.getMessage());
+			}
+		}
+		inUse.clear();
+	}
+
+	/** Closes every cached statement; called before the connection itself is closed */
+	synchronized void closeAll() {
+		Iterator<PreparedStatement> it = statements.values().iterator();
+		while(it.hasNext()) {
+			close(it.next());
+			it.remove();
+		}
+		inUse.clear();
+	}
+
+	synchronized int size() {
+		return statements.size();
+	}
+
+	static long getHits() {
+		return hits.sum();
+	}
+
+	static long getMisses() {
+		return misses.sum();
+	}
+
+	private static void close(PreparedStatement stmt) {
+		try {
+			stmt.close();
+		} catch(SQLException e) {
+			LOG.warning("Cannot close cached statement: " + e.getMessage());
+		}
+	}
+
+	private static final class Key {
+		private final String query;
+		private final int autoGeneratedKeys;
+
+		Key(String query, int autoGeneratedKeys) {
+			this.query = query;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		@Override
+		public boolean equals(Object ob) {
+			if(this == ob) return true;
+			if(!(ob instanceof Key)) return false;
+			Key k = (Key)ob;
+			return autoGeneratedKeys == k.autoGeneratedKeys && query.equals(k.query);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * query.hashCode() + autoGeneratedKeys;
+		}
+	}
+}
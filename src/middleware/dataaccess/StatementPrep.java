@@ -10,6 +10,9 @@ import middleware.exceptions.DatabaseException;
  * - an array of parameter values 
  * - an array of types for those values, specified using 
  *   the constants in the class java.sql.Types.
+ * The variants that take a StatementCache reuse a statement already
+ * prepared on the connection when there is one; the caller must not
+ * close statements obtained that way.
  */
 public class StatementPrep {
 	
@@ -37,7 +40,42 @@ public class StatementPrep {
 		}
 		
 	}
-	private static void setValues(PreparedStatement stmt, Object[] params, int[] paramTypes) throws SQLException {
+	static PreparedStatement createInsertPreparedStatement(StatementCache cache, String query, Object[] params,
+			int[] paramTypes) throws DatabaseException {
+		try {
+			PreparedStatement stmt = cache.prepare(query, Statement.RETURN_GENERATED_KEYS);
+			setValues(stmt, params, paramTypes);
+			return stmt;
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	static PreparedStatement createGeneralPreparedStatement(StatementCache cache, String query, Object[] params,
+			int[] paramTypes) throws DatabaseException {
+		try {
+			PreparedStatement stmt = cache.prepare(query, Statement.NO_GENERATED_KEYS);
+			setValues(stmt, params, paramTypes);
+			return stmt;
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	/**
+	 * Sets one row of parameter values on stmt and adds it to the
+	 * statement's current batch.
+	 */
+	static void addBatch(PreparedStatement stmt, Object[] params, int[] paramTypes) throws DatabaseException {
+		try {
+			setValues(stmt, params, paramTypes);
+			stmt.addBatch();
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	static void setValues(PreparedStatement stmt, Object[] params, int[] paramTypes) throws SQLException {
 		int count = 0;
 		for (int i = 0; i < paramTypes.length; ++i) {
 			++count;
@@ -0,0 +1,15 @@
+package middleware.exceptions;
+
+
+/**
+ * Thrown when no pooled connection to a database becomes available
+ * within the configured acquire timeout, because all max_connections
+ * connections for that dburl are in use.
+ */
+public class PoolExhaustedException extends DatabaseException {
+	public PoolExhaustedException(String dburl, int maxConnections, long waitedMillis) {
+		super("All " + maxConnections + " connections to " + dburl
+				+ " are in use (waited " + waitedMillis + "ms).");
+	}
+	private static final long serialVersionUID = -4671220532829937402L;
+}
@@ -0,0 +1,11 @@
+package middleware.externalinterfaces;
+
+import middleware.exceptions.DatabaseException;
+
+/** 
+ * A unit of data access work to be run in the background 
+ * (see DataAccessSubsystem.callAsync)
+ */
+public interface DataAccessCall<T> {
+	public T call() throws DatabaseException;
+}
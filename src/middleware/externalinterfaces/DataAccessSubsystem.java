@@ -1,25 +1,48 @@
-
 package middleware.externalinterfaces;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import middleware.exceptions.DatabaseException;
 
 public interface DataAccessSubsystem {
-	//This starts the data access interaction and permits the use of transactions
-	//The DataAccessSubsystem will keep a reference to the connection for all future uses in the current instance
-	//so the connection object does not need to be managed by the client.
-	public void establishConnection(DbClass dbClass) throws DatabaseException;
-	public void releaseConnection() throws DatabaseException;
-	public void startTransaction() throws DatabaseException;
-	public void commit() throws DatabaseException;
-	public void rollback() throws DatabaseException;
-    public void read() throws DatabaseException;  
-    public Integer insert() throws DatabaseException;
-    public Integer update() throws DatabaseException;
-    public Integer delete() throws DatabaseException;
+	//This starts the data access interaction and permits the use of transactions.
+	//The returned handle owns the connection; it is passed to every later call
+	//in the interaction and finally to releaseConnection. The DataAccessSubsystem
+	//itself keeps no per-interaction state, so it can be shared between threads.
+	public DbConnectionHandle establishConnection(DbClass dbClass) throws DatabaseException;
+	public void releaseConnection(DbConnectionHandle handle) throws DatabaseException;
+	public void startTransaction(DbConnectionHandle handle) throws DatabaseException;
+	public void commit(DbConnectionHandle handle) throws DatabaseException;
+	public void rollback(DbConnectionHandle handle) throws DatabaseException;
+    public void read(DbConnectionHandle handle) throws DatabaseException;  
+    public Integer insert(DbConnectionHandle handle) throws DatabaseException;
+    public Integer update(DbConnectionHandle handle) throws DatabaseException;
+    public Integer delete(DbConnectionHandle handle) throws DatabaseException;
+    //Runs the DbClass's insert query once per row of params, in one JDBC batch;
+    //returns generated keys in row order when the driver provides them
+    public List<Integer> insertBatch(DbConnectionHandle handle, List<Object[]> paramRows) throws DatabaseException;
+    //Runs the DbClass's query and passes each row to handler as it arrives, using the
+    //configured fetch_size, instead of handing the whole ResultSet to populateEntity
+    public void streamRead(DbConnectionHandle handle, RowHandler handler) throws DatabaseException;
 	public Integer insertWithinTransaction(DbClass dbClass) throws DatabaseException;
 	public Integer updateWithinTransaction(DbClass dbClass) throws DatabaseException;
 	public Integer deleteWithinTransaction(DbClass dbClass) throws DatabaseException;
+	public List<Integer> insertBatchWithinTransaction(DbClass dbClass, List<Object[]> paramRows) throws DatabaseException;
 	public void atomicRead(DbClass dbClass) throws DatabaseException;
+	public void atomicStreamRead(DbClass dbClass, RowHandler handler) throws DatabaseException;
+	
+	//Background versions of the atomic operations above. They run on a bounded pool
+	//of data access threads for the DbClass's dburl and fail with the DatabaseException
+	//the blocking version would throw. The DbClass must not be used again until the 
+	//future completes.
+	public CompletableFuture<Void> atomicReadAsync(DbClass dbClass);
+	public CompletableFuture<Integer> insertWithinTransactionAsync(DbClass dbClass);
+	public CompletableFuture<Integer> updateWithinTransactionAsync(DbClass dbClass);
+	public CompletableFuture<Integer> deleteWithinTransactionAsync(DbClass dbClass);
+	//Runs any other data access work, such as a JdbcTemplate-based DbClass query,
+	//on the same threads; dburl is the database it uses
+	public <T> CompletableFuture<T> callAsync(String dburl, DataAccessCall<T> call);
 	
 		
 	
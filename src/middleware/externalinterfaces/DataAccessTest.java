@@ -5,5 +5,7 @@ import java.sql.ResultSet;
 import middleware.exceptions.DatabaseException;
 
 public interface DataAccessTest {
+	//Runs queries[i] on dburls[i] for all i in parallel; the ResultSets returned
+	//are disconnected copies that hold no connection, so they are safe to keep
 	public ResultSet[] multipleInstanceQueries(String[] queries, String[] dburls) throws DatabaseException;
 }
@@ -3,7 +3,29 @@ package middleware.externalinterfaces;
 public enum DbConfigKey {
 	PRODUCT_DB_URL("product_dburl"), 
 	ACCOUNT_DB_URL("account_dburl"),
+	PRODUCT_DB_REPLICA_URLS("product_dburl_replicas"),
+	ACCOUNT_DB_REPLICA_URLS("account_dburl_replicas"),
+	REPLICA_ROUTING("replica_routing"),
+	READ_YOUR_WRITES_MILLIS("read_your_writes_millis"),
 	MAX_CONNECTIONS("max_connections"),
+	ACQUIRE_TIMEOUT_MILLIS("acquire_timeout_millis"),
+	MIN_IDLE("min_idle"),
+	IDLE_TIMEOUT_MILLIS("idle_timeout_millis"),
+	MAX_LIFETIME_MILLIS("max_lifetime_millis"),
+	VALIDATION_QUERY("validation_query"),
+	MAINTENANCE_INTERVAL_MILLIS("maintenance_interval_millis"),
+	STATEMENT_CACHE_SIZE("statement_cache_size"),
+	FETCH_SIZE("fetch_size"),
+	FANOUT_QUERY_TIMEOUT_MILLIS("fanout_query_timeout_millis"),
+	METRICS_DUMP_INTERVAL_MILLIS("metrics_dump_interval_millis"),
+	PRODUCT_POLL_INTERVAL_MILLIS("product_poll_interval_millis"),
+	PRODUCT_CACHE_LAYOUT("product_cache_layout"),
+	INVENTORY_FLUSH_INTERVAL_MILLIS("inventory_flush_interval_millis"),
+	RESERVATION_TTL_MILLIS("reservation_ttl_millis"),
+	IMPORT_BATCH_SIZE("import_batch_size"),
+	PRODUCT_SNAPSHOT_FILE("product_snapshot_file"),
+	PRODUCT_SNAPSHOT_INTERVAL_MILLIS("product_snapshot_interval_millis"),
+	PRODUCT_EVENT_COALESCE_MILLIS("product_event_coalesce_millis"),
 	DB_USER("dbuser"),
 	DB_PASSWORD("dbpassword"),
 	DRIVER("driver");
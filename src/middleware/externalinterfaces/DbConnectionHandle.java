@@ -0,0 +1,18 @@
+package middleware.externalinterfaces;
+
+/**
+ * Returned by DataAccessSubsystem.establishConnection. A handle stands for
+ * one pooled connection (and the transaction running on it, if any),
+ * bound to the DbClass it was established for. It is passed back to the
+ * DataAccessSubsystem for every read, write, commit or rollback on that
+ * connection, and must finally be passed to releaseConnection.
+ *
+ * A handle must only be used by one thread at a time.
+ */
+public interface DbConnectionHandle {
+	/** The DbClass whose queries are run on this connection */
+	public DbClass getDbClass();
+	
+	/** True once the handle has been passed to releaseConnection */
+	public boolean isReleased();
+}
@@ -0,0 +1,18 @@
+package middleware.externalinterfaces;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/** 
+ * Receives the rows of a streaming read (see DataAccessSubsystem.streamRead)
+ * one at a time, instead of the whole ResultSet being passed to 
+ * DbClass.populateEntity.
+ */
+public interface RowHandler {
+	/**
+	 * Called once for each row, with resultSet positioned on that row. 
+	 * The handler must not call next() or close() on resultSet.
+	 * Return false to stop the read early; no further rows are fetched.
+	 */
+	public boolean handleRow(ResultSet resultSet) throws SQLException;
+}
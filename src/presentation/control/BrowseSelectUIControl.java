@@ -15,6 +15,7 @@ import presentation.data.CartItemPres;
 import presentation.data.CatalogPres;
 import presentation.data.ProductPres;
 import presentation.gui.CatalogListWindow;
+import presentation.gui.GuiConstants;
 import presentation.gui.OrdersWindow;
 import presentation.gui.ProductDetailsWindow;
 import presentation.gui.ProductListWindow;
@@ -138,8 +139,13 @@ public enum BrowseSelectUIControl {
 					BrowseSelectData.INSTANCE.setSelectedCatalog(cat);
 					CatalogListWindow.getInstance().clearMessages();
 					productListWindow = new ProductListWindow(cat);
-					List<ProductPres> prods = BrowseSelectData.INSTANCE.getProductList(cat);
-					productListWindow.setData(FXCollections.observableList(prods));
+					//the rest of the products are fetched as the table is scrolled
+					List<ProductPres> prods = BrowseSelectData.INSTANCE.getProductPage(cat, null);
+					ObservableList<ProductPres> items = FXCollections.observableArrayList(prods);
+					productListWindow.setData(items);
+					BrowseSelectData.INSTANCE.setProductListData(items);
+					productListWindow.setOnScrolledToEnd(new ProductPageLoader(cat, items, 
+							prods.size() == GuiConstants.PRODUCT_PAGE_SIZE));
 					CatalogListWindow.getInstance().hide();
 					productListWindow.show();	
 				} catch(BackendException e) {
@@ -149,6 +155,32 @@ public enum BrowseSelectUIControl {
 			}			
 		}	
 	}
+	/** Appends the next page of products to items, until there are no more */
+	private class ProductPageLoader implements Runnable {
+		private final CatalogPres cat;
+		private final ObservableList<ProductPres> items;
+		private boolean more;
+		
+		ProductPageLoader(CatalogPres cat, ObservableList<ProductPres> items, boolean more) {
+			this.cat = cat;
+			this.items = items;
+			this.more = more;
+		}
+		
+		@Override
+		public void run() {
+			if(!more || items.isEmpty()) return;
+			try {
+				List<ProductPres> page = BrowseSelectData.INSTANCE.getProductPage(cat, items.get(items.size() - 1));
+				more = page.size() == GuiConstants.PRODUCT_PAGE_SIZE;
+				items.addAll(page);
+			} catch(BackendException e) {
+				more = false;
+				productListWindow.displayError("Unable to display more products: " + e.getMessage());
+			}
+		}
+	}
+	
 	private class BackToPrimaryHandler implements EventHandler<ActionEvent> {
 		public void handle(ActionEvent evt) {
 			startScreenCallback.clearMessages();
@@ -246,7 +278,8 @@ public enum BrowseSelectUIControl {
 	}
 	public void runQuantityRules(Product product, String quantityRequested) 
 			throws RuleException, BusinessException {
-		controller.runQuantityRules(product, quantityRequested);
+		controller.runQuantityRules(BrowseSelectData.INSTANCE.obtainCurrentShoppingCartSubsystem(), 
+				product, quantityRequested);
 	}
 	
 	public BackToProductListHandler getBackToProductListHandler() {
@@ -342,6 +375,13 @@ public enum BrowseSelectUIControl {
 	public SaveCartHandler getSaveCartHandler() {
 		return new SaveCartHandler();
 	}
+	/** Shows the newer values of the selected product, if its details are open */
+	public void updateSelectedProduct(ProductPres prod) {
+		if(productDetailsWindow != null) {
+			productDetailsWindow.setProduct(prod);
+		}
+	}
+	
 	/**
 	 * Updates the view of cart items in the UI
 	 */
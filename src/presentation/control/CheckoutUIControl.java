@@ -359,7 +359,7 @@ public enum CheckoutUIControl {
 				finalOrderWindow.clearMessages();
 				finalOrderWindow.hide();
 
-			} catch (BackendException e) {
+			} catch (BusinessException e) {
 				finalOrderWindow.displayError(e.getMessage());
 			}
 		}
@@ -15,18 +15,22 @@ import business.exceptions.BackendException;
 import business.exceptions.UnauthorizedException;
 import business.externalinterfaces.Catalog;
 import business.externalinterfaces.Product;
+import business.externalinterfaces.ProductImportResult;
 import business.productsubsystem.ProductSubsystemFacade;
 import business.usecasecontrol.ManageProductsController;
 import business.util.Convert;
 import business.util.DataUtil;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import launch.Start;
 
+import java.io.File;
 import java.util.logging.*;
 
 
@@ -306,5 +310,45 @@ public enum ManageProductsUIControl {
 	public AddNewProductHandler getAddNewProductHandler() {
 		return new AddNewProductHandler();
 	} 
+	
+	/* 
+	 * Asks for a CSV or JSON feed of products and imports it on a background
+	 * thread, so the window stays responsive during a large import 
+	 */
+	private class ImportProductsHandler implements EventHandler<ActionEvent> {
+		public void handle(ActionEvent evt) {
+			FileChooser chooser = new FileChooser();
+			chooser.setTitle("Import Products");
+			chooser.getExtensionFilters().add(
+					new FileChooser.ExtensionFilter("Product feeds", "*.csv", "*.json", "*.jsonl", "*.ndjson"));
+			File file = chooser.showOpenDialog(maintainProductsWindow);
+			if(file == null) return;
+			Task<ProductImportResult> task = new Task<ProductImportResult>() {
+				@Override
+				protected ProductImportResult call() throws BackendException {
+					return ManageProductsData.INSTANCE.importProducts(file);
+				}
+			};
+			task.setOnSucceeded(e -> showResult(task.getValue()));
+			task.setOnFailed(e -> maintainProductsWindow.displayError(
+					"The file could not be imported: " + task.getException().getMessage()));
+			Thread t = new Thread(task, "ebazaar-product-import");
+			t.setDaemon(true);
+			maintainProductsWindow.displayInfo("Importing " + file.getName() + "...");
+			t.start();
+		}
+		
+		private void showResult(ProductImportResult result) {
+			result.getErrors().forEach(err -> LOG.info(err));
+			if(result.getErrors().isEmpty()) {
+				maintainProductsWindow.displayInfo(result.toString());
+			} else {
+				maintainProductsWindow.displayError(result + ". First problem: " + result.getErrors().get(0));
+			}
+		}
+	}
+	public ImportProductsHandler getImportProductsHandler() {
+		return new ImportProductsHandler();
+	}
 
 }
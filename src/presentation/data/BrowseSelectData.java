@@ -4,7 +4,9 @@ import static presentation.util.UtilForUIClasses.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -13,7 +15,9 @@ import business.externalinterfaces.*;
 import business.productsubsystem.ProductSubsystemFacade;
 import business.shoppingcartsubsystem.ShoppingCartSubsystemFacade;
 import business.usecasecontrol.BrowseAndSelectController;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import launch.Start;
 import presentation.control.BrowseSelectUIControl;
@@ -32,6 +36,10 @@ public enum BrowseSelectData  {
 	
 	private BrowseAndSelectController controller = new BrowseAndSelectController();
 	
+	BrowseSelectData() {
+		controller.addProductChangeListener(this::productsChanged, Platform::runLater);
+	}
+	
 	public CatalogPres getSelectedCatalog() {
 		return selectedCatalog;
 	}
@@ -170,6 +178,38 @@ public enum BrowseSelectData  {
 	}
 	
 	//ProductList data
+	//the products shown in the product list window, as far as they have been paged in
+	private ObservableList<ProductPres> productListData;
+	//product id -> its index in productListData, so that a change is applied
+	//without searching the list; rebuilt when the list is changed otherwise
+	//(as when a page is added to it)
+	private final Map<Integer, Integer> productIndex = new HashMap<Integer, Integer>();
+	private boolean productIndexStale = true;
+	private boolean applyingProductChanges;
+	
+	public void setProductListData(ObservableList<ProductPres> items) {
+		productListData = items;
+		productIndexStale = true;
+		if(items != null) {
+			items.addListener((ListChangeListener<ProductPres>) c -> {
+				if(!applyingProductChanges && items == productListData) productIndexStale = true;
+			});
+		}
+	}
+	
+	/** Index of the product in productListData; -1 if it is not listed */
+	private int indexOfProduct(int productId) {
+		if(productIndexStale) {
+			productIndex.clear();
+			for(int i = 0; i < productListData.size(); ++i) {
+				productIndex.put(productListData.get(i).getProduct().getProductId(), i);
+			}
+			productIndexStale = false;
+		}
+		Integer i = productIndex.get(productId);
+		return (i == null) ? -1 : i;
+	}
+	
 	public List<ProductPres> getProductList(CatalogPres selectedCatalog) throws BackendException {
 		return controller.getProducts(selectedCatalog.getCatalog())
 			    .stream()
@@ -177,6 +217,18 @@ public enum BrowseSelectData  {
 			    .collect(Collectors.toList());
 	}
 	
+	/** 
+	 * The page of products that follows last (the first page if last is null); 
+	 * empty when there are no more 
+	 */
+	public List<ProductPres> getProductPage(CatalogPres selectedCatalog, ProductPres last) throws BackendException {
+		Integer afterId = (last == null) ? null : last.getProduct().getProductId();
+		return controller.getProducts(selectedCatalog.getCatalog(), afterId, GuiConstants.PRODUCT_PAGE_SIZE)
+			    .stream()
+			    .map(prod -> productToProductPres(prod))
+			    .collect(Collectors.toList());
+	}
+	
 	//ProductDetails data
 	// List<String> displayValues = 
 	public List<String> getProductDisplayValues(ProductPres productPres) {
@@ -191,6 +243,68 @@ public enum BrowseSelectData  {
 	}
 	
 	
+	/**
+	 * Brings the product list, the selected product and the prices in the
+	 * cart up to date; runs on the UI thread. New products are left to be
+	 * paged in, since they come after those shown.
+	 */
+	private void productsChanged(List<ProductChangeEvent> events) {
+		boolean cartChanged = false;
+		for(ProductChangeEvent e : events) {
+			int listed = (productListData == null) ? -1 : indexOfProduct(e.getProductId());
+			if(listed >= 0) {
+				applyingProductChanges = true;
+				try {
+					if(e.getType() == ProductChangeEvent.Type.DELETED) {
+						productListData.remove(listed);
+						productIndex.remove(e.getProductId());
+						//the products after it have moved up
+						for(int j = listed; j < productListData.size(); ++j) {
+							productIndex.put(productListData.get(j).getProduct().getProductId(), j);
+						}
+					} else {
+						productListData.set(listed, updated(productListData.get(listed), e));
+					}
+				} finally {
+					applyingProductChanges = false;
+				}
+			}
+			if(selectedProduct != null && selectedProduct.getProduct().getProductId() == e.getProductId()
+					&& e.getType() != ProductChangeEvent.Type.DELETED) {
+				selectedProduct = updated(selectedProduct, e);
+				BrowseSelectUIControl.INSTANCE.updateSelectedProduct(selectedProduct);
+			}
+			if(e.getType() == ProductChangeEvent.Type.PRICE_CHANGED && cartData != null) {
+				Product p = e.getProduct();
+				for(int i = 0; i < cartData.size(); ++i) {
+					CartItemData item = cartData.get(i).getCartItem();
+					if(p.getProductName() != null && p.getProductName().equals(item.getItemName())
+							&& item.getPrice() != p.getUnitPrice()) {
+						cartData.set(i, cartItemPresFromData(item.getItemName(), p.getUnitPrice(), item.getQuantity()));
+						cartChanged = true;
+					}
+				}
+			}
+		}
+		if(cartChanged) {
+			updateShoppingCart();
+			BrowseSelectUIControl.INSTANCE.updateCartItems(cartData);
+		}
+	}
+	
+	/** pres with the change made in e */
+	private static ProductPres updated(ProductPres pres, ProductChangeEvent e) {
+		switch(e.getType()) {
+			case STOCK_CHANGED:
+				return new ProductPres(pres.getProduct(), e.getQuantityAvailable());
+			case CREATED:
+			case PRICE_CHANGED:
+				return new ProductPres(e.getProduct(), pres.getQuantityAvail());
+			default:
+				return pres;
+		}
+	}
+	
 	//Synchronizers
 	private class ShoppingCartSynchronizer implements Synchronizer {
 		@SuppressWarnings("rawtypes")
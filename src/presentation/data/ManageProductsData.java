@@ -1,10 +1,13 @@
 package presentation.data;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
@@ -12,6 +15,8 @@ import launch.Start;
 import business.exceptions.BackendException;
 import business.externalinterfaces.Catalog;
 import business.externalinterfaces.Product;
+import business.externalinterfaces.ProductChangeEvent;
+import business.externalinterfaces.ProductImportResult;
 import business.util.Convert;
 import business.productsubsystem.ProductSubsystemFacade;
 import business.usecasecontrol.ManageProductsController;
@@ -22,6 +27,10 @@ public enum ManageProductsData {
 	ManageProductsController pc = (ManageProductsController) Start.ctx.getBean("pc"); // new
 																						// ManageProductsController();
 
+	ManageProductsData() {
+		pc.addProductChangeListener(this::productsChanged, Platform::runLater);
+	}
+
 	//////// Catalogs List model
 	private ObservableList<CatalogPres> catalogList = readCatalogsFromDataSource();
 
@@ -126,7 +135,7 @@ public enum ManageProductsData {
 		catalogList.forEach(c -> {
 			try {
 				map.put(c, pc.getProducts(c.getCatalog()).stream().map(p -> new ProductPres(p))
-						.collect(Collectors.toList()));
+						.collect(Collectors.toCollection(FXCollections::observableArrayList)));
 			} catch (BackendException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -137,9 +146,114 @@ public enum ManageProductsData {
 		// return DefaultData.PRODUCT_LIST_DATA;
 	}
 
-	/** Delivers the requested products list to the UI */
+	/**
+	 * Delivers the requested products list to the UI; the list itself, when
+	 * it is observable, so that product changes show up in the table
+	 */
 	public ObservableList<ProductPres> getProductsList(CatalogPres catPres) {
-		return FXCollections.observableList(productsMap.get(catPres));
+		List<ProductPres> prods = productsMap.get(catPres);
+		if (prods instanceof ObservableList) {
+			return (ObservableList<ProductPres>) prods;
+		}
+		return FXCollections.observableList(prods);
+	}
+
+	/** Where a product is listed in productsMap */
+	private static final class ProductLocation {
+		private final CatalogPres catalog;
+		private final List<ProductPres> list;
+		private int index;
+
+		ProductLocation(CatalogPres catalog, List<ProductPres> list, int index) {
+			this.catalog = catalog;
+			this.list = list;
+			this.index = index;
+		}
+	}
+
+	// product id -> where it is listed, so that a change is applied without
+	// searching every list; rebuilt when productsMap has been changed otherwise
+	private final Map<Integer, ProductLocation> productLocations = new HashMap<Integer, ProductLocation>();
+	private boolean productLocationsStale = true;
+
+	/**
+	 * Adds, removes and updates the products in productsMap as they change;
+	 * runs on the UI thread
+	 */
+	private void productsChanged(List<ProductChangeEvent> events) {
+		for (ProductChangeEvent e : events) {
+			//the product may already be listed, if it was added here
+			ProductLocation at = locate(e.getProductId());
+			if (at != null) {
+				apply(at, e);
+			} else if (e.getType() == ProductChangeEvent.Type.CREATED) {
+				CatalogPres cat = catalogWithId(e.getProduct().getCatalog().getId());
+				List<ProductPres> prods = (cat == null) ? null : productsMap.get(cat);
+				if (prods != null) {
+					prods.add(new ProductPres(e.getProduct()));
+					productLocations.put(e.getProductId(), new ProductLocation(cat, prods, prods.size() - 1));
+				}
+			}
+		}
+	}
+
+	/** Null if the product is not listed */
+	private ProductLocation locate(int productId) {
+		if (productLocationsStale) {
+			indexProductLocations();
+		}
+		ProductLocation at = productLocations.get(productId);
+		if (at != null && !isAt(at, productId)) {
+			//a list was changed without going through this class
+			indexProductLocations();
+			at = productLocations.get(productId);
+		}
+		return at;
+	}
+
+	private boolean isAt(ProductLocation at, int productId) {
+		return productsMap.get(at.catalog) == at.list && at.index < at.list.size()
+				&& at.list.get(at.index).getProduct().getProductId() == productId;
+	}
+
+	private void indexProductLocations() {
+		productLocations.clear();
+		for (Map.Entry<CatalogPres, List<ProductPres>> entry : productsMap.entrySet()) {
+			List<ProductPres> prods = entry.getValue();
+			for (int i = 0; i < prods.size(); ++i) {
+				productLocations.put(prods.get(i).getProduct().getProductId(),
+						new ProductLocation(entry.getKey(), prods, i));
+			}
+		}
+		productLocationsStale = false;
+	}
+
+	/** Applies e to the product listed at at */
+	private void apply(ProductLocation at, ProductChangeEvent e) {
+		ProductPres pres = at.list.get(at.index);
+		switch (e.getType()) {
+			case DELETED:
+				at.list.remove(at.index);
+				productLocations.remove(e.getProductId());
+				//the products after it have moved up
+				for (int i = at.index; i < at.list.size(); ++i) {
+					ProductLocation moved = productLocations.get(at.list.get(i).getProduct().getProductId());
+					if (moved != null) moved.index = i;
+				}
+				break;
+			case STOCK_CHANGED:
+				at.list.set(at.index, new ProductPres(pres.getProduct(), e.getQuantityAvailable()));
+				break;
+			default:
+				at.list.set(at.index, new ProductPres(e.getProduct(), pres.getQuantityAvail()));
+		}
+	}
+
+	private CatalogPres catalogWithId(int id) {
+		for (CatalogPres c : catalogList) {
+			if (c.getCatalog().getId() == id) return c;
+		}
+		return null;
 	}
 
 	public ProductPres productPresFromData(Catalog c, String name, String date, // MM/dd/yyyy
@@ -156,6 +270,7 @@ public enum ManageProductsData {
 
 		// Place the new item at the bottom of the list
 		specifiedProds.addAll(newProducts);
+		productLocationsStale = true;
 
 	}
 
@@ -172,6 +287,7 @@ public enum ManageProductsData {
 			ProductPres item = toBeRemoved.get(0);
 			// If delete from database succeed
 			if (pc.deleteProduct(item.getProduct())) { 
+				productLocationsStale = true;
 				return productsMap.get(cat).remove(item);
 			}
 			return false;
@@ -185,6 +301,7 @@ public enum ManageProductsData {
 		@Override
 		public void refresh(ObservableList list) {
 			productsMap.put(selectedCatalog, list);
+			productLocationsStale = true;
 		}
 	}
 
@@ -211,4 +328,12 @@ public enum ManageProductsData {
 	public int saveNewProduct(Product product) throws BackendException {
 		return pc.saveNewProduct(product);
 	}
+
+	/**
+	 * Imports a product feed; may be called off the UI thread. The products
+	 * imported reach productsMap as product changes (see productsChanged)
+	 */
+	public ProductImportResult importProducts(File file) throws BackendException {
+		return pc.importProducts(file);
+	}
 }
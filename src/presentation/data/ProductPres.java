@@ -8,12 +8,24 @@ import business.externalinterfaces.*;
 
 public class ProductPres {
 	private Product product;
+	//units available now, once known to differ from what product says; null until then
+	private Integer quantityAvail;
     public ProductPres() {}
     
     public ProductPres(Product product) {
     	this.product = product;
     }
     
+    public ProductPres(Product product, Integer quantityAvail) {
+    	this.product = product;
+    	this.quantityAvail = quantityAvail;
+    }
+    
+    /** Null unless the units available have changed since product was read */
+    public Integer getQuantityAvail() {
+    	return quantityAvail;
+    }
+    
     public void setProduct(Product product) {
     	this.product = product;
     }
@@ -54,7 +66,8 @@ public class ProductPres {
     	 product.setUnitPrice(Double.parseDouble(up.get()));
     }
     public SimpleStringProperty quantityAvailProperty() {
-    	return new SimpleStringProperty((new Integer(product.getQuantityAvail())).toString());
+    	int quantity = (quantityAvail == null) ? product.getQuantityAvail() : quantityAvail;
+    	return new SimpleStringProperty((new Integer(quantity)).toString());
     }
     public void setQuantityAvail(SimpleStringProperty qa) {
     	 product.setUnitPrice(Integer.parseInt(qa.get()));
@@ -2,6 +2,7 @@
 package presentation.data;
 
 import java.util.HashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -35,18 +36,18 @@ public class SessionCache {
     public void add(Object name, Object value){
         if(context != null) {
             context.put(name,value);
-            LOG.info("Key/value pair (" + name + ", " + value + ") added to SessionCache");
+            LOG.fine(() -> "Key/value pair (" + name + ", " + value + ") added to SessionCache");
         }
     }
     
     public Object get(Object name){
     	
         if(context == null) {
-        	LOG.info("No matching value for " + name + " from cache found. Returning null");
+        	LOG.log(Level.FINE, "No matching value for {0} from cache found. Returning null", name);
             return null;
         }
         Object retval = context.get(name);
-        LOG.info("Returning value " + retval + " from cache, for name " + name);
+        LOG.fine(() -> "Returning value " + retval + " from cache, for name " + name);
         return retval;
     }
     
@@ -55,7 +56,7 @@ public class SessionCache {
     		LOG.warning("Attempt to remove from cache a value with key null has failed.");
     	}
     	Object itemRemoved = context.remove(name);
-    	LOG.info("Attempt to remove item from cache with key " + name + " caused " 
+    	LOG.fine(() -> "Attempt to remove item from cache with key " + name + " caused " 
     	   + itemRemoved + " to be removed");
     
     }
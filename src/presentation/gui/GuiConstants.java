@@ -11,6 +11,8 @@ public class GuiConstants {
 	public static final int SCENE_HEIGHT = 400;
 	public static final int GRID_PANE_WIDTH = 320;
 	public static final int PROD_DETAILS_GRID_WIDTH = 400;
+	//products fetched at a time by ProductListWindow
+	public static final int PRODUCT_PAGE_SIZE = 100;
 	
 	//colors
 	public static final Color ERROR_MESSAGE_COLOR = Color.FIREBRICK;
@@ -190,15 +190,18 @@ public class MaintainProductsWindow extends Stage implements MessageableWindow {
 	private HBox setUpButtons() {
 		Button addButton = new Button("Add New Product");
 		Button deleteButton = new Button("Delete Product");
+		Button importButton = new Button("Import Products...");
 		Button backButton = new Button("Back to Main");
 		
 		HBox btnBox = new HBox(10);
 		btnBox.setAlignment(Pos.CENTER);
 		btnBox.getChildren().add(addButton);
 		btnBox.getChildren().add(deleteButton);
+		btnBox.getChildren().add(importButton);
 		btnBox.getChildren().add(backButton);
 	
 		deleteButton.setOnAction(ManageProductsUIControl.INSTANCE.getDeleteProductHandler());
+		importButton.setOnAction(ManageProductsUIControl.INSTANCE.getImportProductsHandler());
 		backButton.setOnAction(ManageProductsUIControl.INSTANCE.getBackFromProdsButtonHandler());
 			
 		addButton.setOnAction(ManageProductsUIControl.INSTANCE.getAddProductHandler());
@@ -18,6 +18,7 @@ import presentation.data.ProductPres;
 
 public class ProductDetailsWindow extends Stage {
 	private ProductPres selectedProduct;
+	private GridPane grid;
 	
 	public ProductDetailsWindow(ProductPres selectedProduct) {
 		this.selectedProduct = selectedProduct;
@@ -27,21 +28,15 @@ public class ProductDetailsWindow extends Stage {
 		//set up top label
 		HBox labelHbox = setUpTopLabel();
 		
-		//prepare display grid
-        List<String> displayValues = BrowseSelectData.INSTANCE.getProductDisplayValues(selectedProduct);
-		FourByTwoGridPane dataTable 
-		   = new FourByTwoGridPane(BrowseSelectData.INSTANCE.getProductFieldNamesForDisplay(),
-				   displayValues, "gray", GuiConstants.PROD_DETAILS_GRID_WIDTH);
-						        
 		//set up button row
 		HBox btnBox = setUpButtons();
 		
 		//set up grid pane (for center area of scene)
-		GridPane grid = new GridPane();
+		grid = new GridPane();
 		grid.setAlignment(Pos.CENTER);
 		grid.setVgap(20); 
 		grid.setHgap(10);
-		grid.add(dataTable, 0, 1);
+		grid.add(setUpDataTable(), 0, 1);
 		
 		//place label, grid and buttons in the top container
 		BorderPane.setMargin(labelHbox, new Insets(12,12,12,12));
@@ -55,6 +50,19 @@ public class ProductDetailsWindow extends Stage {
 		setScene(scene);
 	}
 	
+	/** Shows newer values of the product shown */
+	public void setProduct(ProductPres product) {
+		selectedProduct = product;
+		grid.getChildren().clear();
+		grid.add(setUpDataTable(), 0, 1);
+	}
+	
+	private FourByTwoGridPane setUpDataTable() {
+        List<String> displayValues = BrowseSelectData.INSTANCE.getProductDisplayValues(selectedProduct);
+		return new FourByTwoGridPane(BrowseSelectData.INSTANCE.getProductFieldNamesForDisplay(),
+				   displayValues, "gray", GuiConstants.PROD_DETAILS_GRID_WIDTH);
+	}
+	
 	public HBox setUpTopLabel() {
 		final Label label = new Label(
 				String.format("%s: Product Details", selectedProduct.nameProperty().get()));
@@ -5,10 +5,13 @@ import presentation.data.CatalogPres;
 import presentation.data.ProductPres;
 import presentation.util.TableUtil;
 import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ScrollBar;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.layout.GridPane;
@@ -34,6 +37,23 @@ public class ProductListWindow extends Stage implements MessageableWindow {
 	public void setData(ObservableList<ProductPres> prods) {
 		table.setItems(prods);
 	}
+	
+	/**
+	 * Runs loadMore whenever the table is scrolled to (near) the bottom, so
+	 * that further rows are fetched only when they are about to be seen
+	 */
+	public void setOnScrolledToEnd(Runnable loadMore) {
+		setOnShown(evt -> {
+			for(Node node : table.lookupAll(".scroll-bar")) {
+				if(node instanceof ScrollBar && ((ScrollBar)node).getOrientation() == Orientation.VERTICAL) {
+					ScrollBar bar = (ScrollBar)node;
+					bar.valueProperty().addListener((obs, oldVal, newVal) -> {
+						if(newVal.doubleValue() >= bar.getMax() * 0.9) loadMore.run();
+					});
+				}
+			}
+		});
+	}
 	private HBox createTopLabel() {
 		Label label = new Label(String.format("Available %s", selectedCatalog.nameProperty().get()));
         label.setFont(new Font("Arial", 16));